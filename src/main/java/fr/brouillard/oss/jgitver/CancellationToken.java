@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Allows to abort a running version calculation from another thread, for example when an IDE synchronization is
+ * cancelled.
+ *
+ * <p>The calculation checks the token while walking the history, peeling the tags and checking the working tree for
+ * changes, and then throws a {@link CancellationException}, the repository being closed. Interrupting the thread
+ * running the calculation has the same effect; its interrupted status is kept.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled = false;
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Requests the cancellation of the calculations using this token.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelActions.forEach(Runnable::run);
+    }
+
+    /**
+     * Registers an action run when this token is cancelled, for callers waiting without checking the token; the action
+     * is run at once if the token is already cancelled, and may be run more than once.
+     * @param action the action to run on cancellation
+     */
+    void addCancelAction(Runnable action) {
+        cancelActions.add(action);
+        if (cancelled) {
+            action.run();
+        }
+    }
+
+    /**
+     * Unregisters an action added with {@link #addCancelAction(Runnable)}.
+     * @param action the action not to run anymore
+     */
+    void removeCancelAction(Runnable action) {
+        cancelActions.remove(action);
+    }
+
+    /**
+     * Tells if the calculation must be aborted.
+     * @return true if {@link #cancel()} was called or if the current thread has been interrupted
+     */
+    public boolean isCancelled() {
+        return cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Aborts the calculation if it has been cancelled.
+     * @throws CancellationException if {@link #isCancelled()} is true
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("version calculation cancelled");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Describes a component of a repository holding several independently versioned parts, a monorepo.
+ *
+ * <p>A component owns some directories of the repository and its versions are given by tags starting with its tag
+ * prefix, for example {@code billing/v1.4.0} for a component with the {@code billing/} prefix. Only commits modifying
+ * the content under the component paths are counted in its distance.
+ */
+public final class Component {
+    private final String tagPrefix;
+    private final List<String> paths;
+
+    /**
+     * Defines a component.
+     * @param tagPrefix the prefix of the tags holding the component versions, removed before extracting the version
+     * @param paths the directories, relative to the repository root, holding the component sources ;
+     *        an empty path stands for the whole repository
+     * @throws IllegalArgumentException if no path is given
+     */
+    public Component(String tagPrefix, String... paths) {
+        this(tagPrefix, Arrays.asList(paths));
+    }
+
+    /**
+     * Defines a component.
+     * @param tagPrefix the prefix of the tags holding the component versions, removed before extracting the version
+     * @param paths the directories, relative to the repository root, holding the component sources ;
+     *        an empty path stands for the whole repository
+     * @throws IllegalArgumentException if no path is given
+     */
+    public Component(String tagPrefix, List<String> paths) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("a component must define at least one path");
+        }
+        this.tagPrefix = Objects.requireNonNull(tagPrefix, "tagPrefix");
+        List<String> normalizedPaths = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            String normalized = normalize(path);
+            if (!normalizedPaths.contains(normalized)) {
+                normalizedPaths.add(normalized);
+            }
+        }
+        this.paths = Collections.unmodifiableList(normalizedPaths);
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        int start = 0;
+        int end = normalized.length();
+        while (start < end && normalized.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && normalized.charAt(end - 1) == '/') {
+            end--;
+        }
+        return normalized.substring(start, end);
+    }
+
+    public String getTagPrefix() {
+        return tagPrefix;
+    }
+
+    /**
+     * Paths of the component, using '/' as separator and without leading or trailing separator.
+     * @return a non empty unmodifiable list of paths
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Component)) {
+            return false;
+        }
+        Component other = (Component) obj;
+        return tagPrefix.equals(other.tagPrefix) && paths.equals(other.paths);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * tagPrefix.hashCode() + paths.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return tagPrefix + paths;
+    }
+}
@@ -15,33 +15,66 @@
  */
 package fr.brouillard.oss.jgitver;
 
-import static fr.brouillard.oss.jgitver.Lambdas.as;
-
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 
+import fr.brouillard.oss.jgitver.impl.ChangedPathFilters;
 import fr.brouillard.oss.jgitver.impl.Commit;
 import fr.brouillard.oss.jgitver.impl.ConfigurableVersionStrategy;
+import fr.brouillard.oss.jgitver.impl.DistanceCalculator;
 import fr.brouillard.oss.jgitver.impl.GitUtils;
+import fr.brouillard.oss.jgitver.impl.HistorySearch;
+import fr.brouillard.oss.jgitver.impl.HistoryWalk;
 import fr.brouillard.oss.jgitver.impl.MavenVersionStrategy;
+import fr.brouillard.oss.jgitver.impl.PathScope;
+import fr.brouillard.oss.jgitver.impl.ReachableCommits;
+import fr.brouillard.oss.jgitver.impl.SearchBudget;
+import fr.brouillard.oss.jgitver.impl.SearchPlanner;
+import fr.brouillard.oss.jgitver.impl.TagIndex;
+import fr.brouillard.oss.jgitver.impl.UntrackedCache;
 import fr.brouillard.oss.jgitver.impl.VersionNamingConfiguration;
 import fr.brouillard.oss.jgitver.impl.VersionStrategy;
 import fr.brouillard.oss.jgitver.impl.VersionStrategy.StrategySearchMode;
@@ -49,9 +82,53 @@ import fr.brouillard.oss.jgitver.metadata.MetadataHolder;
 import fr.brouillard.oss.jgitver.metadata.MetadataProvider;
 import fr.brouillard.oss.jgitver.metadata.Metadatas;
 
+/**
+ * Calculates versions of a git repository.
+ *
+ * <p>A calculator can be shared between threads: settings are guarded by the calculator itself and each calculation
+ * works on an immutable snapshot of them, with its own repository access. Concurrent calls made with the same
+ * settings, on the same HEAD and tags, wait for the calculation already in progress instead of walking the history
+ * again.
+ */
 public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
-    private MetadataHolder metadatas;
-    private Repository repository;
+    private static final DateTimeFormatter HEAD_COMMIT_DATETIME_FORMAT = DateTimeFormatter
+            .ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+
+    /**
+     * Interval at which a caller waiting for the calculation of another one checks its own cancellation token.
+     */
+    private static final long AWAIT_POLL_MILLIS = 20;
+
+    /**
+     * Runs the calculation phases in sequence, in the calling thread.
+     */
+    private static final Executor SAME_THREAD = Runnable::run;
+
+    private final ConcurrentMap<CalculationKey, CompletableFuture<Calculation>> inFlightCalculations = new ConcurrentHashMap<>();
+    private volatile Calculation lastCalculation;
+
+    /**
+     * Peeled tags by name, reused by later calculations as long as the tag still points to the same object.
+     */
+    private final ConcurrentMap<String, Ref> peeledTags = new ConcurrentHashMap<>();
+
+    /**
+     * Repository opened and warmed up in background when prefetch is requested, shared by calculations until
+     * {@link #close()}; completes with null if the warm-up failed.
+     */
+    private volatile CompletableFuture<Repository> warmRepository;
+
+    /**
+     * Repository given by the caller, used by all calculations and never closed by the calculator; null when the
+     * calculator opens the repository found at its location.
+     */
+    private final Repository providedRepository;
+
+    /**
+     * Untracked cache of the index, kept with its in memory refreshes as long as the index is not written again.
+     */
+    private volatile UntrackedCache untrackedCache;
+
     private boolean mavenLike = false;
     private boolean autoIncrementPatch = false;
     private boolean useDistance = true;
@@ -62,14 +139,24 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
 
     private String findTagVersionPattern = "v?([0-9]+(?:\\.[0-9]+){0,2}(?:-[a-zA-Z0-9\\-_]+)?)";
     private String extractTagVersionPattern = "$1";
-    private File gitRepositoryLocation;
-
-    private final SimpleDateFormat dtfmt;
+    private Component component = null;
+    private boolean writeChangedPathFilters = false;
+    private boolean computeReachableVersionTags = false;
+    private boolean useBitmapDistance = false;
+    private boolean parallelDirtyCheck = false;
+    private SearchAlgorithm searchAlgorithm = SearchAlgorithm.AUTO;
+    private int maxSearchedCommits = Integer.MAX_VALUE;
+    private Duration maxSearchDuration = null;
+    private final File gitRepositoryLocation;
 
     private GitVersionCalculator(File gitRepositoryLocation) throws IOException {
         this.gitRepositoryLocation = gitRepositoryLocation;
+        this.providedRepository = null;
+    }
 
-        dtfmt = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+    private GitVersionCalculator(Repository repository) {
+        this.gitRepositoryLocation = repository.getDirectory();
+        this.providedRepository = repository;
     }
 
     /**
@@ -88,43 +175,411 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
         }
     }
 
+    /**
+     * Creates a {@link GitVersionCalculator} for the git repository pointing to the given path, optionally warming it
+     * up in background.
+     *
+     * <p>When prefetch is requested, a daemon thread immediately opens the repository, loads its pack indexes and
+     * peels its tags, so that the first calculation finds them ready. The untracked cache of the index file, when it
+     * has one, is read as well and kept for the first {@link #setParallelDirtyCheck(boolean) parallel dirty check};
+     * other dirty checks read the index file themselves. The opened repository is then shared by the calculations
+     * until the calculator is closed.
+     *
+     * @param gitRepositoryLocation the location of the git repository to find version for
+     * @param prefetch true to start warming up the repository in background
+     * @return a non null {@link GitVersionCalculator}
+     */
+    public static GitVersionCalculator location(File gitRepositoryLocation, boolean prefetch) {
+        GitVersionCalculator gvc = location(gitRepositoryLocation);
+        if (prefetch) {
+            gvc.warmRepository = CompletableFuture.supplyAsync(gvc::warmUp, runnable -> {
+                Thread thread = new Thread(runnable, "jgitver-prefetch");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return gvc;
+    }
+
+    /**
+     * Creates a {@link GitVersionCalculator} for an already opened repository, file based or not, for example an
+     * {@link org.eclipse.jgit.internal.storage.dfs.InMemoryRepository}. The repository is shared by the calculations
+     * and left open when the calculator is closed, its owner remaining in charge of closing it.
+     *
+     * <p>A bare repository, as the ones stored in memory or in a DFS, has no working tree: it is never dirty.
+     *
+     * @param repository the opened repository to find version for
+     * @return a non null {@link GitVersionCalculator}
+     */
+    public static GitVersionCalculator location(Repository repository) {
+        return new GitVersionCalculator(Objects.requireNonNull(repository, "repository"));
+    }
+
     private Repository openRepository() throws IOException {
+        if (providedRepository != null) {
+            // each calculation releases its own use, the caller keeps the repository open
+            providedRepository.incrementOpen();
+            return providedRepository;
+        }
+        CompletableFuture<Repository> warm = warmRepository;
+        Repository repository = warm == null ? null : warm.join();
+        if (repository != null) {
+            // shared with the warm-up, each calculation releases its own use
+            repository.incrementOpen();
+            return repository;
+        }
+        return buildRepository();
+    }
+
+    private Repository buildRepository() throws IOException {
         FileRepositoryBuilder builder = new FileRepositoryBuilder();
         return builder.findGitDir(gitRepositoryLocation).build();
     }
 
+    /**
+     * Opens the repository and loads what the first calculation will read from it.
+     *
+     * @return the opened repository, or null if it could not be opened or read
+     */
+    private Repository warmUp() {
+        Repository repository;
+        try {
+            repository = buildRepository();
+        } catch (Exception ex) {
+            return null;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            // looking for a missing object goes through the index of every pack
+            repository.getObjectDatabase().has(ObjectId.zeroId());
+            walk.getObjectReader().getBitmapIndex();
+            // kept for the first parallel dirty check, which reuses it as long as the index file is unchanged
+            untrackedCache = UntrackedCache.read(repository);
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head != null) {
+                walk.parseCommit(head);
+            }
+            loadTags(repository, walk, new CancellationToken());
+            return repository;
+        } catch (Exception ex) {
+            repository.close();
+            return null;
+        }
+    }
+
     /**
      * Calculates the version to use for the current git repository depending on the HEAD position.
      * 
      * @return the calculated version object
      */
     public Version getVersionObject() {
-        metadatas = new MetadataHolder();
+        return getVersionObject(new CancellationToken());
+    }
+
+    /**
+     * Calculates the version to use for the current git repository depending on the HEAD position, the calculation
+     * being aborted as soon as the given token is cancelled or the current thread is interrupted.
+     * 
+     * @param token the token allowing to cancel the calculation from another thread
+     * @return the calculated version object
+     * @throws CancellationException if the calculation has been cancelled
+     */
+    public Version getVersionObject(CancellationToken token) {
+        return calculate(token).version;
+    }
 
+    /**
+     * Calculates asynchronously the version to use for the current git repository depending on the HEAD position.
+     * The working tree check, the tags loading and the history walk run concurrently on the given executor, so that
+     * the calculation lasts about as long as the slowest of them.
+     * 
+     * @param executor the executor running the calculation phases, able to run at least three tasks concurrently to
+     *        benefit from the concurrency
+     * @return a future of the calculated version object
+     */
+    public CompletableFuture<Version> getVersionObjectAsync(Executor executor) {
+        return getVersionObjectAsync(executor, new CancellationToken());
+    }
+
+    /**
+     * Calculates asynchronously the version to use for the current git repository, as
+     * {@link #getVersionObjectAsync(Executor)} does, the calculation being aborted as soon as the given token is
+     * cancelled. The returned future then completes with a {@link CancellationException}.
+     * 
+     * @param executor the executor running the calculation phases
+     * @param token the token allowing to cancel the calculation
+     * @return a future of the calculated version object
+     */
+    public CompletableFuture<Version> getVersionObjectAsync(Executor executor, CancellationToken token) {
+        return calculateAsync(token, executor).thenApply(calculation -> calculation.version);
+    }
+
+    private CompletableFuture<Calculation> calculateAsync(CancellationToken token, Executor executor) {
+        Configuration configuration = snapshot();
+        Repository repository = openRepositoryIfAny();
+        CalculationKey key = new CalculationKey(configuration, refsState(repository));
+
+        CompletableFuture<Calculation> calculation = new CompletableFuture<>();
+        CompletableFuture<Calculation> inProgress = inFlightCalculations.putIfAbsent(key, calculation);
+        if (inProgress != null) {
+            release(repository);
+            // same settings, same HEAD and tags: share the result of the calculation already running, through a future
+            // of this caller that its own token can abort
+            CompletableFuture<Calculation> joined = new CompletableFuture<>();
+            CancellationException cancelled = new CancellationException("version calculation cancelled");
+            Runnable cancel = () -> joined.completeExceptionally(cancelled);
+            token.addCancelAction(cancel);
+            joined.whenComplete((result, error) -> token.removeCancelAction(cancel));
+            inProgress.whenComplete((result, error) -> {
+                if (causeOf(error) instanceof CancellationException && !joined.isDone()) {
+                    // the running calculation was cancelled by its own caller, not by this one
+                    calculateAsync(token, executor).whenComplete((again, failure) -> completeWith(joined, again, failure));
+                } else {
+                    completeWith(joined, result, error);
+                }
+            });
+            return joined;
+        }
+
+        computeAsync(configuration, repository, token, executor).whenComplete((result, error) -> {
+            if (error == null) {
+                lastCalculation = result;
+            }
+            // callers coming once the calculation is over start their own one
+            inFlightCalculations.remove(key, calculation);
+            completeWith(calculation, result, error);
+        });
+        return calculation;
+    }
+
+    private static void completeWith(CompletableFuture<Calculation> future, Calculation result, Throwable error) {
+        if (error == null) {
+            future.complete(result);
+        } else {
+            future.completeExceptionally(causeOf(error));
+        }
+    }
+
+    private static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private Calculation calculate(CancellationToken token) {
+        Configuration configuration = snapshot();
+        Repository repository = openRepositoryIfAny();
+        CalculationKey key = new CalculationKey(configuration, refsState(repository));
+
+        boolean computing = false;
+        try {
+            while (true) {
+                CompletableFuture<Calculation> calculation = new CompletableFuture<>();
+                CompletableFuture<Calculation> inProgress = inFlightCalculations.putIfAbsent(key, calculation);
+                if (inProgress == null) {
+                    // the calculation releases the repository
+                    computing = true;
+                    return computeShared(key, repository, calculation, token);
+                }
+                // same settings, same HEAD and tags: share the result of the calculation already running
+                Calculation shared = await(inProgress, token);
+                if (shared != null) {
+                    return shared;
+                }
+                // the running calculation was cancelled by its own caller, not by this one
+            }
+        } finally {
+            if (!computing) {
+                release(repository);
+            }
+        }
+    }
+
+    private Calculation computeShared(CalculationKey key, Repository repository,
+            CompletableFuture<Calculation> calculation, CancellationToken token) {
+        Calculation result;
         try {
-            this.repository = openRepository();
+            result = compute(key.configuration, repository, token);
+        } catch (RuntimeException | Error ex) {
+            inFlightCalculations.remove(key, calculation);
+            calculation.completeExceptionally(ex);
+            throw ex;
+        }
+        lastCalculation = result;
+        // callers coming once the calculation is over start their own one
+        inFlightCalculations.remove(key, calculation);
+        calculation.complete(result);
+        return result;
+    }
+
+    /**
+     * Opens the repository for a calculation, that describes it with {@link #refsState(Repository)} and then computes
+     * the version with it.
+     * @return the opened repository, null if there is none at the location of the calculator
+     */
+    private Repository openRepositoryIfAny() {
+        try {
+            return openRepository();
         } catch (Exception ex) {
-            return Version.NOT_GIT_VERSION;
+            return null;
         }
-        try (Git git = new Git(repository)) {
-            VersionStrategy strategy;
-
-            VersionNamingConfiguration vnc = new VersionNamingConfiguration(findTagVersionPattern,
-                    extractTagVersionPattern, Arrays.asList(nonQualifierBranches.split("\\s*,\\s*")));
-
-            if (mavenLike) {
-                strategy = new MavenVersionStrategy(vnc, repository, git, metadatas);
-            } else {
-                ConfigurableVersionStrategy cvs = new ConfigurableVersionStrategy(vnc, repository, git, metadatas);
-                cvs.setAutoIncrementPatch(autoIncrementPatch);
-                cvs.setUseDistance(useDistance);
-                cvs.setUseDirty(useDirty);
-                cvs.setUseGitCommitId(useGitCommitId);
-                cvs.setGitCommitIdLength(gitCommitIdLength);
-                strategy = cvs;
+    }
+
+    private static void release(Repository repository) {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    /**
+     * Describes the HEAD commit and the tags of the repository, so that a calculation started before one of them
+     * changed is not shared with later callers.
+     */
+    private static String refsState(Repository repository) {
+        if (repository == null) {
+            return "no repository";
+        }
+        try {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            StringBuilder state = new StringBuilder("head ").append(ObjectId.toString(head)).append('\n');
+            state.append("branch ").append(repository.getFullBranch()).append('\n');
+            for (Ref tag : repository.getRefDatabase().getRefs(Constants.R_TAGS).values()) {
+                state.append(tag.getName()).append(' ').append(ObjectId.toString(tag.getObjectId())).append('\n');
             }
+            return digest(state);
+        } catch (IOException ex) {
+            return "unreadable repository";
+        }
+    }
+
+    /**
+     * Waits for a calculation run by another caller, checking the given token meanwhile.
+     * @return the calculation result, null if the calculation has been cancelled by the other caller
+     */
+    private Calculation await(CompletableFuture<Calculation> inProgress, CancellationToken token) {
+        while (true) {
+            token.throwIfCancelled();
+            try {
+                return inProgress.get(AWAIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                continue; // still running, let's check the token again
+            } catch (CancellationException ex) {
+                return null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("version calculation interrupted");
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof CancellationException) {
+                    return null;
+                }
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                if (ex.getCause() instanceof Error) {
+                    throw (Error) ex.getCause();
+                }
+                throw new IllegalStateException("failure calculating version", ex.getCause());
+            }
+        }
+    }
+
+    private Calculation compute(Configuration configuration, Repository repository, CancellationToken token) {
+        try {
+            return computeAsync(configuration, repository, token, SAME_THREAD).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs the calculation phases on the given executor: the working tree check, the tags loading and the history
+     * walk read distinct data and run concurrently, the walk going ahead of the tags until they are known. The given
+     * repository is closed once all of them are over.
+     */
+    private CompletableFuture<Calculation> computeAsync(Configuration configuration, Repository repository,
+            CancellationToken token, Executor executor) {
+        SearchBudget budget = configuration.startSearchBudget(token);
+        MetadataHolder metadatas = new MetadataHolder();
+
+        if (repository == null) {
+            return CompletableFuture.completedFuture(new Calculation(Version.NOT_GIT_VERSION, metadatas, null, null));
+        }
+        Git git = new Git(repository);
+        RevWalk walk = new RevWalk(repository);
+        List<CompletableFuture<?>> phases = new ArrayList<>();
+        CompletableFuture<Calculation> calculation;
+        try {
+            VersionNamingConfiguration vnc = namingConfiguration(configuration, configuration.component);
+            VersionStrategy strategy = createStrategy(configuration, vnc, repository, git, metadatas);
+            Set<ObjectId> shallowCommits = loadShallowCommits(repository, walk);
+            RevCommit head = parseHead(repository, walk);
+            ChangedPathFilters filters = configuration.component == null ? ChangedPathFilters.none()
+                    : ChangedPathFilters.load(repository, configuration.writeChangedPathFilters);
+            PathScope scope = configuration.component == null ? PathScope.wholeRepository()
+                    : new PathScope(walk.getObjectReader(), configuration.component.getPaths(), filters);
 
-            return buildVersion(git, strategy);
+            // run in sequence, one walk hence one object reader serves HEAD parsing, tags peeling & history traversal
+            RevWalk tagsWalk = executor == SAME_THREAD ? walk : null;
+            CompletableFuture<Boolean> dirty = submit(phases, executor, () -> checkDirty(git, configuration, token));
+            CompletableFuture<TagIndex> tags = submit(phases, executor, () -> new TagIndex(
+                    loadTags(repository, tagsWalk, token), strategy::considerTagAsAVersionOne));
+            CompletableFuture<HistoryWalk> history = submit(phases, executor, () -> walkAhead(walk, head, scope,
+                    budget, tags));
+
+            calculation = CompletableFuture.allOf(dirty, tags, history).thenApplyAsync(ignore -> {
+                metadatas.registerMetadata(Metadatas.DIRTY, "" + dirty.join());
+                strategy.setRepositoryDirty(dirty.join());
+                Version version = buildVersion(walk, head, history.join(), shallowCommits, scope, strategy, tags.join(),
+                        configuration.searchAlgorithm, budget, token, metadatas);
+                filters.saveGeneratedFilters();
+                if (configuration.computeReachableVersionTags && head != null) {
+                    registerReachableVersionTags(walk, head, shallowCommits, tags.join(), token, metadatas);
+                }
+                return new Calculation(version, metadatas, tags.join(), vnc);
+            }, executor);
+            phases.add(calculation);
+        } catch (RuntimeException | Error ex) {
+            // a phase may have been submitted before the failure, and still be using the repository
+            calculation = new CompletableFuture<>();
+            calculation.completeExceptionally(ex);
+        }
+        CompletableFuture<Calculation> result = calculation;
+        return CompletableFuture.allOf(phases.toArray(new CompletableFuture<?>[0]))
+                .handle((ignore, error) -> result).thenCompose(Function.identity()).whenComplete((ignore, error) -> {
+                    walk.close();
+                    git.close();
+                    repository.close();
+                });
+    }
+
+    private static <T> CompletableFuture<T> submit(List<CompletableFuture<?>> phases, Executor executor,
+            Supplier<T> phase) {
+        CompletableFuture<T> submitted = CompletableFuture.supplyAsync(phase, executor);
+        phases.add(submitted);
+        return submitted;
+    }
+
+    /**
+     * Starts the history walk, reading ahead until the tags are loaded.
+     * @return the walk, null for an empty repository
+     */
+    private HistoryWalk walkAhead(RevWalk walk, RevCommit head, PathScope scope, SearchBudget budget,
+            CompletableFuture<TagIndex> tags) {
+        if (head == null) {
+            return null;
+        }
+        try {
+            HistoryWalk history = new HistoryWalk(walk, head, scope, budget);
+            history.walkWhile(() -> !tags.isDone());
+            return history;
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
         }
     }
 
@@ -137,117 +592,506 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
         return getVersionObject().toString();
     }
 
-    private Version buildVersion(Git git, VersionStrategy strategy) {
+    /**
+     * Calculates the version to use for the current git repository depending on the HEAD position, the calculation
+     * being aborted as soon as the given token is cancelled or the current thread is interrupted.
+     * 
+     * @param token the token allowing to cancel the calculation from another thread
+     * @return a string representation of this version.
+     * @throws CancellationException if the calculation has been cancelled
+     */
+    public String getVersion(CancellationToken token) {
+        return getVersionObject(token).toString();
+    }
+
+    /**
+     * Computes a fingerprint of the inputs the version depends on with the current settings, without walking the
+     * history: HEAD, the current branch, the version tags and the commits they point to, the boundaries of a shallow
+     * clone, the dirty state when it can change the version, and the settings themselves. As long as the fingerprint
+     * does not change, neither does the version, unless it is degraded by a maximum search duration: build tools can
+     * use it as the key of their up-to-date checks.
+     * 
+     * @return the hexadecimal SHA-1 of the version inputs
+     */
+    public String getVersionInputFingerprint() {
+        return getVersionInputFingerprint(new CancellationToken());
+    }
+
+    /**
+     * Computes a fingerprint of the inputs the version depends on, as {@link #getVersionInputFingerprint()} does, the
+     * computation being aborted as soon as the given token is cancelled.
+     * 
+     * @param token the token allowing to cancel the computation from another thread
+     * @return the hexadecimal SHA-1 of the version inputs
+     * @throws CancellationException if the computation has been cancelled
+     */
+    public String getVersionInputFingerprint(CancellationToken token) {
+        return fingerprint(snapshot(), token);
+    }
+
+    private String fingerprint(Configuration configuration, CancellationToken token) {
+        StringBuilder inputs = new StringBuilder(configuration.versionInputs());
+        Repository repository;
+        try {
+            repository = openRepository();
+        } catch (Exception ex) {
+            return digest(inputs.append("no repository\n"));
+        }
+        try (Git git = new Git(repository)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            inputs.append("head ").append(head == null ? "none" : head.name()).append('\n');
+            inputs.append("branch ").append(repository.getFullBranch()).append('\n');
+            GitUtils.shallowCommits(repository).stream().map(ObjectId::name).sorted()
+                    .forEach(shallow -> inputs.append("shallow ").append(shallow).append('\n'));
+
+            VersionNamingConfiguration vnc = namingConfiguration(configuration, configuration.component);
+            boolean headTagged = false;
+            for (Ref tag : loadTags(repository, null, token)) {
+                if (vnc.isVersionTag(GitUtils.tagNameFromRef(tag))) {
+                    ObjectId target = TagIndex.targetOf(tag);
+                    inputs.append(GitUtils.isAnnotated(tag) ? "annotated " : "light ").append(tag.getName()).append(' ')
+                            .append(target.name()).append('\n');
+                    headTagged |= target.equals(head);
+                }
+            }
+            // the dirty state selects the tag used on HEAD, otherwise it only adds a qualifier when requested
+            if (headTagged || (configuration.useDirty && !configuration.mavenLike)) {
+                inputs.append("dirty ").append(checkDirty(git, configuration, token)).append('\n');
+            }
+            return digest(inputs);
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        } finally {
+            repository.close();
+        }
+    }
+
+    private static String digest(CharSequence inputs) {
+        byte[] bytes = inputs.toString().getBytes(StandardCharsets.UTF_8);
+        return ObjectId.fromRaw(Constants.newMessageDigest().digest(bytes)).name();
+    }
+
+    private Map<Component, Version> computeComponents(Configuration configuration, List<Component> components,
+            CancellationToken token) {
+        SearchBudget budget = configuration.startSearchBudget(token);
+        Map<Component, Version> versions = new LinkedHashMap<>();
+
+        Repository repository;
+        try {
+            repository = openRepository();
+        } catch (Exception ex) {
+            components.forEach(component -> versions.put(component, Version.NOT_GIT_VERSION));
+            return versions;
+        }
+        try (Git git = new Git(repository); RevWalk walk = new RevWalk(repository)) {
+            // HEAD, tags & shallow boundaries are read once for all the components
+            Set<ObjectId> shallowCommits = loadShallowCommits(repository, walk);
+            RevCommit head = parseHead(repository, walk);
+            List<Ref> allTags = loadTags(repository, walk, token);
+            boolean dirty = checkDirty(git, configuration, token);
+
+            // a single scope holding the paths of all the components, so that each commit is compared once
+            List<String> allPaths = components.stream().flatMap(component -> component.getPaths().stream()).distinct()
+                    .collect(Collectors.toList());
+            ChangedPathFilters filters = ChangedPathFilters.load(repository, configuration.writeChangedPathFilters);
+            PathScope scope = new PathScope(walk.getObjectReader(), allPaths, filters);
+
+            List<ComponentSearch> searches = new ArrayList<>(components.size());
+            for (Component component : components) {
+                VersionStrategy strategy = createStrategy(configuration, namingConfiguration(configuration, component),
+                        repository, git, new MetadataHolder());
+                strategy.setRepositoryDirty(dirty);
+                TagIndex tags = new TagIndex(allTags, strategy::considerTagAsAVersionOne);
+                searches.add(new ComponentSearch(component, strategy, tags, scope.pathsOf(component.getPaths()),
+                        new HistorySearch(tags, strategy, shallowCommits)));
+            }
+
+            if (head == null) {
+                // no HEAD exist, the GIT repo might just be initialized without any commit
+                components.forEach(component -> versions.put(component, Version.EMPTY_REPOSITORY_VERSION));
+                return versions;
+            }
+            searchComponents(walk, head, scope, searches, budget);
+            filters.saveGeneratedFilters();
+
+            ObjectId rootId = head.getId();
+            for (ComponentSearch search : searches) {
+                Commit headCommit = new Commit(rootId, 0, search.tags.annotatedVersionTagsOf(rootId),
+                        search.tags.lightVersionTagsOf(rootId));
+                versions.put(search.component, search.strategy.build(headCommit, search.history.getCommits()));
+            }
+            return versions;
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Feeds all the component searches with a single walk, stopped once every search is over.
+     */
+    private void searchComponents(RevWalk walk, RevCommit head, PathScope scope, List<ComponentSearch> searches,
+            SearchBudget budget) throws IOException {
+        walk.markStart(head);
+        for (RevCommit rc : walk) {
+            if (!budget.spend()) {
+                break; // the versions of the components still searching are degraded ones
+            }
+            BitSet[] changedPaths = null;
+            boolean allDone = true;
+            for (ComponentSearch search : searches) {
+                if (search.history.isDone() || search.history.visit(rc)) {
+                    continue;
+                }
+                if (changedPaths == null) {
+                    // subtree ids of the commit are compared at most once, whatever the number of components
+                    changedPaths = scope.changedPaths(walk, rc);
+                }
+                search.history.leave(PathScope.modifies(changedPaths, search.paths));
+                allDone = false;
+            }
+            if (allDone) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Finds the version tags reachable from HEAD by intersecting the tagged commits with the reachable ones, the latter
+     * coming from the pack bitmap index when available.
+     */
+    private void registerReachableVersionTags(RevWalk walk, RevCommit head, Set<ObjectId> shallowCommits, TagIndex tags,
+            CancellationToken token, MetadataHolder metadatas) {
+        try {
+            ReachableCommits reachable = ReachableCommits.from(walk.getObjectReader(), head, shallowCommits, token);
+            List<Ref> reachableTags = tags.getVersionTags().stream()
+                    .filter(tag -> reachable.contains(TagIndex.targetOf(tag)))
+                    .collect(Collectors.toList());
+            metadatas.registerMetadataTags(Metadatas.HEAD_REACHABLE_VERSION_TAGS, reachableTags);
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        }
+    }
+
+    private VersionNamingConfiguration namingConfiguration(Configuration configuration, Component component) {
+        return new VersionNamingConfiguration(configuration.findTagVersionPattern,
+                configuration.extractTagVersionPattern,
+                Arrays.asList(configuration.nonQualifierBranches.split("\\s*,\\s*")),
+                component == null ? "" : component.getTagPrefix());
+    }
+
+    private VersionStrategy createStrategy(Configuration configuration, VersionNamingConfiguration vnc, Repository repository,
+            Git git, MetadataHolder metadatas) {
+        if (configuration.mavenLike) {
+            return new MavenVersionStrategy(vnc, repository, git, metadatas);
+        }
+        ConfigurableVersionStrategy cvs = new ConfigurableVersionStrategy(vnc, repository, git, metadatas);
+        cvs.setAutoIncrementPatch(configuration.autoIncrementPatch);
+        cvs.setUseDistance(configuration.useDistance);
+        cvs.setUseDirty(configuration.useDirty);
+        cvs.setUseGitCommitId(configuration.useGitCommitId);
+        cvs.setGitCommitIdLength(configuration.gitCommitIdLength);
+        cvs.setUseBitmapDistance(configuration.useBitmapDistance);
+        return cvs;
+    }
+
+    /**
+     * Reads the boundary commits of a shallow clone and declares them to the given walk, so that their missing parents
+     * are never looked up whatever the way the walk has been initialized.
+     * @return the boundary commits, empty if the repository is not a shallow clone
+     */
+    private Set<ObjectId> loadShallowCommits(Repository repository, RevWalk walk) {
+        try {
+            Set<ObjectId> shallowCommits = GitUtils.shallowCommits(repository);
+            if (!shallowCommits.isEmpty()) {
+                walk.assumeShallow(shallowCommits);
+            }
+            return shallowCommits;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        }
+    }
+
+    /**
+     * Parses the HEAD commit with the given walk, keeping its body for metadata extraction only: other commits parsed
+     * afterwards by the walk will not retain their body.
+     * @return the HEAD commit or null if the repository does not have any commit yet
+     */
+    private RevCommit parseHead(Repository repository, RevWalk walk) {
+        try {
+            ObjectId headId = repository.resolve("HEAD");
+            RevCommit head = headId == null ? null : walk.parseCommit(headId);
+            walk.setRetainBody(false);
+            return head;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        }
+    }
+
+    /**
+     * Loads and peels the tags of the repository.
+     * @param walk the walk to peel the tags with, null to use a dedicated one
+     */
+    private List<Ref> loadTags(Repository repository, RevWalk walk, CancellationToken token) {
+        if (walk == null) {
+            try (RevWalk tagsWalk = new RevWalk(repository)) {
+                return loadTags(repository, tagsWalk, token);
+            }
+        }
         try {
-            //
-            metadatas.registerMetadata(Metadatas.DIRTY, "" + GitUtils.isDirty(git));
-            
             // retrieve all tags matching a version, and get all info for each of them
-            List<Ref> allTags = git.tagList().call().stream().map(this::peel)
-                    .collect(Collectors.toCollection(ArrayList::new));
+            Collection<Ref> tagRefs = repository.getRefDatabase().getRefs(Constants.R_TAGS).values();
+            List<Ref> allTags = new ArrayList<>(tagRefs.size());
+            for (Ref tag : tagRefs) {
+                token.throwIfCancelled();
+                Ref peeled = peeledTags.get(tag.getName());
+                if (peeled == null || !Objects.equals(peeled.getObjectId(), tag.getObjectId())) {
+                    peeled = GitUtils.peel(walk, tag);
+                    peeledTags.put(tag.getName(), peeled);
+                }
+                allTags.add(peeled);
+            }
+            peeledTags.keySet().retainAll(tagRefs.stream().map(Ref::getName).collect(Collectors.toSet()));
             // let's have tags sorted from most recent to oldest
-            Collections.reverse(allTags);
+            allTags.sort(Comparator.comparing(Ref::getName).reversed());
+            return allTags;
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        }
+    }
 
-            metadatas.registerMetadataTags(Metadatas.ALL_TAGS, allTags.stream());
-            metadatas.registerMetadataTags(Metadatas.ALL_ANNOTATED_TAGS,
-                    allTags.stream().filter(GitUtils::isAnnotated));
-            metadatas.registerMetadataTags(Metadatas.ALL_LIGHTWEIGHT_TAGS,
-                    allTags.stream().filter(as(GitUtils::isAnnotated).negate()));
+    private boolean checkDirty(Git git, Configuration configuration, CancellationToken token) {
+        if (git.getRepository().isBare()) {
+            // no working tree to compare, as for repositories held in memory or in a DFS
+            return false;
+        }
+        try {
+            if (configuration.parallelDirtyCheck) {
+                return GitUtils.isDirty(git, token, ForkJoinPool.commonPool(), untrackedCacheOf(git.getRepository()));
+            }
+            return GitUtils.isDirty(git, token);
+        } catch (CancellationException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("failure calculating version", ex);
+        }
+    }
 
-            List<Ref> allVersionTags = allTags.stream().filter(strategy::considerTagAsAVersionOne)
-                    .collect(Collectors.toCollection(ArrayList::new));
+    private UntrackedCache untrackedCacheOf(Repository repository) throws IOException {
+        UntrackedCache cache = untrackedCache;
+        if (cache == null || !cache.isUpToDate()) {
+            cache = UntrackedCache.read(repository);
+            untrackedCache = cache;
+        }
+        return cache;
+    }
 
-            List<Ref> normals = allVersionTags.stream().filter(GitUtils::isAnnotated).collect(Collectors.toList());
-            List<Ref> lights = allVersionTags.stream().filter(as(GitUtils::isAnnotated).negate())
-                    .collect(Collectors.toList());
+    private Version buildVersion(RevWalk walk, RevCommit headCommit, HistoryWalk history, Set<ObjectId> shallowCommits,
+            PathScope scope, VersionStrategy strategy, TagIndex tags, SearchAlgorithm requestedAlgorithm,
+            SearchBudget budget, CancellationToken token, MetadataHolder metadatas) {
+        try {
+            //
+            metadatas.registerMetadata(Metadatas.SHALLOW_REPOSITORY, "" + !shallowCommits.isEmpty());
 
-            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_TAGS, allVersionTags.stream());
-            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_ANNOTATED_TAGS, normals.stream());
-            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_LIGHTWEIGHT_TAGS, lights.stream());
+            metadatas.registerMetadataTags(Metadatas.ALL_TAGS, tags.getAllTags());
+            metadatas.registerMetadataTags(Metadatas.ALL_ANNOTATED_TAGS, tags.getAnnotatedTags());
+            metadatas.registerMetadataTags(Metadatas.ALL_LIGHTWEIGHT_TAGS, tags.getLightTags());
 
-            ObjectId rootId = repository.resolve("HEAD");
+            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_TAGS, tags.getVersionTags());
+            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_ANNOTATED_TAGS, tags.getAnnotatedVersionTags());
+            metadatas.registerMetadataTags(Metadatas.ALL_VERSION_LIGHTWEIGHT_TAGS, tags.getLightVersionTags());
 
             // handle a call on an empty git repository
-            if (rootId == null) {
+            if (headCommit == null) {
                 // no HEAD exist
                 // the GIT repo might just be initialized without any commit
                 return Version.EMPTY_REPOSITORY_VERSION;
             }
+            ObjectId rootId = headCommit.getId();
 
-            git.log().add(rootId).setMaxCount(1).call().spliterator().tryAdvance(rc -> {
-                PersonIdent commitInfo = rc.getAuthorIdent();
-                metadatas.registerMetadata(Metadatas.HEAD_COMMITTER_NAME, commitInfo.getName());
-                metadatas.registerMetadata(Metadatas.HEAD_COMMITER_EMAIL, commitInfo.getEmailAddress());
-                dtfmt.setTimeZone(commitInfo.getTimeZone());
-                metadatas.registerMetadata(Metadatas.HEAD_COMMIT_DATETIME, dtfmt.format(commitInfo.getWhen()));
-            });
+            PersonIdent commitInfo = headCommit.getAuthorIdent();
+            metadatas.registerMetadata(Metadatas.HEAD_COMMITTER_NAME, commitInfo.getName());
+            metadatas.registerMetadata(Metadatas.HEAD_COMMITER_EMAIL, commitInfo.getEmailAddress());
+            ZonedDateTime when = ZonedDateTime.ofInstant(commitInfo.getWhen().toInstant(),
+                    commitInfo.getTimeZone().toZoneId());
+            metadatas.registerMetadata(Metadatas.HEAD_COMMIT_DATETIME, HEAD_COMMIT_DATETIME_FORMAT.format(when));
 
-            metadatas.registerMetadataTags(Metadatas.HEAD_TAGS, tagsOf(allTags, rootId).stream());
-            metadatas.registerMetadataTags(Metadatas.HEAD_ANNOTATED_TAGS,
-                    tagsOf(allTags.stream().filter(GitUtils::isAnnotated).collect(Collectors.toList()), rootId)
-                            .stream());
-            metadatas.registerMetadataTags(Metadatas.HEAD_LIGHTWEIGHT_TAGS,
-                    tagsOf(allTags.stream().filter(as(GitUtils::isAnnotated).negate()).collect(Collectors.toList()),
-                            rootId).stream());
+            metadatas.registerMetadataTags(Metadatas.HEAD_TAGS, tags.tagsOf(rootId));
+            metadatas.registerMetadataTags(Metadatas.HEAD_ANNOTATED_TAGS, tags.annotatedTagsOf(rootId));
+            metadatas.registerMetadataTags(Metadatas.HEAD_LIGHTWEIGHT_TAGS, tags.lightTagsOf(rootId));
 
             metadatas.registerMetadata(Metadatas.GIT_SHA1_FULL, rootId.getName());
             metadatas.registerMetadata(Metadatas.GIT_SHA1_8, rootId.getName().substring(0, 8));
-            
-            Commit head = new Commit(rootId, 0, tagsOf(normals, rootId), tagsOf(lights, rootId));
-            List<Commit> commits = new LinkedList<>();
-
-            try (RevWalk revWalk = new RevWalk(repository)) {
-                revWalk.markStart(revWalk.parseCommit(rootId));
-
-                int depth = 0;
-                ObjectId id = null;
-                for (RevCommit rc : revWalk) {
-                    id = rc.getId();
-
-                    List<Ref> annotatedCommitTags = tagsOf(normals, id);
-                    List<Ref> lightCommitTags = tagsOf(lights, id);
-
-                    if (annotatedCommitTags.size() > 0 || lightCommitTags.size() > 0) {
-                        // we found a commit with version tags
-                        Commit c = new Commit(id, depth, annotatedCommitTags, lightCommitTags);
-                        commits.add(c);
-
-                        // shall we stop searching for commits
-                        if (StrategySearchMode.STOP_AT_FIRST.equals(strategy.searchMode())) {
-                            break; // let's stop
-                        } else if (depth >= strategy.searchDepthLimit()) {
-                            break; // let's stop
-                        }
-                    }
-
-                    depth++;
-                }
 
-                // handle the case where we reached the first commit without finding anything
-                if (commits.size() == 0) {
-                    commits.add(new Commit(id, depth - 1, Collections.emptyList(), Collections.emptyList()));
+            Commit head = new Commit(rootId, 0, tags.annotatedVersionTagsOf(rootId), tags.lightVersionTagsOf(rootId));
+            if (strategy.useBitmapDistance() && scope.isWholeRepository()
+                    && StrategySearchMode.STOP_AT_FIRST.equals(strategy.searchMode())
+                    && !SearchAlgorithm.WALK.equals(requestedAlgorithm) && !budget.isBounded()) {
+                DistanceCalculator distances = new DistanceCalculator(walk.getObjectReader(), rootId, shallowCommits,
+                        token);
+                if (distances.isBitmapBased()) {
+                    metadatas.registerMetadata(Metadatas.SEARCH_ALGORITHM, SearchAlgorithm.TAG_ANCESTRY.name());
+                    List<Commit> commits = searchByAncestryDistance(walk, headCommit, tags, distances, token, metadatas);
+                    metadatas.registerMetadata(Metadatas.TRUNCATED_HISTORY, "" + false);
+                    metadatas.registerMetadata(Metadatas.SEARCH_BUDGET_EXCEEDED, "" + budget.isExceeded());
+                    return strategy.build(head, commits);
                 }
             }
 
+            SearchAlgorithm algorithm = SearchPlanner.select(requestedAlgorithm, walk.getObjectReader(), shallowCommits,
+                    tags, strategy, lastSearchedCommits(), budget);
+            metadatas.registerMetadata(Metadatas.SEARCH_ALGORITHM, algorithm.name());
+
+            HistorySearch search = new HistorySearch(tags, strategy, shallowCommits);
+            List<Commit> commits = SearchAlgorithm.TAG_ANCESTRY.equals(algorithm)
+                    ? searchByTagAncestry(walk, headCommit, history, shallowCommits, scope, tags, search, token, metadatas)
+                    : searchByWalk(history, search, metadatas);
+            metadatas.registerMetadata(Metadatas.TRUNCATED_HISTORY, "" + search.isTruncated());
+            metadatas.registerMetadata(Metadatas.SEARCH_BUDGET_EXCEEDED, "" + budget.isExceeded());
+
+            // without bitmaps, the distances are recounted once the walk has found the commits holding versions
+            if (strategy.useBitmapDistance() && scope.isWholeRepository()) {
+                commits = withAncestryDistances(walk.getObjectReader(), rootId, shallowCommits, commits, token);
+            }
             return strategy.build(head, commits);
+        } catch (CancellationException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new IllegalStateException("failure calculating version", ex);
         }
     }
 
-    private List<Ref> tagsOf(List<Ref> tags, final ObjectId id) {
-        return tags.stream().filter(ref -> id.equals(ref.getObjectId()) || id.equals(ref.getPeeledObjectId()))
-                .collect(Collectors.toList());
+    private List<Commit> searchByWalk(HistoryWalk history, HistorySearch search, MetadataHolder metadatas)
+            throws IOException {
+        int searchedCommits = history.search(search);
+        metadatas.registerMetadata(Metadatas.SEARCHED_COMMITS, "" + searchedCommits);
+        return search.getCommits();
     }
 
-    private Ref peel(Ref tag) {
-        return repository.peel(tag);
+    /**
+     * Finds first the version tagged commits reachable from HEAD, so that the walk stops once all of them have been
+     * met. When none is reachable, the base is the first commit of the repository and its distance is the number of
+     * reachable commits minus HEAD: on a complete repository, that count comes from the bitmap index and only the
+     * first parents chain is followed to find the first commit. Never used for a bounded search, as the reachable
+     * commits are computed at once.
+     */
+    private List<Commit> searchByTagAncestry(RevWalk walk, RevCommit headCommit, HistoryWalk history,
+            Set<ObjectId> shallowCommits, PathScope scope, TagIndex tags, HistorySearch search, CancellationToken token,
+            MetadataHolder metadatas) throws IOException {
+        ReachableCommits reachable = ReachableCommits.from(walk.getObjectReader(), headCommit, shallowCommits, token);
+        int reachableTaggedCommits = (int) tags.getVersionTaggedCommits().stream().filter(reachable::contains).count();
+
+        if (reachableTaggedCommits > 0 || !scope.isWholeRepository() || !shallowCommits.isEmpty()) {
+            search.setReachableTaggedCommits(reachableTaggedCommits);
+            return searchByWalk(history, search, metadatas);
+        }
+
+        RevCommit first = headCommit;
+        while (first.getParentCount() > 0) {
+            token.throwIfCancelled();
+            first = walk.parseCommit(first.getParent(0));
+        }
+        metadatas.registerMetadata(Metadatas.SEARCHED_COMMITS, "" + reachable.size());
+        return Collections.singletonList(new Commit(first, reachable.size() - 1, Collections.emptyList(),
+                Collections.emptyList()));
+    }
+
+    /**
+     * Finds, without walking the history, the version tagged ancestor of HEAD having the fewest commits between HEAD
+     * and itself, as {@code git describe} does; on a tie the most recent commit wins. Each version tagged commit is
+     * tested against the ancestors of HEAD read from the bitmap index, and the distance of the reachable ones is the
+     * number of commits of the difference of both bitmaps. When none is reachable, the base is the first commit of the
+     * repository, found by following the first parents chain.
+     */
+    private List<Commit> searchByAncestryDistance(RevWalk walk, RevCommit headCommit, TagIndex tags,
+            DistanceCalculator distances, CancellationToken token, MetadataHolder metadatas) throws IOException {
+        RevCommit base = null;
+        int baseDistance = Integer.MAX_VALUE;
+        for (ObjectId id : tags.getVersionTaggedCommits()) {
+            RevObject tagged = walk.parseAny(id);
+            if (!(tagged instanceof RevCommit) || !distances.isReachable(id)) {
+                continue;
+            }
+            RevCommit candidate = (RevCommit) tagged;
+            int distance = distances.distanceTo(candidate);
+            if (distance < baseDistance || (distance == baseDistance && isMoreRecent(candidate, base))) {
+                base = candidate;
+                baseDistance = distance;
+            }
+        }
+        metadatas.registerMetadata(Metadatas.SEARCHED_COMMITS, "" + distances.getWalkedCommits());
+
+        if (base != null) {
+            return Collections.singletonList(new Commit(base, baseDistance, tags.annotatedVersionTagsOf(base),
+                    tags.lightVersionTagsOf(base)));
+        }
+
+        RevCommit first = headCommit;
+        while (first.getParentCount() > 0) {
+            token.throwIfCancelled();
+            first = walk.parseCommit(first.getParent(0));
+        }
+        return Collections.singletonList(new Commit(first, distances.distanceTo(first), Collections.emptyList(),
+                Collections.emptyList()));
+    }
+
+    /**
+     * Tells if the candidate commit is more recent than the given one, commits of the same time being ordered by id so
+     * that the choice does not depend on the iteration order of the tags.
+     */
+    private static boolean isMoreRecent(RevCommit candidate, RevCommit other) {
+        if (candidate.getCommitTime() != other.getCommitTime()) {
+            return candidate.getCommitTime() > other.getCommitTime();
+        }
+        return candidate.compareTo(other) < 0;
+    }
+
+    /**
+     * Number of commits the history search of the last calculation went through, used to select the search algorithm.
+     * @return the number of commits or -1 if unknown
+     */
+    private int lastSearchedCommits() {
+        Calculation calculation = lastCalculation;
+        if (calculation == null) {
+            return -1;
+        }
+        return calculation.metadatas.meta(Metadatas.SEARCHED_COMMITS).map(Integer::parseInt).orElse(-1);
+    }
+
+    /**
+     * Replaces the walk position distances of the found commits by the number of commits reachable from HEAD and not
+     * from them.
+     */
+    private List<Commit> withAncestryDistances(ObjectReader reader, ObjectId headId, Set<ObjectId> shallowCommits,
+            List<Commit> commits, CancellationToken token) throws IOException {
+        DistanceCalculator distances = new DistanceCalculator(reader, headId, shallowCommits, token);
+        List<Commit> recomputed = new ArrayList<>(commits.size());
+        for (Commit commit : commits) {
+            ObjectId id = commit.getGitObject();
+            recomputed.add(new Commit(id, distances.distanceTo(id), commit.getAnnotatedTags(), commit.getLightTags()));
+        }
+        return recomputed;
     }
 
     @Override
     public void close() throws Exception {
-        if (repository != null) {
-            repository.close();
+        // without prefetch, repositories are opened and released by each calculation, nothing is held between calls
+        CompletableFuture<Repository> warm = warmRepository;
+        warmRepository = null;
+        if (warm != null) {
+            Repository repository = warm.join();
+            if (repository != null) {
+                repository.close();
+            }
         }
     }
 
@@ -260,7 +1104,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      *        patch number increased by one. default false.
      * @return itself to chain settings
      */
-    public GitVersionCalculator setAutoIncrementPatch(boolean value) {
+    public synchronized GitVersionCalculator setAutoIncrementPatch(boolean value) {
         this.autoIncrementPatch = value;
         return this;
     }
@@ -273,7 +1117,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      *        used, can be null and/or empty
      * @return itself to chain settings
      */
-    public GitVersionCalculator setNonQualifierBranches(String nonQualifierBranches) {
+    public synchronized GitVersionCalculator setNonQualifierBranches(String nonQualifierBranches) {
         this.nonQualifierBranches = Optional.ofNullable(nonQualifierBranches).orElse("");
         return this;
     }
@@ -285,7 +1129,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      * @param useDistance if true, a qualifier with found distance will be used.
      * @return itself to chain settings
      */
-    public GitVersionCalculator setUseDistance(boolean useDistance) {
+    public synchronized GitVersionCalculator setUseDistance(boolean useDistance) {
         this.useDistance = useDistance;
         return this;
     }
@@ -297,7 +1141,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      * @param useDirty if true, a qualifier with "dirty" qualifier will be used if the repository is stall.
      * @return itself to chain settings
      */
-    public GitVersionCalculator setUseDirty(boolean useDirty) {
+    public synchronized GitVersionCalculator setUseDirty(boolean useDirty) {
         this.useDirty = useDirty;
         return this;
     }
@@ -309,7 +1153,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      * @param useGitCommitId if true, a qualifier with SHA1 git commit will be used, default true
      * @return itself to chain settings
      */
-    public GitVersionCalculator setUseGitCommitId(boolean useGitCommitId) {
+    public synchronized GitVersionCalculator setUseGitCommitId(boolean useGitCommitId) {
         this.useGitCommitId = useGitCommitId;
         return this;
     }
@@ -321,7 +1165,7 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
      * @return itself to chain settings
      * @throws IllegalArgumentException in case the length is not in the range [8,40]
      */
-    public GitVersionCalculator setGitCommitIdLength(int gitCommitIdLength) {
+    public synchronized GitVersionCalculator setGitCommitIdLength(int gitCommitIdLength) {
         if (gitCommitIdLength < 8 || gitCommitIdLength > 40) {
             throw new IllegalStateException("GitCommitIdLength must be between 8 & 40");
         }
@@ -329,22 +1173,380 @@ public class GitVersionCalculator implements AutoCloseable, MetadataProvider {
         return this;
     }
 
+    /**
+     * Restricts the calculation to a component of a repository holding several independently versioned parts.
+     * Only the tags starting with the component tag prefix are considered, the version being extracted from the
+     * remaining of the tag name, and the distance only counts the commits modifying the component paths.
+     * 
+     * @param component the component to compute the version of, null to compute the version of the whole repository
+     * @return itself to chain settings
+     */
+    public synchronized GitVersionCalculator setComponent(Component component) {
+        this.component = component;
+        return this;
+    }
+
+    /**
+     * When true, the changed-path filters of the commits walked by a component calculation, that git did not store
+     * in a commit-graph file, are computed and stored under the git directory to speed up the next calculations.
+     * Filters written by git ({@code git commit-graph write --changed-paths}) are used whatever this setting.
+     * 
+     * @param writeChangedPathFilters true to store the missing changed-path filters, default false
+     * @return itself to chain settings
+     * @see #setComponent(Component)
+     */
+    public synchronized GitVersionCalculator setWriteChangedPathFilters(boolean writeChangedPathFilters) {
+        this.writeChangedPathFilters = writeChangedPathFilters;
+        return this;
+    }
+
+    /**
+     * When true, the version tags reachable from HEAD are computed and exposed through the
+     * {@link Metadatas#HEAD_REACHABLE_VERSION_TAGS} metadata. On repositories having a pack bitmap index (for example
+     * after a {@code git gc} or a {@code git repack -adb}), reachability is mostly read from bitmaps instead of walking
+     * the whole history.
+     * 
+     * @param computeReachableVersionTags true to compute the version tags reachable from HEAD, default false
+     * @return itself to chain settings
+     */
+    public synchronized GitVersionCalculator setComputeReachableVersionTags(boolean computeReachableVersionTags) {
+        this.computeReachableVersionTags = computeReachableVersionTags;
+        return this;
+    }
+
+    /**
+     * When true, the distance of HEAD to the commit holding the version is the number of commits reachable from HEAD
+     * and not from that commit, as {@code git describe} counts it, instead of the number of commits walked before
+     * reaching it. Both are equal on a linear history.
+     * 
+     * <p>On a complete repository having a pack bitmap index, the history is then not walked: the version is taken from
+     * the version tagged ancestor of HEAD having the fewest commits between HEAD and itself, the most recent one on a
+     * tie, and distances are counted from the bitmaps whatever the depth of the history. This applies unless the
+     * {@link #setSearchAlgorithm(SearchAlgorithm) search algorithm} is {@link SearchAlgorithm#WALK}, the search is
+     * bounded or the strategy searches in {@link VersionStrategy.StrategySearchMode#DEPTH depth}. Otherwise the
+     * history is walked as usual and the distances of the found commits are recounted afterwards, which only changes
+     * how the distance is counted, not the cost of the search.
+     * 
+     * <p>It is ignored when a {@link #setComponent(Component) component} is set, as the distance then only counts the
+     * commits modifying it.
+     * 
+     * @param useBitmapDistance true to count the distance by ancestry, default false
+     * @return itself to chain settings
+     */
+    public synchronized GitVersionCalculator setUseBitmapDistance(boolean useBitmapDistance) {
+        this.useBitmapDistance = useBitmapDistance;
+        return this;
+    }
+
+    /**
+     * When true, the working tree is checked for changes by scanning its top level directories in parallel on the
+     * common {@link ForkJoinPool}, the scan stopping as soon as a change is found. It speeds up the detection of a
+     * dirty state on large working trees; repositories holding submodules are still checked by a status.
+     * 
+     * @param parallelDirtyCheck true to scan the working tree in parallel, default false
+     * @return itself to chain settings
+     */
+    public synchronized GitVersionCalculator setParallelDirtyCheck(boolean parallelDirtyCheck) {
+        this.parallelDirtyCheck = parallelDirtyCheck;
+        return this;
+    }
+
+    /**
+     * Forces the algorithm used to search the commits holding version tags. By default, {@link SearchAlgorithm#AUTO}
+     * selects it on each calculation depending on the repository: the selected one is exposed through the
+     * {@link Metadatas#SEARCH_ALGORITHM} metadata. All algorithms give the same version. A search bounded by
+     * {@link #setMaxSearchedCommits(int)} or {@link #setMaxSearchDuration(Duration)} always walks the history, whatever
+     * the requested algorithm, so that the budget applies.
+     * 
+     * @param searchAlgorithm the algorithm to use, not null
+     * @return itself to chain settings
+     */
+    public synchronized GitVersionCalculator setSearchAlgorithm(SearchAlgorithm searchAlgorithm) {
+        this.searchAlgorithm = Objects.requireNonNull(searchAlgorithm, "searchAlgorithm cannot be null");
+        return this;
+    }
+
+    /**
+     * Bounds the number of commits the history search can go through. When the limit is reached, the calculation
+     * returns a degraded version built from the last searched commit, whose distance is a lower bound, and flags it
+     * with the {@link Metadatas#SEARCH_BUDGET_EXCEEDED} metadata. The degraded version only depends on the repository
+     * state.
+     * 
+     * @param maxSearchedCommits the maximum number of searched commits, strictly positive, default is unlimited
+     * @return itself to chain settings
+     * @throws IllegalArgumentException if the value is not strictly positive
+     */
+    public synchronized GitVersionCalculator setMaxSearchedCommits(int maxSearchedCommits) {
+        if (maxSearchedCommits <= 0) {
+            throw new IllegalArgumentException("the maximum number of searched commits must be strictly positive");
+        }
+        this.maxSearchedCommits = maxSearchedCommits;
+        return this;
+    }
+
+    /**
+     * Bounds the time a version calculation can spend searching the history, for callers that need a bounded latency
+     * like IDE imports. When the time is elapsed, a degraded version is returned as for
+     * {@link #setMaxSearchedCommits(int)}; as it depends on the number of commits searched in time, it may differ from
+     * one calculation to another.
+     * 
+     * @param maxSearchDuration the maximum duration, strictly positive, null for no time limit which is the default
+     * @return itself to chain settings
+     * @throws IllegalArgumentException if the duration is not strictly positive
+     */
+    public synchronized GitVersionCalculator setMaxSearchDuration(Duration maxSearchDuration) {
+        if (maxSearchDuration != null && (maxSearchDuration.isNegative() || maxSearchDuration.isZero())) {
+            throw new IllegalArgumentException("the maximum search duration must be strictly positive");
+        }
+        this.maxSearchDuration = maxSearchDuration;
+        return this;
+    }
+
     /**
      * Activates the maven like mode.
      * 
      * @param mavenLike true to activate maven like mode
      * @return itself to chain settings
      */
-    public GitVersionCalculator setMavenLike(boolean mavenLike) {
+    public synchronized GitVersionCalculator setMavenLike(boolean mavenLike) {
         this.mavenLike = mavenLike;
         return this;
     }
 
     @Override
     public Optional<String> meta(Metadatas meta) {
-        if (metadatas == null) {
-            getVersion();
+        return lastOrNewCalculation().metadatas.meta(meta);
+    }
+
+    @Override
+    public Optional<List<String>> metaAsList(Metadatas meta) {
+        return lastOrNewCalculation().metadatas.metaAsList(meta);
+    }
+
+    /**
+     * Calculates at once the versions of several components of the repository, as {@link #setComponent(Component)}
+     * would do for each of them. Tags are read once and a single history walk serves all the components, each commit
+     * being compared once to its parents whatever the number of components. The other settings of the calculator
+     * apply to all the components.
+     * 
+     * @param components the components to compute the version of
+     * @return the versions of the components, iterated in the order of the given components
+     */
+    public Map<Component, Version> getComponentVersions(Collection<Component> components) {
+        return getComponentVersions(components, new CancellationToken());
+    }
+
+    /**
+     * Calculates at once the versions of several components of the repository, as
+     * {@link #getComponentVersions(Collection)} does, the calculation being aborted as soon as the given token is
+     * cancelled or the current thread is interrupted.
+     * 
+     * @param components the components to compute the version of
+     * @param token the token allowing to cancel the calculation from another thread
+     * @return the versions of the components, iterated in the order of the given components
+     * @throws CancellationException if the calculation has been cancelled
+     */
+    public Map<Component, Version> getComponentVersions(Collection<Component> components, CancellationToken token) {
+        return computeComponents(snapshot(), new ArrayList<>(new LinkedHashSet<>(components)), token);
+    }
+
+    /**
+     * Retrieves the catalogue of the version tags of the repository, as seen by the last version calculation.
+     * A calculation is triggered if none was done before.
+     * 
+     * @return a non null catalogue, empty if the location is not a git repository
+     */
+    public VersionTagCatalogue getVersionTagCatalogue() {
+        return lastOrNewCalculation().catalogue();
+    }
+
+    private Calculation lastOrNewCalculation() {
+        Calculation calculation = lastCalculation;
+        if (calculation == null) {
+            calculation = calculate(new CancellationToken());
+        }
+        return calculation;
+    }
+
+    private synchronized Configuration snapshot() {
+        return new Configuration(this);
+    }
+
+    /**
+     * Immutable copy of the calculator settings, taken at the beginning of each calculation.
+     */
+    private static final class Configuration {
+        private final boolean mavenLike;
+        private final boolean autoIncrementPatch;
+        private final boolean useDistance;
+        private final boolean useGitCommitId;
+        private final boolean useDirty;
+        private final int gitCommitIdLength;
+        private final String nonQualifierBranches;
+        private final String findTagVersionPattern;
+        private final String extractTagVersionPattern;
+        private final Component component;
+        private final boolean writeChangedPathFilters;
+        private final boolean computeReachableVersionTags;
+        private final boolean useBitmapDistance;
+        private final boolean parallelDirtyCheck;
+        private final SearchAlgorithm searchAlgorithm;
+        private final int maxSearchedCommits;
+        private final Duration maxSearchDuration;
+
+        private Configuration(GitVersionCalculator calculator) {
+            this.mavenLike = calculator.mavenLike;
+            this.autoIncrementPatch = calculator.autoIncrementPatch;
+            this.useDistance = calculator.useDistance;
+            this.useGitCommitId = calculator.useGitCommitId;
+            this.useDirty = calculator.useDirty;
+            this.gitCommitIdLength = calculator.gitCommitIdLength;
+            this.nonQualifierBranches = calculator.nonQualifierBranches;
+            this.findTagVersionPattern = calculator.findTagVersionPattern;
+            this.extractTagVersionPattern = calculator.extractTagVersionPattern;
+            this.component = calculator.component;
+            this.writeChangedPathFilters = calculator.writeChangedPathFilters;
+            this.computeReachableVersionTags = calculator.computeReachableVersionTags;
+            this.useBitmapDistance = calculator.useBitmapDistance;
+            this.parallelDirtyCheck = calculator.parallelDirtyCheck;
+            this.searchAlgorithm = calculator.searchAlgorithm;
+            this.maxSearchedCommits = calculator.maxSearchedCommits;
+            this.maxSearchDuration = calculator.maxSearchDuration;
+        }
+
+        private SearchBudget startSearchBudget(CancellationToken token) {
+            return new SearchBudget(maxSearchedCommits, maxSearchDuration, token);
+        }
+
+        /**
+         * Describes the settings the version depends on, leaving out the ones only changing the way it is computed.
+         */
+        private String versionInputs() {
+            return "mavenLike " + mavenLike + '\n'
+                    + "autoIncrementPatch " + autoIncrementPatch + '\n'
+                    + "useDistance " + useDistance + '\n'
+                    + "useGitCommitId " + useGitCommitId + '\n'
+                    + "useDirty " + useDirty + '\n'
+                    + "gitCommitIdLength " + gitCommitIdLength + '\n'
+                    + "nonQualifierBranches " + nonQualifierBranches + '\n'
+                    + "findTagVersionPattern " + findTagVersionPattern + '\n'
+                    + "extractTagVersionPattern " + extractTagVersionPattern + '\n'
+                    + "component " + component + '\n'
+                    + "useBitmapDistance " + useBitmapDistance + '\n'
+                    + "maxSearchedCommits " + maxSearchedCommits + '\n'
+                    + "maxSearchDuration " + maxSearchDuration + '\n';
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Configuration)) {
+                return false;
+            }
+            Configuration other = (Configuration) obj;
+            return mavenLike == other.mavenLike
+                    && autoIncrementPatch == other.autoIncrementPatch
+                    && useDistance == other.useDistance
+                    && useGitCommitId == other.useGitCommitId
+                    && useDirty == other.useDirty
+                    && gitCommitIdLength == other.gitCommitIdLength
+                    && nonQualifierBranches.equals(other.nonQualifierBranches)
+                    && findTagVersionPattern.equals(other.findTagVersionPattern)
+                    && extractTagVersionPattern.equals(other.extractTagVersionPattern)
+                    && Objects.equals(component, other.component)
+                    && writeChangedPathFilters == other.writeChangedPathFilters
+                    && computeReachableVersionTags == other.computeReachableVersionTags
+                    && useBitmapDistance == other.useBitmapDistance
+                    && parallelDirtyCheck == other.parallelDirtyCheck
+                    && searchAlgorithm == other.searchAlgorithm
+                    && maxSearchedCommits == other.maxSearchedCommits
+                    && Objects.equals(maxSearchDuration, other.maxSearchDuration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mavenLike, autoIncrementPatch, useDistance, useGitCommitId, useDirty,
+                    gitCommitIdLength, nonQualifierBranches, findTagVersionPattern, extractTagVersionPattern, component,
+                    writeChangedPathFilters, computeReachableVersionTags, useBitmapDistance, parallelDirtyCheck,
+                    searchAlgorithm, maxSearchedCommits, maxSearchDuration);
+        }
+    }
+
+    /**
+     * Identifies the calculations giving the same version: same settings on the same HEAD and tags.
+     */
+    private static final class CalculationKey {
+        private final Configuration configuration;
+        private final String refsState;
+
+        private CalculationKey(Configuration configuration, String refsState) {
+            this.configuration = configuration;
+            this.refsState = refsState;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CalculationKey)) {
+                return false;
+            }
+            CalculationKey other = (CalculationKey) obj;
+            return configuration.equals(other.configuration) && refsState.equals(other.refsState);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(configuration, refsState);
+        }
+    }
+
+    /**
+     * State of the version search of one component, when several components are searched at once.
+     */
+    private static final class ComponentSearch {
+        private final Component component;
+        private final VersionStrategy strategy;
+        private final TagIndex tags;
+        private final BitSet paths;
+        private final HistorySearch history;
+
+        private ComponentSearch(Component component, VersionStrategy strategy, TagIndex tags, BitSet paths,
+                HistorySearch history) {
+            this.component = component;
+            this.strategy = strategy;
+            this.tags = tags;
+            this.paths = paths;
+            this.history = history;
+        }
+    }
+
+    /**
+     * Outcome of one calculation: the version and the metadata gathered while computing it.
+     */
+    private static final class Calculation {
+        private final Version version;
+        private final MetadataHolder metadatas;
+        private final TagIndex tags;
+        private final VersionNamingConfiguration vnc;
+        private VersionTagCatalogue catalogue;
+
+        private Calculation(Version version, MetadataHolder metadatas, TagIndex tags, VersionNamingConfiguration vnc) {
+            this.version = version;
+            this.metadatas = metadatas;
+            this.tags = tags;
+            this.vnc = vnc;
+        }
+
+        private synchronized VersionTagCatalogue catalogue() {
+            if (catalogue == null) {
+                catalogue = tags == null ? VersionTagCatalogue.empty()
+                        : new VersionTagCatalogue(tags, vnc::extractVersionFrom);
+            }
+            return catalogue;
         }
-        return metadatas.meta(meta);
     }
 }
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+/**
+ * Algorithms available to search, in the history of HEAD, the commits holding version tags.
+ */
+public enum SearchAlgorithm {
+    /**
+     * Selects the algorithm on each calculation from cheap statistics: presence of a pack bitmap index, shallow clone,
+     * number of version tags, search mode of the strategy and number of commits searched by the previous calculation.
+     * A search bounded by a maximum number of commits or a maximum duration always walks.
+     */
+    AUTO,
+    /**
+     * Walks the history from HEAD until commits with version tags are found, or until the first commit of the
+     * repository. Cheap when a version tag is close to HEAD.
+     */
+    WALK,
+    /**
+     * Tests first which version tagged commits are ancestors of HEAD, from the pack bitmap index when available, then
+     * walks the history only until all of them have been met. When none is reachable, the distance to the first commit
+     * is the number of reachable commits counted from the bitmaps, and only the first parents chain is walked to find
+     * that commit. Cheap on long histories having few or far version tags. As the reachable commits are computed at
+     * once, a search bounded by a maximum number of commits or a maximum duration walks instead.
+     */
+    TAG_ANCESTRY;
+}
@@ -15,7 +15,6 @@
  */
 package fr.brouillard.oss.jgitver;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -23,7 +22,15 @@ import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class Version {
+/**
+ * Immutable semver like version made of major, minor &amp; patch numbers followed by an optional list of qualifiers.
+ *
+ * <p>Versions are ordered following semver precedence rules, qualifiers playing the role of pre-release identifiers.
+ * The string representation is only built when first requested.
+ */
+public final class Version implements Comparable<Version> {
+    private static final String[] NO_QUALIFIERS = new String[0];
+
     public static final Version DEFAULT_VERSION = new Version(0, 0, 0);
     public static final Version EMPTY_REPOSITORY_VERSION = DEFAULT_VERSION.addQualifier("EMPTY_GIT_REPOSITORY");
     public static final Version NOT_GIT_VERSION = DEFAULT_VERSION.addQualifier("NOT_A_GIT_REPOSITORY");
@@ -31,30 +38,164 @@ public class Version {
     private final int major;
     private final int minor;
     private final int patch;
+    private final String[] qualifiers;
     private String stringRepresentation;
-    private List<String> qualifiers;
+    private int hash;
     
     public Version(int major, int minor, int patch, String...qualifiers) {
-        this(major, minor, patch, Arrays.asList(qualifiers));
+        this(qualifiers.length == 0 ? NO_QUALIFIERS : qualifiers.clone(), major, minor, patch);
     }
     
-    private Version(int major, int minor, int patch, List<String> qualifiers) {
+    private Version(String[] qualifiers, int major, int minor, int patch) {
         this.major = major;
         this.minor = minor;
         this.patch = patch;
         this.qualifiers = qualifiers;
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%d.%d.%d", major, minor, patch));
-        
-        this.qualifiers.forEach(q -> sb.append('-').append(q));
-        this.stringRepresentation = sb.toString();
+    }
+
+    /**
+     * Builds a version taking ownership of the given qualifiers array, which must not be modified afterwards.
+     */
+    private static Version ofOwned(int major, int minor, int patch, String[] qualifiers) {
+        return new Version(qualifiers, major, minor, patch);
     }
     
+    public int getMajor() {
+        return major;
+    }
+
+    public int getMinor() {
+        return minor;
+    }
+
+    public int getPatch() {
+        return patch;
+    }
+
+    /**
+     * Retrieves the qualifiers of this version.
+     * @return a non null unmodifiable list of qualifiers, in declaration order
+     */
+    public List<String> getQualifiers() {
+        return Collections.unmodifiableList(Arrays.asList(qualifiers));
+    }
     
     @Override
     public String toString() {
-        return stringRepresentation;
+        String s = stringRepresentation;
+        if (s == null) {
+            StringBuilder sb = new StringBuilder(16);
+            sb.append(major).append('.').append(minor).append('.').append(patch);
+            for (String q : qualifiers) {
+                sb.append('-').append(q);
+            }
+            s = sb.toString();
+            stringRepresentation = s;
+        }
+        return s;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Version)) {
+            return false;
+        }
+        Version other = (Version) obj;
+        return major == other.major && minor == other.minor && patch == other.patch
+                && Arrays.equals(qualifiers, other.qualifiers);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * (31 * (31 * major + minor) + patch) + Arrays.hashCode(qualifiers);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Compares versions using semver precedence: numbers are compared numerically, a version without qualifiers has
+     * precedence over a qualified one, qualifiers are compared one by one (numerically when both are numeric, numeric
+     * ones having lower precedence than alphanumeric ones) and a longer list of qualifiers wins when all the preceding
+     * ones are equal.
+     * For consistency with {@link #equals(Object)}, numeric qualifiers with same value but different representation
+     * (ie "01" and "1") are finally ordered lexically.
+     */
+    @Override
+    public int compareTo(Version other) {
+        int c = Integer.compare(major, other.major);
+        if (c == 0) {
+            c = Integer.compare(minor, other.minor);
+        }
+        if (c == 0) {
+            c = Integer.compare(patch, other.patch);
+        }
+        if (c != 0) {
+            return c;
+        }
+        if (qualifiers.length == 0 || other.qualifiers.length == 0) {
+            return Integer.compare(other.qualifiers.length, qualifiers.length);
+        }
+        int common = Math.min(qualifiers.length, other.qualifiers.length);
+        for (int i = 0; i < common; i++) {
+            c = compareQualifiers(qualifiers[i], other.qualifiers[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(qualifiers.length, other.qualifiers.length);
+    }
+
+    private static int compareQualifiers(String q1, String q2) {
+        boolean numeric1 = isNumeric(q1);
+        boolean numeric2 = isNumeric(q2);
+        if (numeric1 && numeric2) {
+            int c = compareNumerically(q1, q2);
+            return c != 0 ? c : q1.compareTo(q2);
+        }
+        if (numeric1 != numeric2) {
+            return numeric1 ? -1 : 1;
+        }
+        return q1.compareTo(q2);
+    }
+
+    private static boolean isNumeric(String qualifier) {
+        if (qualifier.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < qualifier.length(); i++) {
+            char c = qualifier.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two strings made of digits only, whatever their length.
+     */
+    private static int compareNumerically(String n1, String n2) {
+        int start1 = firstSignificantDigit(n1);
+        int start2 = firstSignificantDigit(n2);
+        int c = Integer.compare(n1.length() - start1, n2.length() - start2);
+        for (int i = 0; c == 0 && start1 + i < n1.length(); i++) {
+            c = Character.compare(n1.charAt(start1 + i), n2.charAt(start2 + i));
+        }
+        return c;
+    }
+
+    private static int firstSignificantDigit(String number) {
+        int i = 0;
+        while (i < number.length() - 1 && number.charAt(i) == '0') {
+            i++;
+        }
+        return i;
     }
     
     /**
@@ -63,9 +204,9 @@ public class Version {
      * @return a new Version object with exact same major/minor/patch numbers, previous qualifiers and the new added one
      */
     public Version addQualifier(String qualifier) {
-        List<String> newQualifiers = new ArrayList<>(this.qualifiers);
-        newQualifiers.add(qualifier);
-        return new Version(major, minor, patch, newQualifiers.toArray(new String[newQualifiers.size()]));
+        String[] newQualifiers = Arrays.copyOf(qualifiers, qualifiers.length + 1);
+        newQualifiers[qualifiers.length] = qualifier;
+        return ofOwned(major, minor, patch, newQualifiers);
     }
     
     /**
@@ -74,9 +215,11 @@ public class Version {
      * @return a new Version object with exact same major/minor/patch numbers, previous qualifiers without the given one
      */
     public Version removeQualifier(String qualifier) {
-        List<String> newQualifiers = new ArrayList<>(this.qualifiers);
-        newQualifiers.remove(qualifier);
-        return new Version(major, minor, patch, newQualifiers.toArray(new String[newQualifiers.size()]));
+        int index = indexOf(qualifiers, qualifiers.length, qualifier);
+        if (index < 0) {
+            return this;
+        }
+        return ofOwned(major, minor, patch, remove(qualifiers, qualifiers.length, index));
     }
     
     /**
@@ -84,7 +227,7 @@ public class Version {
      * @return a new Version object with exact same major/minor/patch numbers, but without any qualifier
      */
     public Version noQualifier() {
-        return new Version(major, minor, patch, Collections.emptyList());
+        return qualifiers.length == 0 ? this : ofOwned(major, minor, patch, NO_QUALIFIERS);
     }
     
     private static final Pattern globalVersionPattern = Pattern.compile("^([0-9]+)(?:\\.([0-9]+))?(?:\\.([0-9]+))?(\\-[a-zA-Z0-9][a-zA-Z0-9\\-_]*)?$");
@@ -96,6 +239,101 @@ public class Version {
      * @throws IllegalStateException if the given string doesn't match the version
      */
     public static Version parse(String versionAsString) {
+        Version version = parseCommonForm(versionAsString);
+        return version != null ? version : parseWithPattern(versionAsString);
+    }
+
+    /**
+     * Single pass parsing of the usual X.Y.Z-q1-q2 forms, without regular expressions.
+     * Every string accepted here is also accepted by {@link #globalVersionPattern} and gives the same version ; unusual
+     * forms (empty qualifiers, numbers that may not fit an int, invalid strings) are left to the pattern based parsing.
+     * @param versionAsString the string to parse
+     * @return the parsed version or null if the given string is not one of the handled forms
+     */
+    static Version parseCommonForm(String versionAsString) {
+        int length = versionAsString.length();
+        int index = 0;
+        int major = 0;
+        int minor = 0;
+        int patch = 0;
+
+        for (int part = 0; part < 3; part++) {
+            int start = index;
+            int value = 0;
+            char c = 0;
+            while (index < length && (c = versionAsString.charAt(index)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                index++;
+            }
+            int digits = index - start;
+            if (digits == 0 || digits > 9) {
+                // no number or a number that could overflow
+                return null;
+            }
+
+            if (part == 0) {
+                major = value;
+            } else if (part == 1) {
+                minor = value;
+            } else {
+                patch = value;
+            }
+
+            if (index == length) {
+                return ofOwned(major, minor, patch, NO_QUALIFIERS);
+            }
+            if (c == '-') {
+                break;
+            }
+            if (c != '.' || part == 2) {
+                return null;
+            }
+            index++;
+        }
+
+        // index is on the dash introducing the qualifiers
+        int qualifiersStart = ++index;
+        if (index == length || !isAlphaNumeric(versionAsString.charAt(index))) {
+            return null;
+        }
+        int count = 1;
+        for (; index < length; index++) {
+            char c = versionAsString.charAt(index);
+            if (c == '-') {
+                if (index + 1 == length || versionAsString.charAt(index + 1) == '-') {
+                    // empty qualifier
+                    return null;
+                }
+                count++;
+            } else if (c != '_' && !isAlphaNumeric(c)) {
+                return null;
+            }
+        }
+
+        String[] qualifiers = new String[count];
+        int start = qualifiersStart;
+        for (int q = 0; q < count - 1; q++) {
+            int end = versionAsString.indexOf('-', start);
+            qualifiers[q] = versionAsString.substring(start, end);
+            start = end + 1;
+        }
+        qualifiers[count - 1] = versionAsString.substring(start);
+
+        return ofOwned(major, minor, patch, qualifiers);
+    }
+
+    private static boolean isAlphaNumeric(char character) {
+        return (character >= '0' && character <= '9') || (character >= 'a' && character <= 'z')
+                || (character >= 'A' && character <= 'Z');
+    }
+
+    /**
+     * Parses the given string using {@link #globalVersionPattern}.
+     * @param versionAsString the string to parse
+     * @return a Version object built from the information of the given representation
+     * @throws IllegalStateException if the given string doesn't match the version
+     */
+    static Version parseWithPattern(String versionAsString) {
         Matcher globalVersionMatcher = globalVersionPattern.matcher(versionAsString);
         
         if (globalVersionMatcher.matches()) {
@@ -105,26 +343,156 @@ public class Version {
             
             String qualifiersAsString = globalVersionMatcher.group(4);
             
-            String[] qualifiers = new String[0];
+            String[] qualifiers = NO_QUALIFIERS;
             if (qualifiersAsString != null) {
                 qualifiers = qualifiersAsString.replaceFirst("-", "").split("\\-");
             }
             
-            return new Version(major, minor, patch, qualifiers);
+            return ofOwned(major, minor, patch, qualifiers);
         }
         
         throw new IllegalStateException("cannot parse " + versionAsString + " as a semver compatible version");
     }
 
     public Version increasePatch() {
-        return new Version(major, minor, patch + 1, qualifiers);
+        return ofOwned(major, minor, patch + 1, qualifiers);
     }
     
     public boolean isSnapshot() {
-        return qualifiers.stream().anyMatch("SNAPSHOT"::equals);
+        return indexOf(qualifiers, qualifiers.length, "SNAPSHOT") >= 0;
     }
     
     public boolean isQualified() {
-        return qualifiers.size() > 0;
+        return qualifiers.length > 0;
+    }
+
+    /**
+     * Creates a builder initialized with this version, to apply several modifications without creating intermediate
+     * Version objects.
+     * @return a new non null builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private static int indexOf(String[] qualifiers, int count, String qualifier) {
+        for (int i = 0; i < count; i++) {
+            if (qualifiers[i].equals(qualifier)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] remove(String[] qualifiers, int count, int index) {
+        String[] newQualifiers = new String[count - 1];
+        System.arraycopy(qualifiers, 0, newQualifiers, 0, index);
+        System.arraycopy(qualifiers, index + 1, newQualifiers, index, count - index - 1);
+        return newQualifiers;
+    }
+
+    /**
+     * Mutable companion of {@link Version} used to compose qualifiers in several steps.
+     * Methods mirror the ones of {@link Version} and have the same semantic.
+     */
+    public static final class Builder {
+        private final int major;
+        private final int minor;
+        private int patch;
+        private String[] qualifiers;
+        private int count;
+        private boolean shared;
+        private Version source;
+
+        private Builder(Version version) {
+            this.major = version.major;
+            this.minor = version.minor;
+            this.patch = version.patch;
+            this.qualifiers = version.qualifiers;
+            this.count = version.qualifiers.length;
+            this.shared = true;
+            this.source = version;
+        }
+
+        /**
+         * Appends a qualifier.
+         * @param qualifier the qualifier to be added
+         * @return the builder itself
+         */
+        public Builder addQualifier(String qualifier) {
+            if (shared || count == qualifiers.length) {
+                qualifiers = Arrays.copyOf(qualifiers, Math.max(4, count * 2));
+                shared = false;
+            }
+            qualifiers[count++] = qualifier;
+            source = null;
+            return this;
+        }
+
+        /**
+         * Removes the first occurrence of the given qualifier if it exists.
+         * @param qualifier the qualifier to be removed
+         * @return the builder itself
+         */
+        public Builder removeQualifier(String qualifier) {
+            int index = indexOf(qualifiers, count, qualifier);
+            if (index >= 0) {
+                if (shared) {
+                    qualifiers = remove(qualifiers, count, index);
+                    shared = false;
+                } else {
+                    System.arraycopy(qualifiers, index + 1, qualifiers, index, count - index - 1);
+                    qualifiers[count - 1] = null;
+                }
+                count--;
+                source = null;
+            }
+            return this;
+        }
+
+        /**
+         * Removes all qualifiers.
+         * @return the builder itself
+         */
+        public Builder noQualifier() {
+            if (count > 0) {
+                qualifiers = NO_QUALIFIERS;
+                count = 0;
+                shared = true;
+                source = null;
+            }
+            return this;
+        }
+
+        /**
+         * Increases the patch number by one.
+         * @return the builder itself
+         */
+        public Builder increasePatch() {
+            patch++;
+            source = null;
+            return this;
+        }
+
+        public boolean isSnapshot() {
+            return indexOf(qualifiers, count, "SNAPSHOT") >= 0;
+        }
+
+        public boolean isQualified() {
+            return count > 0;
+        }
+
+        /**
+         * Builds the resulting version.
+         * @return a non null immutable Version
+         */
+        public Version build() {
+            if (source != null) {
+                return source;
+            }
+            String[] result = count == 0 ? NO_QUALIFIERS : (shared && count == qualifiers.length)
+                    ? qualifiers : Arrays.copyOf(qualifiers, count);
+            return ofOwned(major, minor, patch, result);
+        }
     }
 }
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+import fr.brouillard.oss.jgitver.impl.GitUtils;
+import fr.brouillard.oss.jgitver.impl.TagIndex;
+
+/**
+ * Catalogue of the version tags of a repository, ordered by {@link Version} precedence.
+ *
+ * <p>Every version tag is parsed once when the catalogue is built ; queries are then answered from memory without
+ * reading the repository again. When several tags represent the same version (ie "v1.0.0" &amp; "1.0.0"), they are
+ * returned in the tag index order (most recent first).
+ */
+public class VersionTagCatalogue {
+    private final NavigableMap<Version, List<VersionTag>> tagsByVersion;
+    private final Map<String, VersionTag> tagsByName;
+
+    /**
+     * Builds a catalogue from the version tags of the given index ; catalogues are obtained from
+     * {@link GitVersionCalculator}.
+     * @param tags the tag index of a repository
+     * @param versionExtractor function extracting the version string from a tag name
+     */
+    VersionTagCatalogue(TagIndex tags, Function<String, String> versionExtractor) {
+        this.tagsByVersion = new TreeMap<>();
+        this.tagsByName = new HashMap<>();
+
+        for (Ref ref : tags.getVersionTags()) {
+            String tagName = GitUtils.tagNameFromRef(ref);
+            Version version;
+            try {
+                version = Version.parse(versionExtractor.apply(tagName));
+            } catch (RuntimeException ex) {
+                // tag name matches the version pattern but does not hold a semver compatible version
+                continue;
+            }
+            VersionTag tag = new VersionTag(tagName, version, TagIndex.targetOf(ref), GitUtils.isAnnotated(ref));
+            tagsByVersion.computeIfAbsent(version, v -> new ArrayList<>(1)).add(tag);
+            tagsByName.put(tagName, tag);
+        }
+    }
+
+    /**
+     * Creates an empty catalogue.
+     * @return a catalogue without any tag
+     */
+    static VersionTagCatalogue empty() {
+        return new VersionTagCatalogue(new TagIndex(Collections.emptyList(), ref -> false), Function.identity());
+    }
+
+    public boolean isEmpty() {
+        return tagsByVersion.isEmpty();
+    }
+
+    /**
+     * Retrieves all the version tags.
+     * @return a non null list of tags sorted from lowest to highest version
+     */
+    public List<VersionTag> all() {
+        return flatten(tagsByVersion);
+    }
+
+    /**
+     * Retrieves the tag with the given name.
+     * @param tagName the short name of the tag, without refs/tags/ prefix
+     * @return the corresponding version tag if it exists in the catalogue
+     */
+    public Optional<VersionTag> tag(String tagName) {
+        return Optional.ofNullable(tagsByName.get(tagName));
+    }
+
+    /**
+     * Retrieves the tag holding the highest version.
+     * @return the highest version tag, empty if the catalogue is empty
+     */
+    public Optional<VersionTag> highest() {
+        return first(tagsByVersion.lastEntry());
+    }
+
+    /**
+     * Retrieves the tag holding the highest version without any qualifier, ie the last release.
+     * @return the highest released version tag, empty if no such tag exist
+     */
+    public Optional<VersionTag> highestRelease() {
+        for (Map.Entry<Version, List<VersionTag>> entry : tagsByVersion.descendingMap().entrySet()) {
+            if (!entry.getKey().isQualified()) {
+                return first(entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves the tag holding the greatest version less than or equal to the given one.
+     * @param version the version to search for
+     * @return the found tag if any
+     */
+    public Optional<VersionTag> floor(Version version) {
+        return first(tagsByVersion.floorEntry(version));
+    }
+
+    /**
+     * Retrieves the tag holding the least version greater than or equal to the given one.
+     * @param version the version to search for
+     * @return the found tag if any
+     */
+    public Optional<VersionTag> ceiling(Version version) {
+        return first(tagsByVersion.ceilingEntry(version));
+    }
+
+    /**
+     * Retrieves the tag holding the greatest version strictly less than the given one.
+     * @param version the version to search for
+     * @return the found tag if any
+     */
+    public Optional<VersionTag> lower(Version version) {
+        return first(tagsByVersion.lowerEntry(version));
+    }
+
+    /**
+     * Retrieves the tag holding the least version strictly greater than the given one.
+     * @param version the version to search for
+     * @return the found tag if any
+     */
+    public Optional<VersionTag> higher(Version version) {
+        return first(tagsByVersion.higherEntry(version));
+    }
+
+    /**
+     * Retrieves the tag holding the version following the one of the given tag.
+     * @param tagName the short name of a version tag
+     * @return the tag with the least version strictly greater than the one of the given tag, empty if the given tag
+     *      is unknown or holds the highest version
+     */
+    public Optional<VersionTag> next(String tagName) {
+        return tag(tagName).flatMap(t -> higher(t.getVersion()));
+    }
+
+    /**
+     * Retrieves all the tags whose version is in the given range.
+     * @param from the lower bound of the range
+     * @param fromInclusive true if tags holding the lower bound version are to be included
+     * @param to the upper bound of the range
+     * @param toInclusive true if tags holding the upper bound version are to be included
+     * @return a non null list of tags sorted from lowest to highest version
+     */
+    public List<VersionTag> between(Version from, boolean fromInclusive, Version to, boolean toInclusive) {
+        if (from.compareTo(to) > 0) {
+            return Collections.emptyList();
+        }
+        return flatten(tagsByVersion.subMap(from, fromInclusive, to, toInclusive));
+    }
+
+    private static Optional<VersionTag> first(Map.Entry<Version, List<VersionTag>> entry) {
+        return entry == null ? Optional.empty() : Optional.of(entry.getValue().get(0));
+    }
+
+    private static List<VersionTag> flatten(NavigableMap<Version, List<VersionTag>> tags) {
+        List<VersionTag> result = new ArrayList<>();
+        tags.values().forEach(result::addAll);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * A version tag of the repository.
+     */
+    public static final class VersionTag {
+        private final String name;
+        private final Version version;
+        private final ObjectId commitId;
+        private final boolean annotated;
+
+        VersionTag(String name, Version version, ObjectId commitId, boolean annotated) {
+            this.name = name;
+            this.version = version;
+            this.commitId = commitId;
+            this.annotated = annotated;
+        }
+
+        /**
+         * Name of the tag, without refs/tags/ prefix.
+         * @return the tag name
+         */
+        public String getName() {
+            return name;
+        }
+
+        public Version getVersion() {
+            return version;
+        }
+
+        /**
+         * Identifier of the object the tag finally points to, once peeled.
+         * @return the tagged commit id
+         */
+        public ObjectId getCommitId() {
+            return commitId;
+        }
+
+        public boolean isAnnotated() {
+            return annotated;
+        }
+
+        @Override
+        public String toString() {
+            return name + " -> " + version + " @ " + commitId.getName();
+        }
+    }
+}
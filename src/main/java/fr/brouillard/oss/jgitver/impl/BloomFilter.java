@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.util.Collection;
+
+/**
+ * A changed-path Bloom filter, as defined by git for its commit-graph files: the probabilistic set of the paths
+ * modified by a commit compared to its first parent, the leading directories of those paths included.
+ *
+ * <p>A filter never misses a modified path but can wrongly report an unmodified one as modified, so it is only used to
+ * skip the commits that for sure did not modify some paths.
+ */
+public final class BloomFilter {
+    /**
+     * Version of the filters written by git before the fix of its murmur3 implementation, which reads bytes as signed
+     * values; both versions give the same result for ASCII paths.
+     */
+    static final int VERSION_SIGNED_MURMUR3 = 1;
+    static final int VERSION_UNSIGNED_MURMUR3 = 2;
+    static final int DEFAULT_NUM_HASHES = 7;
+    static final int DEFAULT_BITS_PER_ENTRY = 10;
+    static final int MAX_CHANGED_PATHS = 512;
+
+    private static final int SEED_0 = 0x293ae76f;
+    private static final int SEED_1 = 0x7e646e2c;
+    private static final byte[] TOO_LARGE = {(byte) 0xFF};
+
+    private final int version;
+    private final int numHashes;
+    private final byte[] data;
+
+    BloomFilter(int version, int numHashes, byte[] data) {
+        this.version = version;
+        this.numHashes = numHashes;
+        this.data = data;
+    }
+
+    /**
+     * Builds the filter of the given changed paths, with the settings git uses by default.
+     * @param changedPaths the modified paths and their leading directories
+     * @return a filter matching all the given paths ; when there are more paths than git accepts in a filter, a filter
+     *      matching any path
+     */
+    static BloomFilter of(Collection<byte[]> changedPaths) {
+        if (changedPaths.size() > MAX_CHANGED_PATHS) {
+            return new BloomFilter(VERSION_UNSIGNED_MURMUR3, DEFAULT_NUM_HASHES, TOO_LARGE.clone());
+        }
+        int length = Math.max(1, (changedPaths.size() * DEFAULT_BITS_PER_ENTRY + Byte.SIZE - 1) / Byte.SIZE);
+        BloomFilter filter = new BloomFilter(VERSION_UNSIGNED_MURMUR3, DEFAULT_NUM_HASHES, new byte[length]);
+        for (byte[] path : changedPaths) {
+            filter.add(path);
+        }
+        return filter;
+    }
+
+    private void add(byte[] path) {
+        long mod = data.length * (long) Byte.SIZE;
+        int hash0 = murmur3(SEED_0, path, version == VERSION_SIGNED_MURMUR3);
+        int hash1 = murmur3(SEED_1, path, version == VERSION_SIGNED_MURMUR3);
+        for (int i = 0; i < numHashes; i++) {
+            long position = ((hash0 + i * hash1) & 0xFFFFFFFFL) % mod;
+            data[(int) (position >>> 3)] |= (byte) (1 << (position & 7));
+        }
+    }
+
+    /**
+     * Tells if the given path may have been modified.
+     * @param path the path, relative to the repository root without leading or trailing '/', encoded in UTF-8
+     * @return false if the path has not been modified for sure, true if it may have been
+     */
+    public boolean mightContain(byte[] path) {
+        long mod = data.length * (long) Byte.SIZE;
+        if (mod == 0) {
+            // git writes empty filters for the commits it did not compute a filter for
+            return true;
+        }
+        int hash0 = murmur3(SEED_0, path, version == VERSION_SIGNED_MURMUR3);
+        int hash1 = murmur3(SEED_1, path, version == VERSION_SIGNED_MURMUR3);
+        for (int i = 0; i < numHashes; i++) {
+            long position = ((hash0 + i * hash1) & 0xFFFFFFFFL) % mod;
+            if ((data[(int) (position >>> 3)] & (1 << (position & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    int getNumHashes() {
+        return numHashes;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * 32 bits murmur3 hash, as implemented by git for its changed-path filters.
+     * @param seed the hash seed
+     * @param data the bytes to hash
+     * @param signedBytes true to reproduce the sign extension of bytes done by the first git implementation
+     * @return the hash value
+     */
+    static int murmur3(int seed, byte[] data, boolean signedBytes) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int hash = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = byteAt(data, 4 * i, signedBytes)
+                    | byteAt(data, 4 * i + 1, signedBytes) << 8
+                    | byteAt(data, 4 * i + 2, signedBytes) << 16
+                    | byteAt(data, 4 * i + 3, signedBytes) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            hash ^= k;
+            hash = Integer.rotateLeft(hash, 13);
+            hash = hash * 5 + 0xe6546b64;
+        }
+        int tail = 4 * blocks;
+        if (tail < data.length) {
+            // the last one to three bytes, mixed as a little-endian partial block
+            int k1 = 0;
+            for (int i = tail; i < data.length; i++) {
+                k1 ^= byteAt(data, i, signedBytes) << 8 * (i - tail);
+            }
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            hash ^= k1;
+        }
+        hash ^= data.length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static int byteAt(byte[] data, int index, boolean signedBytes) {
+        return signedBytes ? data[index] : data[index] & 0xFF;
+    }
+}
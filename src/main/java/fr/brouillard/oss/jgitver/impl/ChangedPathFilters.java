@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Provides the changed-path Bloom filters of commits, so that path scoped walks can skip the commits that for sure did
+ * not modify some paths without reading any tree.
+ *
+ * <p>Filters are looked up first in the commit-graph files written by git ({@code git commit-graph write --changed-paths}),
+ * then in a sidecar file kept by jgitver under {@code jgitver/changed-paths} in the git directory. When allowed, the
+ * filters of the commits found in none of them are computed and stored in the sidecar file for the next calculations.
+ */
+public class ChangedPathFilters {
+    private static final int SIDECAR_SIGNATURE = 0x4a474350; // JGCP
+    private static final int SIDECAR_FORMAT = 1;
+
+    private final List<CommitGraph> commitGraphs;
+    private final File sidecarFile;
+    private final Map<ObjectId, BloomFilter> sidecarFilters;
+    private final boolean generate;
+    private boolean sidecarModified = false;
+
+    private ChangedPathFilters(List<CommitGraph> commitGraphs, File sidecarFile, Map<ObjectId, BloomFilter> sidecarFilters,
+            boolean generate) {
+        this.commitGraphs = commitGraphs;
+        this.sidecarFile = sidecarFile;
+        this.sidecarFilters = sidecarFilters;
+        this.generate = generate && sidecarFile != null;
+    }
+
+    /**
+     * Filters that know no commit, all paths being then considered as possibly modified.
+     * @return filters without any source
+     */
+    public static ChangedPathFilters none() {
+        return new ChangedPathFilters(Collections.emptyList(), null, Collections.emptyMap(), false);
+    }
+
+    /**
+     * Loads the filters available for the given repository. Unreadable or corrupted files are ignored, the filters
+     * being only an optimization.
+     * @param repository the repository to load the filters of
+     * @param generate true to compute the missing filters, {@link #saveGeneratedFilters()} storing them
+     * @return the filters of the repository
+     */
+    public static ChangedPathFilters load(Repository repository, boolean generate) {
+        List<CommitGraph> commitGraphs = Collections.emptyList();
+        if (repository instanceof FileRepository) {
+            try {
+                commitGraphs = CommitGraph.load(((FileRepository) repository).getObjectsDirectory());
+            } catch (IOException | RuntimeException ignore) {
+                // unreadable commit-graph, as git does let's go on without it
+            }
+        }
+        File gitDir = repository.getDirectory();
+        File sidecarFile = gitDir == null ? null : new File(new File(gitDir, "jgitver"), "changed-paths");
+        // repositories without a git directory, as DFS ones, cannot store the computed filters
+        return new ChangedPathFilters(commitGraphs, sidecarFile, readSidecar(sidecarFile),
+                generate && sidecarFile != null);
+    }
+
+    /**
+     * Retrieves the filter of the given commit, computing it if it is unknown and generation is allowed.
+     * @param walk the walk that produced the commit
+     * @param commit a commit having at least one parent
+     * @return the filter of the changes of the commit compared to its first parent, null if unknown
+     * @throws IOException if the trees of the commit cannot be read while computing its filter
+     */
+    public BloomFilter filterOf(RevWalk walk, RevCommit commit) throws IOException {
+        for (CommitGraph graph : commitGraphs) {
+            BloomFilter filter = graph.filterOf(commit);
+            if (filter != null) {
+                return filter;
+            }
+        }
+        BloomFilter filter = sidecarFilters.get(commit);
+        if (filter == null && generate) {
+            filter = compute(walk, commit);
+            sidecarFilters.put(commit.copy(), filter);
+            sidecarModified = true;
+        }
+        return filter;
+    }
+
+    private static BloomFilter compute(RevWalk walk, RevCommit commit) throws IOException {
+        RevCommit parent = commit.getParent(0);
+        walk.parseHeaders(parent);
+        // as git does: modified files and their leading directories, compared to the first parent
+        Set<String> changedPaths = new LinkedHashSet<>();
+        try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.addTree(parent.getTree());
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next() && changedPaths.size() <= BloomFilter.MAX_CHANGED_PATHS) {
+                String path = treeWalk.getPathString();
+                for (int slash = path.length(); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                    if (!changedPaths.add(path.substring(0, slash))) {
+                        break;
+                    }
+                }
+            }
+        }
+        List<byte[]> encodedPaths = new ArrayList<>(changedPaths.size());
+        for (String path : changedPaths) {
+            encodedPaths.add(Constants.encode(path));
+        }
+        return BloomFilter.of(encodedPaths);
+    }
+
+    /**
+     * Stores the filters computed since the loading in the sidecar file. Failures are ignored, the filters being
+     * computed again by the next calculation.
+     */
+    public void saveGeneratedFilters() {
+        if (!sidecarModified) {
+            return;
+        }
+        sidecarModified = false;
+        File tmp = null;
+        try {
+            Files.createDirectories(sidecarFile.getParentFile().toPath());
+            tmp = File.createTempFile("changed-paths", ".tmp", sidecarFile.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(SIDECAR_SIGNATURE);
+                out.writeInt(SIDECAR_FORMAT);
+                out.writeInt(sidecarFilters.size());
+                byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+                for (Map.Entry<ObjectId, BloomFilter> entry : sidecarFilters.entrySet()) {
+                    entry.getKey().copyRawTo(raw, 0);
+                    out.write(raw);
+                    out.writeByte(entry.getValue().getVersion());
+                    out.writeByte(entry.getValue().getNumHashes());
+                    out.writeInt(entry.getValue().getData().length);
+                    out.write(entry.getValue().getData());
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), sidecarFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ignore) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static Map<ObjectId, BloomFilter> readSidecar(File sidecarFile) {
+        Map<ObjectId, BloomFilter> filters = new HashMap<>();
+        if (sidecarFile == null || !sidecarFile.isFile()) {
+            return filters;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecarFile.toPath())))) {
+            if (in.readInt() != SIDECAR_SIGNATURE || in.readInt() != SIDECAR_FORMAT) {
+                return filters;
+            }
+            int count = in.readInt();
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                int version = in.readUnsignedByte();
+                int numHashes = in.readUnsignedByte();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                filters.put(ObjectId.fromRaw(raw), new BloomFilter(version, numHashes, data));
+            }
+            return filters;
+        } catch (IOException | RuntimeException ignore) {
+            // corrupted sidecar, it will be rewritten by the next generation
+            return new HashMap<>();
+        }
+    }
+}
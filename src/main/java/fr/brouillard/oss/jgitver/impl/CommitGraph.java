@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Read only access to the changed-path Bloom filters stored by git in a commit-graph file, either
+ * {@code objects/info/commit-graph} or one of the layers listed by {@code objects/info/commit-graphs/commit-graph-chain}.
+ * Only the chunks needed to find the filter of a commit are read: OIDF, OIDL, BIDX &amp; BDAT.
+ */
+final class CommitGraph {
+    private static final int SIGNATURE = 0x43475048; // CGPH
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; // OIDF
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // OIDL
+    private static final int CHUNK_BLOOM_INDEXES = 0x42494458; // BIDX
+    private static final int CHUNK_BLOOM_DATA = 0x42444154; // BDAT
+    private static final int HEADER_SIZE = 8;
+    private static final int CHUNK_ENTRY_SIZE = 12;
+    private static final int BLOOM_DATA_HEADER_SIZE = 12;
+    private static final int SHA1_VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final int fanoutOffset;
+    private final int oidLookupOffset;
+    private final int bloomIndexesOffset;
+    private final int bloomDataOffset;
+    private final int bloomVersion;
+    private final int numHashes;
+
+    private CommitGraph(ByteBuffer buffer, int fanoutOffset, int oidLookupOffset, int bloomIndexesOffset,
+            int bloomDataOffset) {
+        this.buffer = buffer;
+        this.fanoutOffset = fanoutOffset;
+        this.oidLookupOffset = oidLookupOffset;
+        this.bloomIndexesOffset = bloomIndexesOffset;
+        this.bloomDataOffset = bloomDataOffset + BLOOM_DATA_HEADER_SIZE;
+        this.bloomVersion = buffer.getInt(bloomDataOffset);
+        this.numHashes = buffer.getInt(bloomDataOffset + 4);
+    }
+
+    /**
+     * Loads the commit-graph files of the given objects directory holding changed-path filters.
+     * @param objectsDirectory the objects directory of a repository
+     * @return the commit graphs holding filters, possibly empty
+     * @throws IOException if a commit-graph file cannot be read
+     */
+    static List<CommitGraph> load(File objectsDirectory) throws IOException {
+        List<File> files = new ArrayList<>();
+        File info = new File(objectsDirectory, "info");
+        File single = new File(info, "commit-graph");
+        if (single.isFile()) {
+            files.add(single);
+        }
+        File chain = new File(new File(info, "commit-graphs"), "commit-graph-chain");
+        if (chain.isFile()) {
+            for (String line : Files.readAllLines(chain.toPath(), StandardCharsets.US_ASCII)) {
+                if (!line.trim().isEmpty()) {
+                    files.add(new File(chain.getParentFile(), "graph-" + line.trim() + ".graph"));
+                }
+            }
+        }
+
+        List<CommitGraph> graphs = new ArrayList<>(files.size());
+        for (File file : files) {
+            CommitGraph graph = read(file);
+            if (graph != null) {
+                graphs.add(graph);
+            }
+        }
+        return graphs;
+    }
+
+    private static CommitGraph read(File file) throws IOException {
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SIGNATURE || buffer.get(5) != SHA1_VERSION) {
+            return null;
+        }
+
+        int chunkCount = buffer.get(6) & 0xFF;
+        int fanout = -1;
+        int oidLookup = -1;
+        int bloomIndexes = -1;
+        int bloomData = -1;
+        for (int i = 0; i < chunkCount; i++) {
+            int entry = HEADER_SIZE + i * CHUNK_ENTRY_SIZE;
+            int offset = (int) buffer.getLong(entry + 4);
+            switch (buffer.getInt(entry)) {
+                case CHUNK_OID_FANOUT:
+                    fanout = offset;
+                    break;
+                case CHUNK_OID_LOOKUP:
+                    oidLookup = offset;
+                    break;
+                case CHUNK_BLOOM_INDEXES:
+                    bloomIndexes = offset;
+                    break;
+                case CHUNK_BLOOM_DATA:
+                    bloomData = offset;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (fanout < 0 || oidLookup < 0 || bloomIndexes < 0 || bloomData < 0) {
+            // written without --changed-paths, nothing to use here
+            return null;
+        }
+        CommitGraph graph = new CommitGraph(buffer, fanout, oidLookup, bloomIndexes, bloomData);
+        boolean knownVersion = graph.bloomVersion == BloomFilter.VERSION_SIGNED_MURMUR3
+                || graph.bloomVersion == BloomFilter.VERSION_UNSIGNED_MURMUR3;
+        return knownVersion ? graph : null;
+    }
+
+    /**
+     * Retrieves the changed-path filter of the given commit.
+     * @param commit the commit identifier
+     * @return the filter, null if the commit is not part of this graph
+     */
+    BloomFilter filterOf(AnyObjectId commit) {
+        int position = positionOf(commit);
+        if (position < 0) {
+            return null;
+        }
+        int start = position == 0 ? 0 : buffer.getInt(bloomIndexesOffset + 4 * (position - 1));
+        int end = buffer.getInt(bloomIndexesOffset + 4 * position);
+        byte[] data = new byte[end - start];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = buffer.get(bloomDataOffset + start + i);
+        }
+        return new BloomFilter(bloomVersion, numHashes, data);
+    }
+
+    private int positionOf(AnyObjectId commit) {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        commit.copyRawTo(raw, 0);
+        int firstByte = raw[0] & 0xFF;
+        int low = firstByte == 0 ? 0 : buffer.getInt(fanoutOffset + 4 * (firstByte - 1));
+        int high = buffer.getInt(fanoutOffset + 4 * firstByte);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareAt(oidLookupOffset + middle * Constants.OBJECT_ID_LENGTH, raw);
+            if (comparison == 0) {
+                return middle;
+            } else if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareAt(int offset, byte[] raw) {
+        for (int i = 0; i < raw.length; i++) {
+            int difference = (buffer.get(offset + i) & 0xFF) - (raw[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+}
@@ -33,6 +33,7 @@ public class ConfigurableVersionStrategy extends VersionStrategy {
     private boolean useGitCommitId = false;
     private int gitCommitIdLength = 8;
     private boolean useDirty = false;
+    private boolean useBitmapDistance = false;
     
     public ConfigurableVersionStrategy(VersionNamingConfiguration vnc, Repository repository, Git git, MetadataRegistrar metadatas) {
         super(vnc, repository, git, metadatas);
@@ -63,13 +64,23 @@ public class ConfigurableVersionStrategy extends VersionStrategy {
         return this;
     }
 
+    public ConfigurableVersionStrategy setUseBitmapDistance(boolean useBitmapDistance) {
+        this.useBitmapDistance = useBitmapDistance;
+        return this;
+    }
+
+    @Override
+    public boolean useBitmapDistance() {
+        return useBitmapDistance;
+    }
+
     @Override
     public Version build(Commit head, List<Commit> parents) throws VersionCalculationException {
         try {
             Commit base = parents.get(0);
             Ref tagToUse;
             
-            if (isBaseCommitOnHead(head, base) && !GitUtils.isDirty(getGit())) {
+            if (isBaseCommitOnHead(head, base) && !isRepositoryDirty()) {
                 // consider first the annotated tags
                 tagToUse = base.getAnnotatedTags().stream().findFirst()
                         .orElseGet(() -> base.getLightTags().stream().findFirst().orElse(null));
@@ -92,30 +103,31 @@ public class ConfigurableVersionStrategy extends VersionStrategy {
             }
             
             final boolean useSnapshot = baseVersion.isSnapshot();
+            Version.Builder version = baseVersion.toBuilder();
             
             if (!isBaseCommitOnHead(head, base) && autoIncrementPatch) {
                 // we are not on head
                 if (GitUtils.isAnnotated(tagToUse)) {
                     // found tag to use was an annotated one, lets' increment the version automatically
-                    baseVersion = baseVersion.increasePatch();
+                    version.increasePatch();
                 }
             }
             
             if (useDistance && !useSnapshot) {
                 if (tagToUse == null) {
                     // no tag was found, let's count from initial commit
-                    baseVersion = baseVersion.addQualifier("" + base.getHeadDistance());
+                    version.addQualifier("" + base.getHeadDistance());
                 } else {
                     // use distance when not on head
                     // or if on head with a light tag
                     if (!isBaseCommitOnHead(head, base) || !GitUtils.isAnnotated(tagToUse)) {
-                        baseVersion = baseVersion.addQualifier("" + base.getHeadDistance());
+                        version.addQualifier("" + base.getHeadDistance());
                     }
                 }
             }
             
             if (useGitCommitId && !isBaseCommitOnHead(head, base)) {
-                baseVersion = baseVersion.addQualifier(head.getGitObject().getName().substring(0, gitCommitIdLength));
+                version.addQualifier(head.getGitObject().getName().substring(0, gitCommitIdLength));
             }
             
             if (!GitUtils.isDetachedHead(getRepository())) {
@@ -124,15 +136,18 @@ public class ConfigurableVersionStrategy extends VersionStrategy {
                 // let's add a branch qualifier if one is computed
                 Optional<String> branchQualifier = getVersionNamingConfiguration().branchQualifier(getRepository().getBranch());
                 if (branchQualifier.isPresent()) {
-                    baseVersion = baseVersion.addQualifier(branchQualifier.get());
+                    version.addQualifier(branchQualifier.get());
                 }
             }
             
-            if (useDirty && GitUtils.isDirty(getGit())) {
-                baseVersion = baseVersion.addQualifier("dirty");
+            if (useDirty && isRepositoryDirty()) {
+                version.addQualifier("dirty");
             }
             
-            return useSnapshot ? baseVersion.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT") : baseVersion;
+            if (useSnapshot) {
+                version.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT");
+            }
+            return version.build();
         } catch (Exception ex) {
             throw new VersionCalculationException("cannot compute version", ex);
         }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+
+/**
+ * Counts the commits between HEAD and other commits, ie the commits reachable from HEAD but not from the other commit,
+ * as {@code git rev-list --count HEAD ^base} does.
+ *
+ * <p>On a repository having a pack bitmap index, the count is the number of commits of the difference between the
+ * reachability bitmaps of both commits: only the commits not covered by the bitmaps are walked, whatever the depth of
+ * the history. Otherwise the commits of the difference are walked.
+ */
+public class DistanceCalculator {
+    private final ObjectReader reader;
+    private final AnyObjectId head;
+    private final Set<ObjectId> shallowCommits;
+    private final BitmapIndex bitmapIndex;
+    private final ReachableCommits reachableFromHead;
+    private final CancellationToken token;
+
+    /**
+     * Prepares the counting of distances from the given HEAD.
+     * @param reader the reader to load commits and the bitmap index with
+     * @param head the commit distances are counted from
+     * @param shallowCommits the boundary commits of a shallow repository, empty for a complete one
+     * @param token the token checked on each walked or counted commit
+     * @throws CancellationException if the token has been cancelled
+     * @throws IOException if the bitmap index cannot be read
+     */
+    public DistanceCalculator(ObjectReader reader, AnyObjectId head, Set<ObjectId> shallowCommits,
+            CancellationToken token) throws IOException {
+        this.reader = reader;
+        this.head = head;
+        this.shallowCommits = shallowCommits;
+        this.token = token;
+        this.bitmapIndex = shallowCommits.isEmpty() ? reader.getBitmapIndex() : null;
+        this.reachableFromHead = bitmapIndex != null
+                ? ReachableCommits.from(reader, bitmapIndex, head, shallowCommits, token) : null;
+    }
+
+    /**
+     * Tells if distances are computed from the pack bitmap index.
+     * @return true if bitmaps are used, false if commits are walked
+     */
+    public boolean isBitmapBased() {
+        return reachableFromHead != null;
+    }
+
+    /**
+     * Tells if the given commit is an ancestor of HEAD.
+     * @param commit the commit to test
+     * @return true if the commit is reachable from HEAD, HEAD included
+     * @throws CancellationException if the token has been cancelled
+     * @throws IOException if the history cannot be read
+     */
+    public boolean isReachable(AnyObjectId commit) throws IOException {
+        if (reachableFromHead != null) {
+            return reachableFromHead.contains(commit);
+        }
+
+        try (RevWalk walk = new RevWalk(reader)) {
+            walk.setRetainBody(false);
+            if (!shallowCommits.isEmpty()) {
+                walk.assumeShallow(shallowCommits);
+            }
+            token.throwIfCancelled();
+            return walk.isMergedInto(walk.parseCommit(commit), walk.parseCommit(head));
+        }
+    }
+
+    /**
+     * Number of commits that had to be walked to compute the ancestors of HEAD, because not covered by the bitmap index.
+     * @return the number of walked commits, 0 if distances are computed by walking commits
+     */
+    public int getWalkedCommits() {
+        return reachableFromHead != null ? reachableFromHead.getWalkedCommits() : 0;
+    }
+
+    /**
+     * Counts the commits reachable from HEAD and not from the given commit.
+     * @param base the commit to count the distance to
+     * @return the number of commits between HEAD and the given commit, HEAD included, 0 if the commit is HEAD
+     * @throws CancellationException if the token has been cancelled
+     * @throws IOException if the history cannot be read
+     */
+    public int distanceTo(AnyObjectId base) throws IOException {
+        if (reachableFromHead != null) {
+            BitmapBuilder fromBase = ReachableCommits.from(reader, bitmapIndex, base, shallowCommits, token).getBitmap();
+            BitmapBuilder difference = bitmapIndex.newBitmapBuilder()
+                    .or(reachableFromHead.getBitmap())
+                    .andNot(fromBase);
+            return ReachableCommits.countCommits(difference, token);
+        }
+
+        try (RevWalk walk = new RevWalk(reader)) {
+            walk.setRetainBody(false);
+            if (!shallowCommits.isEmpty()) {
+                walk.assumeShallow(shallowCommits);
+            }
+            walk.markStart(walk.parseCommit(head));
+            walk.markUninteresting(walk.parseCommit(base));
+            int distance = 0;
+            while (walk.next() != null) {
+                token.throwIfCancelled();
+                distance++;
+            }
+            return distance;
+        }
+    }
+}
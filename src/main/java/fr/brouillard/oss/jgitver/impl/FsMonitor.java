@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.Repository;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+
+/**
+ * Asks the file system monitor hook configured by {@code core.fsmonitor} for the paths changed since the index was
+ * written, as git does with the {@code FSMN} extension of the index.
+ *
+ * <p>The hook is called with the version of the protocol and the token recorded in the extension: {@code 2 <token>}
+ * or {@code 1 <timestamp in nanoseconds>}. It answers a NUL separated list of paths relative to the working tree,
+ * directories ending with a slash, preceded by a new token in version 2. The single path {@code /} tells that
+ * everything may have changed.
+ *
+ * <p>The built-in file system monitor of git, enabled by a boolean {@code core.fsmonitor}, is not supported.
+ */
+public final class FsMonitor {
+    private static final int EXTENSION_FSMONITOR = 0x46534d4e; // FSMN
+    private static final int HOOK_VERSION_1 = 1;
+    private static final int HOOK_VERSION_2 = 2;
+
+    /**
+     * Interval at which the cancellation token is checked while the hook runs.
+     */
+    private static final long POLL_MILLIS = 20;
+
+    private final File hook;
+    private final File workTree;
+    private final int version;
+    private final String token;
+    private final BitSet invalidEntries;
+
+    private FsMonitor(File hook, File workTree, int version, String token, BitSet invalidEntries) {
+        this.hook = hook;
+        this.workTree = workTree;
+        this.version = version;
+        this.token = token;
+        this.invalidEntries = invalidEntries;
+    }
+
+    /**
+     * Reads the file system monitor configuration and the state recorded in the index of the given repository.
+     * @param repository a non bare repository
+     * @return the monitor, null if no hook is configured or if the index has no file system monitor extension
+     * @throws IOException if the index cannot be read
+     */
+    public static FsMonitor of(Repository repository) throws IOException {
+        String configured = repository.getConfig().getString("core", null, "fsmonitor");
+        File indexFile = repository.getIndexFile();
+        if (configured == null || isBoolean(configured) || repository.isBare() || !indexFile.isFile()) {
+            return null;
+        }
+        File hook = new File(configured);
+        if (!hook.isAbsolute()) {
+            hook = new File(repository.getWorkTree(), configured);
+        }
+
+        ByteBuffer extension = IndexExtensions.find(ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath())),
+                EXTENSION_FSMONITOR);
+        if (extension == null) {
+            return null;
+        }
+        try {
+            int version = extension.getInt();
+            String token;
+            if (version == HOOK_VERSION_1) {
+                token = Long.toString(extension.getLong());
+            } else if (version == HOOK_VERSION_2) {
+                token = IndexExtensions.readString(extension);
+            } else {
+                return null;
+            }
+            // size of the bitmap, then the bitmap of the entries not known as unchanged when the token was recorded
+            extension.getInt();
+            BitSet invalidEntries = IndexExtensions.readEwah(extension);
+            return new FsMonitor(hook, repository.getWorkTree(), version, token, invalidEntries);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isBoolean(String value) {
+        return "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value) || value.isEmpty();
+    }
+
+    /**
+     * Lists the paths that may have changed since the index was written: the ones answered by the hook and the ones
+     * of the entries already flagged as changed in the index.
+     * @param dirCache the index the extension was read from
+     * @param cancellationToken the token checked while the hook runs, the hook being killed once it is cancelled
+     * @return the paths relative to the working tree, directories ending with a slash, null if the hook failed, could
+     *         not be started or answered that everything may have changed
+     * @throws IOException if the hook cannot be run
+     * @throws CancellationException if the token has been cancelled or the current thread interrupted
+     */
+    public Set<String> changedPaths(DirCache dirCache, CancellationToken cancellationToken) throws IOException {
+        cancellationToken.throwIfCancelled();
+        byte[] answer = runHook(cancellationToken);
+        if (answer == null) {
+            return null;
+        }
+
+        Set<String> paths = new LinkedHashSet<>();
+        ByteBuffer buffer = ByteBuffer.wrap(answer);
+        try {
+            if (version == HOOK_VERSION_2 && buffer.hasRemaining()) {
+                // the new token, of no use as the index is not written
+                IndexExtensions.readString(buffer);
+            }
+            while (buffer.hasRemaining()) {
+                String path = IndexExtensions.readString(buffer);
+                if ("/".equals(path)) {
+                    return null;
+                }
+                if (!path.isEmpty()) {
+                    paths.add(path);
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            // answer not terminated by a NUL, considered as invalid
+            return null;
+        }
+        for (int i = invalidEntries.nextSetBit(0); i >= 0 && i < dirCache.getEntryCount(); i = invalidEntries.nextSetBit(i + 1)) {
+            paths.add(dirCache.getEntry(i).getPathString());
+        }
+        return paths;
+    }
+
+    /**
+     * Runs the hook, its answer going to a temporary file so that waiting for the hook never blocks on its output and
+     * can be cancelled.
+     * @return the complete answer of the hook, null if it failed or could not be started
+     */
+    private byte[] runHook(CancellationToken cancellationToken) throws IOException {
+        File answer = File.createTempFile("jgitver-fsmonitor", null);
+        try {
+            Process process;
+            try {
+                process = new ProcessBuilder(hook.getPath(), Integer.toString(version), token)
+                        .directory(workTree)
+                        .redirectOutput(answer)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+            } catch (IOException ex) {
+                // missing or not executable hook: as git does, the full scan is used instead
+                return null;
+            }
+            try {
+                while (!process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    cancellationToken.throwIfCancelled();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("version calculation interrupted");
+            } finally {
+                // kills a hook still running when cancelled, its partial answer is never read
+                process.destroy();
+            }
+            return process.exitValue() == 0 ? Files.readAllBytes(answer.toPath()) : null;
+        } finally {
+            Files.deleteIfExists(answer.toPath());
+        }
+    }
+}
@@ -15,14 +15,30 @@
  */
 package fr.brouillard.oss.jgitver.impl;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
 
 public class GitUtils {
     public static String tagNameFromRef(Ref tag) {
@@ -32,6 +48,50 @@ public class GitUtils {
     public static boolean isAnnotated(Ref ref) {
         return ref != null && ref.getPeeledObjectId() != null;
     }
+
+    /**
+     * Peels the given tag using the objects already loaded or loadable by the given walk.
+     * Has the same result than {@link Repository#peel(Ref)} without opening another object reader.
+     * @param walk the walk used to parse the tagged objects
+     * @param tag the tag reference to peel
+     * @return the given reference if already peeled, a peeled copy of it otherwise
+     * @throws IOException if the tagged objects cannot be read
+     */
+    public static Ref peel(RevWalk walk, Ref tag) throws IOException {
+        Ref leaf = tag.getLeaf();
+        if (leaf.isPeeled() || leaf.getObjectId() == null) {
+            return tag;
+        }
+        RevObject target = walk.parseAny(leaf.getObjectId());
+        if (target instanceof RevTag) {
+            return new ObjectIdRef.PeeledTag(leaf.getStorage(), tag.getName(), leaf.getObjectId(),
+                    walk.peel(target).copy());
+        }
+        return new ObjectIdRef.PeeledNonTag(leaf.getStorage(), tag.getName(), leaf.getObjectId());
+    }
+    
+    /**
+     * Reads the boundary commits of a shallow repository, as recorded by git in the {@code shallow} file of the git directory.
+     * Those commits are present locally but their parents are not.
+     * @param repository the repository to inspect
+     * @return the identifiers of the shallow boundary commits, an empty set if the repository holds its complete history
+     * @throws IOException if the shallow file exists but cannot be read
+     */
+    public static Set<ObjectId> shallowCommits(Repository repository) throws IOException {
+        File gitDir = repository.getDirectory();
+        File shallowFile = gitDir == null ? null : new File(gitDir, "shallow");
+        if (shallowFile == null || !shallowFile.isFile()) {
+            return Collections.emptySet();
+        }
+        Set<ObjectId> shallowCommits = new HashSet<>();
+        for (String line : Files.readAllLines(shallowFile.toPath(), StandardCharsets.US_ASCII)) {
+            String sha1 = line.trim();
+            if (ObjectId.isId(sha1)) {
+                shallowCommits.add(ObjectId.fromString(sha1));
+            }
+        }
+        return shallowCommits;
+    }
     
     public static String sanitizeBranchName(String currentBranch) {
         return currentBranch.replaceAll("[\\s\\-#/\\\\]+", "_");
@@ -51,4 +111,65 @@ public class GitUtils {
         Status status = git.status().call();
         return !status.isClean();
     }
+
+    /**
+     * Checks the working tree for changes, the check being aborted if the given token is cancelled.
+     * @param git the git helper of the repository to check
+     * @param token the token checked while the working tree is compared to the index
+     * @return true if the repository has uncommitted changes or new files
+     * @throws CancellationException if the token has been cancelled
+     * @throws GitAPIException if the status cannot be computed
+     */
+    public static boolean isDirty(Git git, CancellationToken token) throws GitAPIException {
+        token.throwIfCancelled();
+        Status status = git.status().setProgressMonitor(new EmptyProgressMonitor() {
+            @Override
+            public boolean isCancelled() {
+                return token.isCancelled();
+            }
+        }).call();
+        // a cancelled check returns a partial status
+        token.throwIfCancelled();
+        return !status.isClean();
+    }
+
+    /**
+     * Checks the working tree for changes, scanning its top level directories in parallel on the given pool. Untracked
+     * files are searched with the untracked cache of the index when it has one. Falls back to a status if the
+     * repository holds submodules.
+     * @param git the git helper of the repository to check
+     * @param token the token checked while the working tree is compared to the index
+     * @param pool the pool running the scan of the top level directories
+     * @return true if the repository has uncommitted changes or new files
+     * @throws CancellationException if the token has been cancelled
+     * @throws GitAPIException if the status cannot be computed
+     * @throws IOException if the index or the working tree cannot be read
+     */
+    public static boolean isDirty(Git git, CancellationToken token, ForkJoinPool pool) throws GitAPIException, IOException {
+        token.throwIfCancelled();
+        return isDirty(git, token, pool, UntrackedCache.read(git.getRepository()));
+    }
+
+    /**
+     * Checks the working tree for changes, scanning its top level directories in parallel on the given pool and
+     * searching untracked files with the given untracked cache. Falls back to a status if the repository holds
+     * submodules.
+     * @param git the git helper of the repository to check
+     * @param token the token checked while the working tree is compared to the index
+     * @param pool the pool running the scan of the top level directories
+     * @param untrackedCache the untracked cache of the index, refreshed by the check, null to read every directory
+     * @return true if the repository has uncommitted changes or new files
+     * @throws CancellationException if the token has been cancelled
+     * @throws GitAPIException if the status cannot be computed
+     * @throws IOException if the index or the working tree cannot be read
+     */
+    public static boolean isDirty(Git git, CancellationToken token, ForkJoinPool pool, UntrackedCache untrackedCache)
+            throws GitAPIException, IOException {
+        token.throwIfCancelled();
+        WorkingTreeScan scan = new WorkingTreeScan(git.getRepository(), untrackedCache);
+        if (!scan.handlesAllEntries()) {
+            return isDirty(git, token);
+        }
+        return scan.isDirty(pool, token);
+    }
 }
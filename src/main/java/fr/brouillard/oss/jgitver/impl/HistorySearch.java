@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import fr.brouillard.oss.jgitver.impl.VersionStrategy.StrategySearchMode;
+
+/**
+ * Search of the commits holding version tags, fed with the commits of a history walk starting at HEAD.
+ *
+ * <p>For each commit of the walk, {@link #visit(ObjectId)} is called first ; if the search goes on,
+ * {@link #leave(boolean)} then tells whether the commit belongs to the versioned scope, which defines the distance of
+ * the commits met afterwards. Several searches can be fed by the same walk.
+ */
+public class HistorySearch {
+    private final TagIndex tags;
+    private final StrategySearchMode searchMode;
+    private final int searchDepthLimit;
+    private final Set<ObjectId> shallowCommits;
+    private final List<Commit> commits = new LinkedList<>();
+    private ObjectId lastVisited = null;
+    private int depth = 0;
+    private int lastDepth = 0;
+    private boolean done = false;
+    private boolean truncated = false;
+    private int reachableTaggedCommits = Integer.MAX_VALUE;
+
+    /**
+     * Prepares a search.
+     * @param tags the tags of the repository, the version ones being searched for
+     * @param strategy the strategy defining when the search stops
+     * @param shallowCommits the boundary commits of a shallow repository, empty for a complete one
+     */
+    public HistorySearch(TagIndex tags, VersionStrategy strategy, Set<ObjectId> shallowCommits) {
+        this.tags = tags;
+        this.searchMode = strategy.searchMode();
+        this.searchDepthLimit = strategy.searchDepthLimit();
+        this.shallowCommits = shallowCommits;
+    }
+
+    /**
+     * Visits the next commit of the walk.
+     * @param id the commit identifier
+     * @return true if the search is over, in which case {@link #leave(boolean)} must not be called
+     */
+    public boolean visit(ObjectId id) {
+        lastVisited = id;
+        lastDepth = depth;
+        if (tags.hasVersionTags(id)) {
+            // we found a commit with version tags
+            commits.add(new Commit(id, depth, tags.annotatedVersionTagsOf(id), tags.lightVersionTagsOf(id)));
+
+            // shall we stop searching for commits
+            if (StrategySearchMode.STOP_AT_FIRST.equals(searchMode) || depth >= searchDepthLimit
+                    || commits.size() >= reachableTaggedCommits) {
+                done = true;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Leaves the last visited commit, the search going on with its parents.
+     * @param inScope true if the commit modifies the versioned scope, and thus counts in the distance
+     */
+    public void leave(boolean inScope) {
+        // the walk goes on but the parents of a shallow boundary are unknown, part of the history is missing
+        truncated |= shallowCommits.contains(lastVisited);
+        if (inScope) {
+            depth++;
+        }
+    }
+
+    /**
+     * Declares the number of commits holding version tags that are reachable from HEAD, so that the search stops once
+     * all of them have been met instead of going on until the first commit of the repository.
+     * @param reachableTaggedCommits the number of version tagged commits that are ancestors of HEAD, HEAD included
+     */
+    public void setReachableTaggedCommits(int reachableTaggedCommits) {
+        this.reachableTaggedCommits = reachableTaggedCommits;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Tells if the search went past the boundary of a shallow repository, the result only reflecting the locally
+     * available history.
+     * @return true if part of the history needed by the search was missing
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Retrieves the commits holding version tags that were found.
+     * @return the found commits ; if none were found, the list holds the last visited commit, the first one of the
+     *      repository when the walk has been completed, without any tag
+     */
+    public List<Commit> getCommits() {
+        // handle the case where we reached the first commit without finding anything
+        if (commits.isEmpty() && lastVisited != null) {
+            return Collections.singletonList(new Commit(lastVisited, lastDepth, Collections.emptyList(), Collections.emptyList()));
+        }
+        return commits;
+    }
+}
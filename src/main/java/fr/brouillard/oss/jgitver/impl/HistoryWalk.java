@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * History walk from HEAD feeding a {@link HistorySearch}, that can run ahead of the search.
+ *
+ * <p>The search needs the version tags of the repository to know where to stop; while they are still being loaded
+ * by another thread, {@link #walkWhile(BooleanSupplier)} reads the history ahead and keeps the walked commits.
+ * {@link #search(HistorySearch)} then replays them before walking further if needed, so that the search result does not
+ * depend on how far the walk went ahead.
+ */
+public class HistoryWalk {
+    private final RevWalk walk;
+    private final PathScope scope;
+    private final SearchBudget budget;
+    private final List<RevCommit> walkedAhead = new ArrayList<>();
+    private final BitSet walkedAheadInScope = new BitSet();
+    private boolean over = false;
+
+    /**
+     * Prepares a walk starting at the given HEAD commit.
+     * @param walk the walk to use, HEAD having been parsed with it
+     * @param head the commit to start from
+     * @param scope the scope defining which commits count in the distance
+     * @param budget the budget bounding the number of walked commits
+     * @throws IOException if HEAD cannot be read
+     */
+    public HistoryWalk(RevWalk walk, RevCommit head, PathScope scope, SearchBudget budget) throws IOException {
+        this.walk = walk;
+        this.scope = scope;
+        this.budget = budget;
+        walk.markStart(head);
+    }
+
+    /**
+     * Reads the history ahead of the search as long as the given condition holds.
+     * @param condition tells if the walk must go on, typically while the tags are not loaded
+     * @throws IOException if the history cannot be read
+     */
+    public void walkWhile(BooleanSupplier condition) throws IOException {
+        // the budget is only spent when the search goes through the commits, it may not need all of them
+        while (condition.getAsBoolean() && !over && budget.allows(walkedAhead.size() + 1)) {
+            RevCommit commit = walk.next();
+            if (commit == null) {
+                over = true;
+                return;
+            }
+            if (scope.isModifiedBy(walk, commit)) {
+                walkedAheadInScope.set(walkedAhead.size());
+            }
+            walkedAhead.add(commit);
+        }
+    }
+
+    /**
+     * Feeds the given search with the commits walked ahead, then with the commits of the rest of the walk until the
+     * search is over, the budget is exceeded or the first commit is reached.
+     * @param search the search to feed
+     * @return the number of commits the search went through
+     * @throws IOException if the history cannot be read
+     */
+    public int search(HistorySearch search) throws IOException {
+        int searchedCommits = 0;
+        for (RevCommit commit : walkedAhead) {
+            if (!budget.spend()) {
+                // only a time limit can be exceeded here, the walk ahead having stayed within the commit limit
+                over = true;
+                return searchedCommits;
+            }
+            searchedCommits++;
+            if (search.visit(commit)) {
+                return searchedCommits;
+            }
+            search.leave(walkedAheadInScope.get(searchedCommits - 1));
+        }
+        walkedAhead.clear();
+
+        for (RevCommit commit = next(); commit != null; commit = next()) {
+            searchedCommits++;
+            if (search.visit(commit)) {
+                break; // let's stop
+            }
+            search.leave(scope.isModifiedBy(walk, commit));
+        }
+        return searchedCommits;
+    }
+
+    private RevCommit next() throws IOException {
+        if (over) {
+            return null;
+        }
+        RevCommit commit = walk.next();
+        if (commit == null || !budget.spend()) {
+            // degraded result when the budget is exceeded, built from the commits searched so far
+            over = true;
+            return null;
+        }
+        return commit;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Low level reading of the extensions git stores at the end of the index file, that JGit skips when reading it.
+ */
+final class IndexExtensions {
+    private static final int SIGNATURE = 0x44495243; // DIRC
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_FIXED_SIZE = 62;
+    private static final int EXTENDED_FLAG = 0x4000;
+    private static final int NAME_MASK = 0xfff;
+
+    private IndexExtensions() {
+    }
+
+    /**
+     * Skips the header and the entries of the index, in version 2, 3 or 4, and looks for an extension among the ones
+     * following them.
+     * @param index the content of the index file
+     * @param signature the signature of the extension
+     * @return the content of the extension, null if the index does not have it
+     */
+    static ByteBuffer find(ByteBuffer index, int signature) {
+        if (index.limit() < HEADER_SIZE || index.getInt(0) != SIGNATURE) {
+            return null;
+        }
+        int version = index.getInt(4);
+        int entryCount = index.getInt(8);
+        index.position(HEADER_SIZE);
+        for (int i = 0; i < entryCount; i++) {
+            int start = index.position();
+            int flags = index.getShort(start + ENTRY_FIXED_SIZE - 2) & 0xffff;
+            int nameStart = start + ENTRY_FIXED_SIZE;
+            if (version >= 3 && (flags & EXTENDED_FLAG) != 0) {
+                nameStart += 2;
+            }
+            index.position(nameStart);
+            if (version >= 4) {
+                // prefix compressed path: length of the prefix to remove from the previous path, then the suffix
+                readVarint(index);
+                readString(index);
+            } else {
+                int nameLength = flags & NAME_MASK;
+                if (nameLength == NAME_MASK) {
+                    nameLength = readString(index).length();
+                }
+                // entries are padded with 1 to 8 NULs to a multiple of 8 bytes
+                index.position(start + ((nameStart - start + nameLength + 8) & ~7));
+            }
+        }
+
+        int end = index.limit() - Constants.OBJECT_ID_LENGTH;
+        while (index.position() + 8 <= end) {
+            int extensionSignature = index.getInt();
+            int size = index.getInt();
+            if (extensionSignature == signature) {
+                ByteBuffer extension = index.slice();
+                extension.limit(size);
+                return extension;
+            }
+            index.position(index.position() + size);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a bitmap serialized in git's EWAH format: its size in bits, its run length encoded words and the position
+     * of the last marker word.
+     */
+    static BitSet readEwah(ByteBuffer buffer) {
+        int bitCount = buffer.getInt();
+        int wordCount = buffer.getInt();
+        BitSet bits = new BitSet(bitCount);
+        int bit = 0;
+        int word = 0;
+        while (word < wordCount) {
+            long marker = buffer.getLong();
+            word++;
+            long runningLength = (marker >>> 1) & 0xffffffffL;
+            int literalCount = (int) (marker >>> 33);
+            if ((marker & 1) != 0 && bit < bitCount) {
+                bits.set(bit, (int) Math.min(bitCount, bit + runningLength * 64));
+            }
+            bit += runningLength * 64;
+            for (int i = 0; i < literalCount && word < wordCount; i++, word++) {
+                long literal = buffer.getLong();
+                for (int j = 0; j < 64; j++) {
+                    if ((literal & (1L << j)) != 0 && bit + j < bitCount) {
+                        bits.set(bit + j);
+                    }
+                }
+                bit += 64;
+            }
+        }
+        buffer.getInt();
+        return bits;
+    }
+
+    /**
+     * Reads a variable length integer as encoded by git: 7 bits per byte, the highest bit telling that another byte
+     * follows, each continuation adding one to the value so that every value has a single encoding.
+     */
+    static long readVarint(ByteBuffer buffer) {
+        int read = buffer.get() & 0xff;
+        long value = read & 0x7f;
+        while ((read & 0x80) != 0) {
+            read = buffer.get() & 0xff;
+            value = ((value + 1) << 7) | (read & 0x7f);
+        }
+        return value;
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] raw = new byte[end - start];
+        buffer.get(raw);
+        buffer.get();
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    static byte[] bytes(ByteBuffer buffer, int length) {
+        byte[] raw = new byte[length];
+        buffer.get(raw);
+        return raw;
+    }
+}
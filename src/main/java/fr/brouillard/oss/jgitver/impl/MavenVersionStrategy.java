@@ -38,7 +38,7 @@ public class MavenVersionStrategy extends VersionStrategy {
             Commit base = parentsWithTags.get(0);
 
             Ref tagToUse;
-            if (isBaseCommitOnHead(head, base) && !GitUtils.isDirty(getGit())) {
+            if (isBaseCommitOnHead(head, base) && !isRepositoryDirty()) {
                 // consider first the annotated tags
                 tagToUse = base.getAnnotatedTags().stream().findFirst()
                         .orElseGet(() -> base.getLightTags().stream().findFirst().orElse(null));
@@ -65,13 +65,15 @@ public class MavenVersionStrategy extends VersionStrategy {
                         || !GitUtils.isAnnotated(tagToUse);
             }
 
+            Version.Builder version = baseVersion.toBuilder();
+
             if (!isBaseCommitOnHead(head, base)) {
                 // we are not on head
                 if (GitUtils.isAnnotated(tagToUse) && !baseVersion.removeQualifier("SNAPSHOT").isQualified()) {
                     // found tag to use was a non qualified annotated one, lets' increment the version automatically
-                    baseVersion = baseVersion.increasePatch();
+                    version.increasePatch();
                 }
-                baseVersion = baseVersion.noQualifier();
+                version.noQualifier();
             }
 
             if (!GitUtils.isDetachedHead(getRepository())) {
@@ -80,11 +82,14 @@ public class MavenVersionStrategy extends VersionStrategy {
                 // let's add a branch qualifier if one is computed
                 Optional<String> branchQualifier = getVersionNamingConfiguration().branchQualifier(getRepository().getBranch());
                 if (branchQualifier.isPresent()) {
-                    baseVersion = baseVersion.addQualifier(branchQualifier.get());
+                    version.addQualifier(branchQualifier.get());
                 }
             }
 
-            return needSnapshot ? baseVersion.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT") : baseVersion;
+            if (needSnapshot) {
+                version.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT");
+            }
+            return version.build();
         } catch (Exception ex) {
             throw new VersionCalculationException("cannot compute version", ex);
         }
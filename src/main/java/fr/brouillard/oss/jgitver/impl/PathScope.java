@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Tells whether commits modify the content located under some paths of the repository.
+ *
+ * <p>No diff is computed: git trees being content addressed, the content under a path is unchanged between two commits
+ * when the id of the subtree at that path is the same. Those ids are resolved lazily, once per root tree, and
+ * identical root trees are never descended into. When a changed-path Bloom filter tells that a commit did not modify a
+ * path compared to its first parent, the subtree ids at that path are not even resolved.
+ *
+ * <p>A scope can be shared by several components, each of them owning a subset of the scope paths: the subtree ids of a
+ * commit are then compared once with {@link #changedPaths(RevWalk, RevCommit)} and the result tested against each
+ * component with {@link #modifies(BitSet[], BitSet)}.
+ */
+public class PathScope {
+    private static final PathScope WHOLE_REPOSITORY = new PathScope(null, Collections.emptyList()) {
+        @Override
+        public boolean isModifiedBy(RevWalk walk, RevCommit commit) {
+            return true;
+        }
+    };
+
+    private final ObjectReader reader;
+    private final String[] paths;
+    private final byte[][] encodedPaths;
+    private final BitSet allPaths;
+    private final ChangedPathFilters filters;
+    private final Map<ObjectId, Subtrees> subtreesByRootTree = new HashMap<>();
+
+    /**
+     * Creates a scope limited to the given paths.
+     * @param reader the reader used to load trees, shall be the one of the walk that will be given to
+     *        {@link #isModifiedBy(RevWalk, RevCommit)}
+     * @param paths the paths relative to the repository root, using '/' as separator ;
+     *        an empty path stands for the whole repository
+     */
+    public PathScope(ObjectReader reader, List<String> paths) {
+        this(reader, paths, ChangedPathFilters.none());
+    }
+
+    /**
+     * Creates a scope limited to the given paths, using changed-path filters to skip commits.
+     * @param reader the reader used to load trees, shall be the one of the walk that will be given to
+     *        {@link #isModifiedBy(RevWalk, RevCommit)}
+     * @param paths the paths relative to the repository root, using '/' as separator ;
+     *        an empty path stands for the whole repository
+     * @param filters the changed-path filters of the repository
+     */
+    public PathScope(ObjectReader reader, List<String> paths, ChangedPathFilters filters) {
+        this.reader = reader;
+        this.paths = paths.toArray(new String[paths.size()]);
+        this.encodedPaths = new byte[this.paths.length][];
+        for (int i = 0; i < this.paths.length; i++) {
+            this.encodedPaths[i] = Constants.encode(this.paths[i]);
+        }
+        this.allPaths = new BitSet(this.paths.length);
+        this.allPaths.set(0, this.paths.length);
+        this.filters = filters;
+    }
+
+    /**
+     * The scope considering that any commit modifies the repository, as a history walk without path restriction does.
+     * @return a shared scope for the whole repository
+     */
+    public static PathScope wholeRepository() {
+        return WHOLE_REPOSITORY;
+    }
+
+    /**
+     * Tells if this scope is the whole repository one.
+     * @return true if any commit is considered as modifying the scope
+     */
+    public boolean isWholeRepository() {
+        return this == WHOLE_REPOSITORY;
+    }
+
+    /**
+     * Computes the set of the given paths, as expected by {@link #modifies(BitSet[], BitSet)}.
+     * @param subsetPaths paths that all belong to this scope
+     * @return the indexes of the given paths in this scope
+     * @throws IllegalArgumentException if one of the paths is not part of this scope
+     */
+    public BitSet pathsOf(List<String> subsetPaths) {
+        List<String> scopePaths = Arrays.asList(paths);
+        BitSet indexes = new BitSet(paths.length);
+        for (String path : subsetPaths) {
+            int index = scopePaths.indexOf(path);
+            if (index < 0) {
+                throw new IllegalArgumentException("path " + path + " is not part of the scope " + scopePaths);
+            }
+            indexes.set(index);
+        }
+        return indexes;
+    }
+
+    /**
+     * Tells if the given commit changes the content under the paths of the scope. As for path limited git logs, a
+     * merge commit modifies the scope only if the scope content differs from the one of each of its parents; a root
+     * commit modifies the scope if one of the paths exists in it.
+     * @param walk the walk that produced the commit, used to parse its parents if needed
+     * @param commit the commit to inspect
+     * @return true if the commit modifies the scope
+     * @throws IOException if a tree cannot be read
+     */
+    public boolean isModifiedBy(RevWalk walk, RevCommit commit) throws IOException {
+        return modifies(changedPaths(walk, commit), allPaths);
+    }
+
+    /**
+     * Compares the subtree ids of the given commit with the ones of each of its parents.
+     * @param walk the walk that produced the commit, used to parse its parents if needed
+     * @param commit the commit to inspect
+     * @return for each parent, the indexes of the paths having a different content in the commit ; for a root commit,
+     *      a single set holding the indexes of the paths existing in the commit. As the result is only meant to be
+     *      given to {@link #modifies(BitSet[], BitSet)}, a single empty set is returned when the commit has the same
+     *      content as its first parent.
+     * @throws IOException if a tree cannot be read
+     */
+    public BitSet[] changedPaths(RevWalk walk, RevCommit commit) throws IOException {
+        Subtrees subtrees = subtreesOf(commit.getTree());
+        if (commit.getParentCount() == 0) {
+            BitSet existing = new BitSet(paths.length);
+            for (int i = 0; i < paths.length; i++) {
+                if (!ObjectId.zeroId().equals(subtrees.get(i))) {
+                    existing.set(i);
+                }
+            }
+            return new BitSet[] {existing};
+        }
+
+        BitSet[] changed = new BitSet[commit.getParentCount()];
+        for (int p = 0; p < changed.length; p++) {
+            RevCommit parent = commit.getParent(p);
+            walk.parseHeaders(parent);
+            changed[p] = new BitSet(paths.length);
+            if (parent.getTree().equals(commit.getTree())) {
+                continue;
+            }
+            BitSet candidates = p == 0 ? possiblyChangedPaths(walk, commit) : allPaths;
+            Subtrees parentSubtrees = subtreesOf(parent.getTree());
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (!subtrees.get(i).equals(parentSubtrees.get(i))) {
+                    changed[p].set(i);
+                }
+            }
+            if (changed[p].isEmpty()) {
+                // same content as one of the parents, the commit does not modify any path whatever the other parents
+                return new BitSet[] {changed[p]};
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Uses the changed-path filter of the commit, if any, to find the paths that may differ from its first parent.
+     */
+    private BitSet possiblyChangedPaths(RevWalk walk, RevCommit commit) throws IOException {
+        BloomFilter filter = filters.filterOf(walk, commit);
+        if (filter == null) {
+            return allPaths;
+        }
+        BitSet candidates = new BitSet(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            // the repository root is not part of the filters
+            if (paths[i].isEmpty() || filter.mightContain(encodedPaths[i])) {
+                candidates.set(i);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Tells if a commit modifies the given subset of paths, considering the changes computed by
+     * {@link #changedPaths(RevWalk, RevCommit)}: the content must differ from the one of each parent, otherwise the
+     * changes come from the parent having the same content.
+     * @param changedPaths the changes of the commit compared to each of its parents
+     * @param subsetPaths the indexes of the paths to consider, as given by {@link #pathsOf(List)}
+     * @return true if the commit modifies the given paths
+     */
+    public static boolean modifies(BitSet[] changedPaths, BitSet subsetPaths) {
+        for (BitSet changed : changedPaths) {
+            if (!changed.intersects(subsetPaths)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Subtrees subtreesOf(ObjectId rootTree) {
+        Subtrees subtrees = subtreesByRootTree.get(rootTree);
+        if (subtrees == null) {
+            subtrees = new Subtrees(rootTree.copy());
+            subtreesByRootTree.put(subtrees.rootTree, subtrees);
+        }
+        return subtrees;
+    }
+
+    /**
+     * Ids of the subtrees at the scope paths of one root tree, resolved on demand.
+     */
+    private final class Subtrees {
+        private final ObjectId rootTree;
+        private final ObjectId[] ids = new ObjectId[paths.length];
+
+        private Subtrees(ObjectId rootTree) {
+            this.rootTree = rootTree;
+        }
+
+        private ObjectId get(int index) throws IOException {
+            if (ids[index] == null) {
+                ids[index] = resolve(paths[index]);
+            }
+            return ids[index];
+        }
+
+        private ObjectId resolve(String path) throws IOException {
+            if (path.isEmpty()) {
+                return rootTree;
+            }
+            try (TreeWalk treeWalk = TreeWalk.forPath(reader, path, rootTree)) {
+                return treeWalk == null ? ObjectId.zeroId() : treeWalk.getObjectId(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+
+/**
+ * Set of the commits reachable from a starting commit.
+ *
+ * <p>When the repository has a pack bitmap index, the set is the union of the bitmaps of the first bitmapped commits
+ * met, plus the few commits walked before meeting them: on a well packed repository almost no commit is walked.
+ * Otherwise all the reachable commits are walked.
+ */
+public class ReachableCommits {
+    private final BitmapBuilder bitmap;
+    private final RevWalk walk;
+    private final RevFlag reachable;
+    private final int walkedCommits;
+    private final CancellationToken token;
+
+    private ReachableCommits(BitmapBuilder bitmap, RevWalk walk, RevFlag reachable, int walkedCommits,
+            CancellationToken token) {
+        this.bitmap = bitmap;
+        this.walk = walk;
+        this.reachable = reachable;
+        this.walkedCommits = walkedCommits;
+        this.token = token;
+    }
+
+    /**
+     * Computes the commits reachable from the given one.
+     * @param reader the reader to load commits and the bitmap index with
+     * @param start the commit to start from
+     * @param shallowCommits the boundary commits of a shallow repository, empty for a complete one
+     * @param token the token checked on each walked commit
+     * @return the set of reachable commits, the start commit included
+     * @throws CancellationException if the token has been cancelled
+     * @throws IOException if the history or the bitmap index cannot be read
+     */
+    public static ReachableCommits from(ObjectReader reader, AnyObjectId start, Set<ObjectId> shallowCommits,
+            CancellationToken token) throws IOException {
+        return from(reader, shallowCommits.isEmpty() ? reader.getBitmapIndex() : null, start, shallowCommits, token);
+    }
+
+    /**
+     * Computes the commits reachable from the given one with the given bitmap index, so that bitmaps of several sets
+     * can be combined.
+     * @param reader the reader to load commits with
+     * @param bitmapIndex the bitmap index to use, null to walk all the reachable commits
+     * @param start the commit to start from
+     * @param shallowCommits the boundary commits of a shallow repository, empty for a complete one
+     * @param token the token checked on each walked commit
+     * @return the set of reachable commits, the start commit included
+     * @throws CancellationException if the token has been cancelled
+     * @throws IOException if the history cannot be read
+     */
+    static ReachableCommits from(ObjectReader reader, BitmapIndex bitmapIndex, AnyObjectId start,
+            Set<ObjectId> shallowCommits, CancellationToken token) throws IOException {
+        token.throwIfCancelled();
+        RevWalk walk = new RevWalk(reader);
+        walk.setRetainBody(false);
+        if (!shallowCommits.isEmpty()) {
+            walk.assumeShallow(shallowCommits);
+        }
+        RevCommit startCommit = walk.parseCommit(start);
+
+        if (bitmapIndex != null) {
+            BitmapBuilder bitmap = bitmapIndex.newBitmapBuilder();
+            walk.setRevFilter(new AddToBitmapFilter(bitmap, token));
+            walk.markStart(startCommit);
+            int walked = 0;
+            while (walk.next() != null) {
+                walked++;
+            }
+            walk.dispose();
+            return new ReachableCommits(bitmap, null, null, walked, token);
+        }
+
+        RevFlag reachable = walk.newFlag("REACHABLE");
+        walk.markStart(startCommit);
+        int walked = 0;
+        for (RevCommit commit : walk) {
+            token.throwIfCancelled();
+            commit.add(reachable);
+            walked++;
+        }
+        return new ReachableCommits(null, walk, reachable, walked, token);
+    }
+
+    /**
+     * Tells if the given commit is reachable.
+     * @param commit the commit identifier
+     * @return true if the commit is an ancestor of the start commit, or the start commit itself
+     */
+    public boolean contains(AnyObjectId commit) {
+        if (bitmap != null) {
+            return bitmap.contains(commit);
+        }
+        return walk.lookupCommit(commit).has(reachable);
+    }
+
+    /**
+     * Tells if the set was computed from the pack bitmap index.
+     * @return true if bitmaps were used, false if all reachable commits were walked
+     */
+    public boolean isBitmapBased() {
+        return bitmap != null;
+    }
+
+    /**
+     * Counts the reachable commits.
+     * @return the number of commits reachable from the start commit, the start commit included
+     * @throws CancellationException if the token the set was computed with has been cancelled
+     */
+    public int size() {
+        return bitmap != null ? countCommits(bitmap, token) : walkedCommits;
+    }
+
+    /**
+     * Counts the commits of the given bitmap.
+     * @param objects a bitmap built from the bitmap index of a repository
+     * @param token the token checked on each counted commit
+     * @return the number of commits in the bitmap
+     * @throws CancellationException if the token has been cancelled
+     */
+    static int countCommits(BitmapBuilder objects, CancellationToken token) {
+        // objects are iterated by type, commits first: stop at the first other object
+        int commits = 0;
+        for (BitmapObject object : objects) {
+            if (object.getType() != Constants.OBJ_COMMIT) {
+                break;
+            }
+            token.throwIfCancelled();
+            commits++;
+        }
+        return commits;
+    }
+
+    /**
+     * The reachable objects, as given by the bitmap index.
+     * @return the bitmap of the reachable objects, null if the set was not computed from bitmaps
+     */
+    BitmapBuilder getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Number of commits that had to be walked, because not covered by the bitmap index.
+     * @return the number of walked commits
+     */
+    public int getWalkedCommits() {
+        return walkedCommits;
+    }
+
+    /**
+     * Adds the walked commits to the bitmap; when a commit having a bitmap is met, its bitmap is added and its parents
+     * are not walked.
+     */
+    private static class AddToBitmapFilter extends RevFilter {
+        private final BitmapBuilder bitmap;
+        private final CancellationToken token;
+
+        AddToBitmapFilter(BitmapBuilder bitmap, CancellationToken token) {
+            this.bitmap = bitmap;
+            this.token = token;
+        }
+
+        @Override
+        public boolean include(RevWalk walker, RevCommit commit) {
+            token.throwIfCancelled();
+            if (!bitmap.contains(commit)) {
+                Bitmap commitBitmap = bitmap.getBitmapIndex().getBitmap(commit);
+                if (commitBitmap == null) {
+                    bitmap.addObject(commit, Constants.OBJ_COMMIT);
+                    return true;
+                }
+                bitmap.or(commitBitmap);
+            }
+            // the ancestors are already part of the bitmap, no need to walk them
+            for (RevCommit parent : commit.getParents()) {
+                parent.add(RevFlag.SEEN);
+            }
+            return false;
+        }
+
+        @Override
+        public RevFilter clone() {
+            return new AddToBitmapFilter(bitmap, token);
+        }
+
+        @Override
+        public boolean requiresCommitBody() {
+            return false;
+        }
+    }
+}
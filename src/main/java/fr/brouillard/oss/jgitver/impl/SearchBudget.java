@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+
+/**
+ * Bounds the number of commits and the time a history search may spend, the clock starting when the budget is created.
+ *
+ * <p>Searches call {@link #spend()} before handling each commit and stop as soon as it returns false; the result is
+ * then built from the commits searched so far, HEAD being always searched. With only a commit limit, the same
+ * repository state always gives the same result; a time limit trades that for a bounded latency.
+ */
+public class SearchBudget {
+    private final int maxCommits;
+    private final long maxNanos;
+    private final long startNanos;
+    private final CancellationToken token;
+    private int spentCommits = 0;
+    private boolean exceeded = false;
+
+    /**
+     * Starts a budget.
+     * @param maxCommits the maximum number of commits that can be searched, strictly positive
+     * @param maxDuration the maximum time the search can last, null for no time limit
+     * @param token the token aborting the search when cancelled
+     * @throws IllegalArgumentException if a limit is not strictly positive
+     */
+    public SearchBudget(int maxCommits, Duration maxDuration, CancellationToken token) {
+        if (maxCommits <= 0) {
+            throw new IllegalArgumentException("the maximum number of searched commits must be strictly positive: "
+                    + maxCommits);
+        }
+        if (maxDuration != null && (maxDuration.isNegative() || maxDuration.isZero())) {
+            throw new IllegalArgumentException("the maximum search duration must be strictly positive: " + maxDuration);
+        }
+        this.maxCommits = maxCommits;
+        this.maxNanos = maxDuration == null ? Long.MAX_VALUE : maxDuration.toNanos();
+        this.startNanos = System.nanoTime();
+        this.token = token;
+    }
+
+    /**
+     * Starts a budget without any limit.
+     * @return a budget that is never exceeded
+     */
+    public static SearchBudget unlimited() {
+        return new SearchBudget(Integer.MAX_VALUE, null, new CancellationToken());
+    }
+
+    /**
+     * Spends the budget of one commit.
+     * @return true if the commit can be searched, false if the budget is exceeded and the search must stop
+     * @throws CancellationException if the token of the budget has been cancelled
+     */
+    public boolean spend() {
+        token.throwIfCancelled();
+        // HEAD is always searched, so that a result can be built
+        boolean exhausted = spentCommits >= maxCommits || System.nanoTime() - startNanos > maxNanos;
+        if (spentCommits > 0 && exhausted) {
+            exceeded = true;
+            return false;
+        }
+        spentCommits++;
+        return true;
+    }
+
+    /**
+     * Tells if the given number of commits could still be searched, without spending the budget: commits read ahead
+     * of a search must not exceed the budget of the commits the search does not need.
+     * @param commits the number of commits, counted from the last spent one
+     * @return true if spending the budget of these commits would succeed
+     * @throws CancellationException if the token of the budget has been cancelled
+     */
+    public boolean allows(int commits) {
+        token.throwIfCancelled();
+        if (spentCommits == 0 && commits <= 1) {
+            // HEAD is always searched
+            return true;
+        }
+        return commits <= maxCommits - spentCommits && System.nanoTime() - startNanos <= maxNanos;
+    }
+
+    /**
+     * Tells if this budget can stop a search.
+     * @return true if a maximum number of commits or a maximum duration is set
+     */
+    public boolean isBounded() {
+        return maxCommits != Integer.MAX_VALUE || maxNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * Tells if a search has been stopped by this budget.
+     * @return true if {@link #spend()} refused a commit
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import fr.brouillard.oss.jgitver.SearchAlgorithm;
+import fr.brouillard.oss.jgitver.impl.VersionStrategy.StrategySearchMode;
+
+/**
+ * Selects the algorithm used to search the commits holding version tags, from statistics that are cheap to gather.
+ *
+ * <p>Walking down from HEAD is the cheapest when a version tag is close to HEAD. Testing the version tagged commits
+ * for ancestry first pays off when the walk would go through most of the history: when there is no version tag, when
+ * the strategy searches deep in the history, or when the previous calculation had to go through many commits. As the
+ * ancestry test relies on the pack bitmap index, the walk is always selected without it.
+ *
+ * <p>A search bounded by a budget always walks, even when the ancestry test is requested: the ancestry test computes
+ * the commits reachable from HEAD at once, which a budget cannot stop.
+ */
+public class SearchPlanner {
+    /**
+     * Number of commits searched by the previous calculation above which the version tags are considered far from HEAD.
+     */
+    static final int FAR_FROM_HEAD = 256;
+
+    private SearchPlanner() {
+    }
+
+    /**
+     * Selects the search algorithm.
+     * @param requested the algorithm requested by the user, {@link SearchAlgorithm#AUTO} to let it be selected
+     * @param reader the reader of the repository, used to check for a pack bitmap index
+     * @param shallowCommits the boundary commits of a shallow repository, empty for a complete one
+     * @param tags the tags of the repository
+     * @param strategy the strategy the search is done for
+     * @param lastSearchedCommits number of commits searched by the previous calculation, negative if unknown
+     * @param budget the budget of the search
+     * @return the algorithm to use, never {@link SearchAlgorithm#AUTO}
+     * @throws IOException if the bitmap index cannot be read
+     */
+    public static SearchAlgorithm select(SearchAlgorithm requested, ObjectReader reader, Set<ObjectId> shallowCommits,
+            TagIndex tags, VersionStrategy strategy, int lastSearchedCommits, SearchBudget budget) throws IOException {
+        if (budget.isBounded()) {
+            return SearchAlgorithm.WALK;
+        }
+        if (!SearchAlgorithm.AUTO.equals(requested)) {
+            return requested;
+        }
+        if (!shallowCommits.isEmpty() || reader.getBitmapIndex() == null) {
+            return SearchAlgorithm.WALK;
+        }
+        boolean walkWouldGoDeep = tags.getVersionTaggedCommits().isEmpty()
+                || StrategySearchMode.DEPTH.equals(strategy.searchMode())
+                || lastSearchedCommits > FAR_FROM_HEAD;
+        return walkWouldGoDeep ? SearchAlgorithm.TAG_ANCESTRY : SearchAlgorithm.WALK;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Index of the tags of a repository, built once per calculation.
+ *
+ * <p>Tags are kept in the order they were given (most recent first) and partitioned between annotated &amp; lightweight
+ * ones, and between all tags and tags representing a version. Lookups of the tags of a commit are direct instead of
+ * requiring a scan of all tags.
+ */
+public class TagIndex {
+    private final List<Ref> allTags;
+    private final List<Ref> annotatedTags;
+    private final List<Ref> lightTags;
+    private final List<Ref> versionTags;
+    private final List<Ref> annotatedVersionTags;
+    private final List<Ref> lightVersionTags;
+    private final Map<ObjectId, List<Ref>> tagsByCommit;
+    private final Map<ObjectId, List<Ref>> versionTagsByCommit;
+
+    /**
+     * Builds the index from the given tags.
+     * @param peeledTags tags already peeled, sorted from most recent to oldest
+     * @param isVersionTag predicate telling if a tag represents a version
+     */
+    public TagIndex(List<Ref> peeledTags, Predicate<Ref> isVersionTag) {
+        int expectedSize = peeledTags.size();
+        this.allTags = Collections.unmodifiableList(new ArrayList<>(peeledTags));
+        List<Ref> annotated = new ArrayList<>(expectedSize);
+        List<Ref> light = new ArrayList<>(expectedSize);
+        List<Ref> version = new ArrayList<>(expectedSize);
+        List<Ref> annotatedVersion = new ArrayList<>();
+        List<Ref> lightVersion = new ArrayList<>();
+        this.tagsByCommit = new HashMap<>();
+        this.versionTagsByCommit = new HashMap<>();
+
+        for (Ref tag : peeledTags) {
+            boolean isAnnotated = GitUtils.isAnnotated(tag);
+            (isAnnotated ? annotated : light).add(tag);
+            tagsByCommit.computeIfAbsent(targetOf(tag), id -> new ArrayList<>(1)).add(tag);
+
+            if (isVersionTag.test(tag)) {
+                version.add(tag);
+                (isAnnotated ? annotatedVersion : lightVersion).add(tag);
+                versionTagsByCommit.computeIfAbsent(targetOf(tag), id -> new ArrayList<>(1)).add(tag);
+            }
+        }
+
+        this.annotatedTags = Collections.unmodifiableList(annotated);
+        this.lightTags = Collections.unmodifiableList(light);
+        this.versionTags = Collections.unmodifiableList(version);
+        this.annotatedVersionTags = Collections.unmodifiableList(annotatedVersion);
+        this.lightVersionTags = Collections.unmodifiableList(lightVersion);
+    }
+
+    /**
+     * Retrieves the object a tag finally points to, ie the commit for tags on commits.
+     * @param tag a peeled tag
+     * @return the id of the peeled object for annotated tags, the id of the tagged object otherwise
+     */
+    public static ObjectId targetOf(Ref tag) {
+        return tag.getPeeledObjectId() != null ? tag.getPeeledObjectId() : tag.getObjectId();
+    }
+
+    public List<Ref> getAllTags() {
+        return allTags;
+    }
+
+    public List<Ref> getAnnotatedTags() {
+        return annotatedTags;
+    }
+
+    public List<Ref> getLightTags() {
+        return lightTags;
+    }
+
+    public List<Ref> getVersionTags() {
+        return versionTags;
+    }
+
+    public List<Ref> getAnnotatedVersionTags() {
+        return annotatedVersionTags;
+    }
+
+    public List<Ref> getLightVersionTags() {
+        return lightVersionTags;
+    }
+
+    /**
+     * Tells if the given commit holds at least one version tag.
+     * @param id the commit to look tags for
+     * @return true if at least one version tag is on the given commit
+     */
+    public boolean hasVersionTags(ObjectId id) {
+        return versionTagsByCommit.containsKey(id);
+    }
+
+    /**
+     * Retrieves the ids of all the commits holding at least one version tag.
+     * @return a non null unmodifiable collection of commit ids
+     */
+    public Set<ObjectId> getVersionTaggedCommits() {
+        return Collections.unmodifiableSet(versionTagsByCommit.keySet());
+    }
+
+    public List<Ref> tagsOf(ObjectId id) {
+        return tagsByCommit.getOrDefault(id, Collections.emptyList());
+    }
+
+    public List<Ref> annotatedTagsOf(ObjectId id) {
+        return filter(tagsByCommit, id, true);
+    }
+
+    public List<Ref> lightTagsOf(ObjectId id) {
+        return filter(tagsByCommit, id, false);
+    }
+
+    public List<Ref> annotatedVersionTagsOf(ObjectId id) {
+        return filter(versionTagsByCommit, id, true);
+    }
+
+    public List<Ref> lightVersionTagsOf(ObjectId id) {
+        return filter(versionTagsByCommit, id, false);
+    }
+
+    private static List<Ref> filter(Map<ObjectId, List<Ref>> index, ObjectId id, boolean annotated) {
+        List<Ref> tags = index.get(id);
+        if (tags == null) {
+            return new ArrayList<>(0);
+        }
+        List<Ref> filtered = new ArrayList<>(tags.size());
+        for (Ref tag : tags) {
+            if (GitUtils.isAnnotated(tag) == annotated) {
+                filtered.add(tag);
+            }
+        }
+        return filtered;
+    }
+}
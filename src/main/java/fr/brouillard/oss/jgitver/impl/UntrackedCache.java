@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Read only access to the untracked cache stored by git in the {@code UNTR} extension of the index, once enabled with
+ * {@code git update-index --untracked-cache}.
+ *
+ * <p>For each directory git went through, the extension records the stat data of the directory, the identifier of
+ * its {@code .gitignore} and the untracked entries found in it. As long as a directory keeps the same stat data and
+ * ignore rules, the untracked entries directly in it are the recorded ones, without reading the directory.
+ *
+ * <p>The extension itself is never written back: directories found unchanged after a scan are refreshed in memory
+ * only, for the later uses of the same instance.
+ */
+public final class UntrackedCache {
+    private static final int EXTENSION_UNTRACKED = 0x554e5452; // UNTR
+    private static final int STAT_SIZE = 36;
+
+    private final File indexFile;
+    private final IndexSnapshot indexSnapshot;
+    private final String perDirectoryRules;
+    private final ObjectId infoExcludeId;
+    private final ObjectId excludesFileId;
+    private final Directory root;
+
+    private UntrackedCache(File indexFile, IndexSnapshot indexSnapshot, String perDirectoryRules,
+            ObjectId infoExcludeId, ObjectId excludesFileId, Directory root) {
+        this.indexFile = indexFile;
+        this.indexSnapshot = indexSnapshot;
+        this.perDirectoryRules = perDirectoryRules;
+        this.infoExcludeId = infoExcludeId;
+        this.excludesFileId = excludesFileId;
+        this.root = root;
+    }
+
+    /**
+     * Reads the untracked cache of the index of the given repository.
+     * @param repository a non bare repository
+     * @return the untracked cache, null if the index has none or if it was recorded for another working tree
+     * @throws IOException if the index cannot be read
+     */
+    public static UntrackedCache read(Repository repository) throws IOException {
+        File indexFile = repository.getIndexFile();
+        if (repository.isBare() || !indexFile.isFile()) {
+            return null;
+        }
+        IndexSnapshot snapshot = IndexSnapshot.of(indexFile);
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        try {
+            ByteBuffer extension = IndexExtensions.find(index, EXTENSION_UNTRACKED);
+            if (extension == null) {
+                return null;
+            }
+
+            int identLength = (int) IndexExtensions.readVarint(extension);
+            String ident = new String(IndexExtensions.bytes(extension, identLength), StandardCharsets.UTF_8);
+            File workTree = repository.getWorkTree();
+            if (!ident.startsWith("Location " + workTree.getAbsolutePath() + ",")
+                    && !ident.startsWith("Location " + workTree.getCanonicalPath() + ",")) {
+                return null;
+            }
+            // stat data of info/exclude & of core.excludesFile, then the flags used by git when filling the cache
+            extension.position(extension.position() + 2 * STAT_SIZE + 4);
+            final ObjectId infoExcludeId = ObjectId.fromRaw(IndexExtensions.bytes(extension, Constants.OBJECT_ID_LENGTH));
+            final ObjectId excludesFileId = ObjectId.fromRaw(IndexExtensions.bytes(extension, Constants.OBJECT_ID_LENGTH));
+            final String perDirectoryRules = IndexExtensions.readString(extension);
+
+            int directoryCount = (int) IndexExtensions.readVarint(extension);
+            if (directoryCount == 0) {
+                return null;
+            }
+            List<Directory> directories = new ArrayList<>(directoryCount);
+            final Directory root = readDirectory(extension, null, directories);
+
+            BitSet valid = IndexExtensions.readEwah(extension);
+            IndexExtensions.readEwah(extension);
+            BitSet ignoreRulesValid = IndexExtensions.readEwah(extension);
+            for (int i = valid.nextSetBit(0); i >= 0; i = valid.nextSetBit(i + 1)) {
+                directories.get(i).stat = Stat.read(extension);
+                directories.get(i).valid = true;
+            }
+            for (int i = ignoreRulesValid.nextSetBit(0); i >= 0; i = ignoreRulesValid.nextSetBit(i + 1)) {
+                directories.get(i).ignoreRulesId = ObjectId.fromRaw(IndexExtensions.bytes(extension, Constants.OBJECT_ID_LENGTH));
+            }
+            return new UntrackedCache(indexFile, snapshot, perDirectoryRules, infoExcludeId, excludesFileId, root);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            // truncated or unknown layout, the working tree will be read
+            return null;
+        }
+    }
+
+    /**
+     * Reads the block of a directory and the ones of its sub directories, in depth first order.
+     */
+    private static Directory readDirectory(ByteBuffer buffer, Directory parent, List<Directory> directories) {
+        int untrackedCount = (int) IndexExtensions.readVarint(buffer);
+        int childCount = (int) IndexExtensions.readVarint(buffer);
+        String name = IndexExtensions.readString(buffer);
+        Directory directory = new Directory(parent == null ? "" : parent.childPath(name));
+        directories.add(directory);
+        for (int i = 0; i < untrackedCount; i++) {
+            directory.untracked.add(IndexExtensions.readString(buffer));
+        }
+        for (int i = 0; i < childCount; i++) {
+            Directory child = readDirectory(buffer, directory, directories);
+            directory.children.put(child.name(), child);
+        }
+        return directory;
+    }
+
+
+    /**
+     * Tells if the index file has not been written since this cache was read.
+     * @return true if the index is the one this cache was read from
+     * @throws IOException if the index cannot be read
+     */
+    public boolean isUpToDate() throws IOException {
+        return indexFile.isFile() && indexSnapshot.equals(IndexSnapshot.of(indexFile));
+    }
+
+    /**
+     * Tells if the ignore rules not attached to a directory, ie {@code info/exclude} and {@code core.excludesFile}, are
+     * still the ones the cache was filled with.
+     * @param repository the repository this cache was read from
+     * @return true if the global ignore rules did not change
+     * @throws IOException if one of the rules files cannot be read
+     */
+    boolean hasSameGlobalRules(Repository repository) throws IOException {
+        File infoExclude = new File(new File(repository.getDirectory(), "info"), "exclude");
+        if (!infoExcludeId.equals(idOf(infoExclude))) {
+            return false;
+        }
+        String excludesFile = repository.getConfig().get(CoreConfig.KEY).getExcludesFile();
+        File excludes = null;
+        if (excludesFile != null) {
+            FS fs = repository.getFS();
+            excludes = excludesFile.startsWith("~/") ? fs.resolve(fs.userHome(), excludesFile.substring(2))
+                    : fs.resolve(null, excludesFile);
+        }
+        return excludesFileId.equals(idOf(excludes));
+    }
+
+    /**
+     * Computes the identifier git records for a file holding ignore rules: the one of its content as a blob.
+     * @param file the rules file, possibly missing
+     * @return the blob identifier of the file, the zero id if it does not exist
+     */
+    static ObjectId idOf(File file) throws IOException {
+        if (file == null || !file.isFile()) {
+            return ObjectId.zeroId();
+        }
+        try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+            return formatter.idFor(Constants.OBJ_BLOB, Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    String getPerDirectoryRules() {
+        return perDirectoryRules;
+    }
+
+    Directory getRoot() {
+        return root;
+    }
+
+    /**
+     * Tells if the stat data of a file or directory can be trusted, ie if it was not modified during the second the
+     * index was written at, in which case a later modification in the same second would go unnoticed.
+     */
+    boolean isRacy(Stat stat) {
+        return stat.isNotOlderThan(indexSnapshot.modified);
+    }
+
+    /**
+     * Untracked entries recorded for one directory.
+     */
+    static final class Directory {
+        private final String path;
+        private final List<String> untracked = new ArrayList<>();
+        private final Map<String, Directory> children = new LinkedHashMap<>();
+        private boolean valid;
+        private Stat stat;
+        private ObjectId ignoreRulesId;
+
+        private Directory(String path) {
+            this.path = path;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String name() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        String childPath(String childName) {
+            return path.isEmpty() ? childName : path + "/" + childName;
+        }
+
+        List<String> getUntracked() {
+            return untracked;
+        }
+
+        Collection<Directory> getChildren() {
+            return children.values();
+        }
+
+        boolean isValid() {
+            return valid;
+        }
+
+        Stat getStat() {
+            return stat;
+        }
+
+        ObjectId getIgnoreRulesId() {
+            return ignoreRulesId == null ? ObjectId.zeroId() : ignoreRulesId;
+        }
+
+        /**
+         * Finds the block of a sub directory, creating an invalid one if git did not record it.
+         */
+        Directory child(String childName) {
+            return children.computeIfAbsent(childName, name -> new Directory(childPath(name)));
+        }
+
+        /**
+         * Records that the directory holds no untracked entry since it was in the given state.
+         */
+        void refresh(Stat current, ObjectId currentIgnoreRulesId) {
+            untracked.clear();
+            stat = current;
+            ignoreRulesId = ObjectId.zeroId().equals(currentIgnoreRulesId) ? null : currentIgnoreRulesId;
+            valid = true;
+        }
+    }
+
+    /**
+     * Stat data of a directory, restricted to the fields git compares to detect a change of its content.
+     */
+    static final class Stat {
+        private final int ctimeSeconds;
+        private final int ctimeNanos;
+        private final int mtimeSeconds;
+        private final int mtimeNanos;
+        private final int inode;
+        private final int size;
+        private final boolean unix;
+
+        private Stat(int ctimeSeconds, int ctimeNanos, int mtimeSeconds, int mtimeNanos, int inode, int size,
+                boolean unix) {
+            this.ctimeSeconds = ctimeSeconds;
+            this.ctimeNanos = ctimeNanos;
+            this.mtimeSeconds = mtimeSeconds;
+            this.mtimeNanos = mtimeNanos;
+            this.inode = inode;
+            this.size = size;
+            this.unix = unix;
+        }
+
+        /**
+         * Reads stat data as git stores it: ctime &amp; mtime as seconds and nanoseconds, device, inode, uid, gid and
+         * size, each on 32 bits.
+         */
+        private static Stat read(ByteBuffer buffer) {
+            final int ctimeSeconds = buffer.getInt();
+            final int ctimeNanos = buffer.getInt();
+            final int mtimeSeconds = buffer.getInt();
+            final int mtimeNanos = buffer.getInt();
+            buffer.getInt();
+            int inode = buffer.getInt();
+            buffer.getInt();
+            buffer.getInt();
+            int size = buffer.getInt();
+            return new Stat(ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, inode, size, true);
+        }
+
+        /**
+         * Reads the stat data of a file or directory of the file system.
+         * @param path the file or directory to read
+         * @return its stat data, without ctime &amp; inode on file systems not exposing them
+         * @throws IOException if the file cannot be read
+         */
+        static Stat of(Path path) throws IOException {
+            try {
+                Map<String, Object> attributes = Files.readAttributes(path, "unix:ctime,lastModifiedTime,ino,size",
+                        LinkOption.NOFOLLOW_LINKS);
+                FileTime ctime = (FileTime) attributes.get("ctime");
+                FileTime mtime = (FileTime) attributes.get("lastModifiedTime");
+                return new Stat(seconds(ctime), nanos(ctime), seconds(mtime), nanos(mtime),
+                        ((Long) attributes.get("ino")).intValue(), ((Long) attributes.get("size")).intValue(), true);
+            } catch (UnsupportedOperationException ex) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                FileTime mtime = attributes.lastModifiedTime();
+                return new Stat(0, 0, seconds(mtime), nanos(mtime), 0, (int) attributes.size(), false);
+            }
+        }
+
+        private static int seconds(FileTime time) {
+            return (int) time.to(TimeUnit.SECONDS);
+        }
+
+        private static int nanos(FileTime time) {
+            return (int) (time.to(TimeUnit.NANOSECONDS) % TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Compares recorded stat data to the current one, nanoseconds being ignored when git did not record them.
+         * @param current the stat data read from the file system
+         * @return true if the file did not change
+         */
+        boolean matches(Stat current) {
+            boolean same = mtimeSeconds == current.mtimeSeconds
+                    && (mtimeNanos == 0 || mtimeNanos == current.mtimeNanos)
+                    && size == current.size;
+            if (current.unix) {
+                same = same && ctimeSeconds == current.ctimeSeconds
+                        && (ctimeNanos == 0 || ctimeNanos == current.ctimeNanos)
+                        && inode == current.inode;
+            }
+            return same;
+        }
+
+        boolean isNotOlderThan(FileTime time) {
+            int seconds = seconds(time);
+            return mtimeSeconds > seconds || (mtimeSeconds == seconds && mtimeNanos >= nanos(time));
+        }
+    }
+
+    /**
+     * State of the index file when it was read.
+     */
+    private static final class IndexSnapshot {
+        private final FileTime modified;
+        private final long size;
+        private final Object key;
+
+        private IndexSnapshot(FileTime modified, long size, Object key) {
+            this.modified = modified;
+            this.size = size;
+            this.key = key;
+        }
+
+        private static IndexSnapshot of(File indexFile) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(indexFile.toPath(), BasicFileAttributes.class);
+            return new IndexSnapshot(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof IndexSnapshot)) {
+                return false;
+            }
+            IndexSnapshot other = (IndexSnapshot) obj;
+            return modified.equals(other.modified) && size == other.size
+                    && (key == null ? other.key == null : key.equals(other.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return modified.hashCode();
+        }
+    }
+}
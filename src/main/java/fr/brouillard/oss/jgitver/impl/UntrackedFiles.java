@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.impl.UntrackedCache.Directory;
+import fr.brouillard.oss.jgitver.impl.UntrackedCache.Stat;
+
+/**
+ * Looks for untracked files, ie files neither in the index nor ignored, using the untracked cache of the index.
+ *
+ * <p>The directories recorded in the cache are checked first: a directory whose stat data and ignore rules did not
+ * change is not read, its recorded untracked entries are used. Only the changed directories are then read, together
+ * with the directories created in them. When none of them holds an untracked file, they are refreshed in the cache
+ * so that a later search does not read them again.
+ *
+ * <p>When the paths changed since the index was written are known from a {@link FsMonitor file system monitor}, the
+ * directories holding none of them are trusted without reading their stat data.
+ */
+final class UntrackedFiles {
+    private static final int INDEX = 0;
+    private static final int WORKDIR = 1;
+
+    private final Repository repository;
+    private final DirCache dirCache;
+    private final UntrackedCache cache;
+    private final Set<String> changedDirectories;
+    private final Set<String> changedTrees;
+
+    /**
+     * Prepares the search of untracked files.
+     * @param repository the repository to search
+     * @param dirCache the index of the repository
+     * @param cache the untracked cache of the index
+     * @param changedPaths the paths changed since the index was written, directories ending with a slash, null if
+     *        unknown
+     */
+    UntrackedFiles(Repository repository, DirCache dirCache, UntrackedCache cache, Set<String> changedPaths) {
+        this.repository = repository;
+        this.dirCache = dirCache;
+        this.cache = cache;
+        if (changedPaths == null) {
+            this.changedDirectories = null;
+            this.changedTrees = null;
+        } else {
+            this.changedDirectories = new HashSet<>();
+            this.changedTrees = new HashSet<>();
+            for (String path : changedPaths) {
+                if (path.endsWith("/")) {
+                    changedTrees.add(path.substring(0, path.length() - 1));
+                } else {
+                    changedDirectories.add(parentOf(path));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells if the working tree holds an untracked file.
+     * @param token the token checked between two directories or files
+     * @return true if a file or directory is neither in the index nor ignored
+     * @throws IOException if the working tree cannot be read
+     */
+    boolean exist(CancellationToken token) throws IOException {
+        // refreshes of the cache are not shared between concurrent searches
+        synchronized (cache) {
+            final long start = System.currentTimeMillis();
+            boolean sameRules = Constants.DOT_GIT_IGNORE.equals(cache.getPerDirectoryRules())
+                    && cache.hasSameGlobalRules(repository);
+
+            Map<String, Refresh> stale = new LinkedHashMap<>();
+            Set<String> recorded = new HashSet<>();
+            if (hasRecordedUntracked(cache.getRoot(), !sameRules, stale, recorded, token)) {
+                return true;
+            }
+            if (stale.isEmpty()) {
+                return false;
+            }
+
+            Map<String, Refresh> created = new LinkedHashMap<>();
+            if (hasUntrackedIn(stale, recorded, created, token)) {
+                return true;
+            }
+            stale.putAll(created);
+            FileTime scanStart = FileTime.fromMillis(start);
+            for (Map.Entry<String, Refresh> refresh : stale.entrySet()) {
+                // a directory modified during the scan may hold files not seen by it
+                if (!refresh.getValue().stat.isNotOlderThan(scanStart)) {
+                    directory(refresh.getKey()).refresh(refresh.getValue().stat, refresh.getValue().ignoreRulesId);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Goes through the recorded directories still existing, looking for an unchanged one having untracked entries and
+     * collecting the changed ones.
+     */
+    private boolean hasRecordedUntracked(Directory directory, boolean rulesChanged, Map<String, Refresh> stale,
+            Set<String> recorded, CancellationToken token) throws IOException {
+        token.throwIfCancelled();
+        if (directory.isValid() && !rulesChanged && isUnchangedForMonitor(directory.getPath())) {
+            recorded.add(directory.getPath());
+            if (!directory.getUntracked().isEmpty()) {
+                return true;
+            }
+            for (Directory child : directory.getChildren()) {
+                if (hasRecordedUntracked(child, false, stale, recorded, token)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Path path = repository.getWorkTree().toPath().resolve(directory.getPath());
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            // removed, and its untracked entries with it
+            return false;
+        }
+        recorded.add(directory.getPath());
+        Refresh current = Refresh.of(path);
+        boolean changedRules = rulesChanged || !current.ignoreRulesId.equals(directory.getIgnoreRulesId());
+        if (directory.isValid() && !changedRules && directory.getStat().matches(current.stat)
+                && !cache.isRacy(directory.getStat())) {
+            if (!directory.getUntracked().isEmpty()) {
+                return true;
+            }
+        } else {
+            stale.put(directory.getPath(), current);
+        }
+        for (Directory child : directory.getChildren()) {
+            if (hasRecordedUntracked(child, changedRules, stale, recorded, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the changed directories, and the directories not recorded below them, looking for an untracked file.
+     */
+    private boolean hasUntrackedIn(Map<String, Refresh> stale, Set<String> recorded, Map<String, Refresh> created,
+            CancellationToken token) throws IOException {
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setOperationType(OperationType.CHECKIN_OP);
+            walk.setRecursive(true);
+            walk.addTree(new DirCacheIterator(dirCache));
+            FileTreeIterator workingTree = new FileTreeIterator(repository);
+            walk.addTree(workingTree);
+            workingTree.setDirCacheIterator(walk, INDEX);
+            walk.setFilter(new ChangedDirectories(stale.keySet(), recorded, created));
+            while (walk.next()) {
+                token.throwIfCancelled();
+                if (isUntracked(walk)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if the file system monitor reported no change directly in the given directory, nor in one holding it.
+     */
+    private boolean isUnchangedForMonitor(String directory) {
+        if (changedDirectories == null || changedDirectories.contains(directory)) {
+            return false;
+        }
+        String path = directory;
+        while (!changedTrees.contains(path)) {
+            if (path.isEmpty()) {
+                return true;
+            }
+            path = parentOf(path);
+        }
+        return false;
+    }
+
+    private static boolean isUntracked(TreeWalk walk) throws IOException {
+        WorkingTreeIterator workingTree = walk.getTree(WORKDIR, WorkingTreeIterator.class);
+        return walk.getRawMode(INDEX) == 0 && workingTree != null && !workingTree.isEntryIgnored();
+    }
+
+    private Directory directory(String path) {
+        Directory directory = cache.getRoot();
+        if (!path.isEmpty()) {
+            for (String name : path.split("/")) {
+                directory = directory.child(name);
+            }
+        }
+        return directory;
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * State of a directory when it was checked, recorded in the cache if it holds no untracked entry.
+     */
+    private static final class Refresh {
+        private final Stat stat;
+        private final ObjectId ignoreRulesId;
+
+        private Refresh(Stat stat, ObjectId ignoreRulesId) {
+            this.stat = stat;
+            this.ignoreRulesId = ignoreRulesId;
+        }
+
+        private static Refresh of(Path directory) throws IOException {
+            Stat stat = Stat.of(directory);
+            return new Refresh(stat, UntrackedCache.idOf(new File(directory.toFile(), Constants.DOT_GIT_IGNORE)));
+        }
+    }
+
+    /**
+     * Selects the entries directly in a changed directory, or in a directory created below one of them, and the
+     * directories leading to them.
+     */
+    private final class ChangedDirectories extends TreeFilter {
+        private final Set<String> stale;
+        private final Set<String> recorded;
+        private final Map<String, Refresh> created;
+        private final Set<String> leadingToStale = new HashSet<>();
+
+        private ChangedDirectories(Set<String> stale, Set<String> recorded, Map<String, Refresh> created) {
+            this.stale = stale;
+            this.recorded = recorded;
+            this.created = created;
+            for (String path : stale) {
+                String parent = path;
+                while (!parent.isEmpty()) {
+                    parent = parentOf(parent);
+                    leadingToStale.add(parent);
+                }
+            }
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) throws IOException {
+            String path = walker.getPathString();
+            if (!walker.isSubtree()) {
+                return isRead(parentOf(path));
+            }
+            if (leadingToStale.contains(path)) {
+                return true;
+            }
+            if (!isRead(path)) {
+                return false;
+            }
+            WorkingTreeIterator workingTree = walker.getTree(WORKDIR, WorkingTreeIterator.class);
+            if (workingTree == null || (walker.getRawMode(INDEX) == 0 && workingTree.isEntryIgnored())) {
+                return false;
+            }
+            if (!recorded.contains(path)) {
+                created.put(path, Refresh.of(repository.getWorkTree().toPath().resolve(path)));
+            }
+            return true;
+        }
+
+        /**
+         * Tells if a directory is read, ie if the closest recorded directory holding it, or itself, has changed.
+         */
+        private boolean isRead(String directory) {
+            String path = directory;
+            while (!recorded.contains(path)) {
+                if (path.isEmpty()) {
+                    return false;
+                }
+                path = parentOf(path);
+            }
+            return stale.contains(path);
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class VersionNamingConfiguration {
     private Pattern searchPattern;
     private String replaceVersionRegex;
     private List<String> noQualifierForBranches;
+    private String tagPrefix;
 
     /**
      * Builds a Configuration object holding information to use while building version.
@@ -32,9 +33,24 @@ public class VersionNamingConfiguration {
      * @param noQualifierForBranches comma separated string of branches name for which no qualifier will be built
      */
     public VersionNamingConfiguration(String searchVersionRegex, String replaceVersionRegex, List<String> noQualifierForBranches) {
+        this(searchVersionRegex, replaceVersionRegex, noQualifierForBranches, "");
+    }
+
+    /**
+     * Builds a Configuration object holding information to use while building version, only considering tags
+     * starting with the given prefix.
+     * @param searchVersionRegex a regex pattern that will be applied to the repository tag list, once the prefix removed,
+     *      to filter only the tags that represent a version
+     * @param replaceVersionRegex a replacement regex string that will be applied on searchVersionRegex to extract the tag string to use
+     * @param noQualifierForBranches comma separated string of branches name for which no qualifier will be built
+     * @param tagPrefix the prefix that tags must have to be considered, empty to consider all tags
+     */
+    public VersionNamingConfiguration(String searchVersionRegex, String replaceVersionRegex, List<String> noQualifierForBranches,
+            String tagPrefix) {
         this.noQualifierForBranches = noQualifierForBranches;
         this.searchPattern = Pattern.compile(searchVersionRegex);
         this.replaceVersionRegex = replaceVersionRegex;
+        this.tagPrefix = tagPrefix;
     }
 
     protected Pattern getSearchPattern() {
@@ -45,8 +61,18 @@ public class VersionNamingConfiguration {
         return replaceVersionRegex;
     }
     
+    /**
+     * Tells if the given tag name, prefix included, represents a version.
+     * @param tagName the name of the tag without the refs/tags/ part
+     * @return true if the tag starts with the expected prefix and the remaining matches the search pattern
+     */
+    public boolean isVersionTag(String tagName) {
+        return tagName.startsWith(tagPrefix) && searchPattern.matcher(tagName.substring(tagPrefix.length())).matches();
+    }
+
     public String extractVersionFrom(String tagName) {
-        return searchPattern.matcher(tagName).replaceAll(replaceVersionRegex);
+        String unprefixed = tagName.startsWith(tagPrefix) ? tagName.substring(tagPrefix.length()) : tagName;
+        return searchPattern.matcher(unprefixed).replaceAll(replaceVersionRegex);
     }
     
     /**
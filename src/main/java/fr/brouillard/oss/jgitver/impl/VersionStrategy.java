@@ -19,6 +19,7 @@ import java.util.List;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 
@@ -31,6 +32,7 @@ public abstract class VersionStrategy {
     private Repository repository;
     private Git git;
     private MetadataRegistrar registrar;
+    private Boolean repositoryDirty = null;
 
     protected MetadataRegistrar getRegistrar() {
         return registrar;
@@ -76,13 +78,25 @@ public abstract class VersionStrategy {
     
     public boolean considerTagAsAVersionOne(Ref tag) {
         String tagName = tagNameFromRef(tag);
-        return getVersionNamingConfiguration().getSearchPattern().matcher(tagName).matches();
+        return getVersionNamingConfiguration().isVersionTag(tagName);
     }
 
     public StrategySearchMode searchMode() {
         return StrategySearchMode.STOP_AT_FIRST;
     }
 
+    /**
+     * Tells if the {@link Commit#getHeadDistance() distance} of the commits given to {@link #build(Commit, List)} must
+     * be the number of commits reachable from HEAD and not from them, as {@code git describe} counts them, instead of
+     * their position in the history walk. Both are equal on a linear history; the former is computed from the pack
+     * bitmap index when the repository has one.
+     * 
+     * @return true to count distances by ancestry, false to use the walk position
+     */
+    public boolean useBitmapDistance() {
+        return false;
+    }
+
     private String tagNameFromRef(Ref tag) {
         return tag.getName().replace("refs/tags/", "");
     }
@@ -111,6 +125,27 @@ public abstract class VersionStrategy {
         return git;
     }
 
+    /**
+     * Provides the dirty state of the repository when it is already known, so that building the version does not
+     * check the working tree again.
+     * @param repositoryDirty true if the repository has uncommitted changes or new files
+     */
+    public void setRepositoryDirty(boolean repositoryDirty) {
+        this.repositoryDirty = repositoryDirty;
+    }
+
+    /**
+     * Tells if the repository has uncommitted changes or new files, the working tree being checked at most once.
+     * @return true if the repository is dirty
+     * @throws GitAPIException if the status of the repository cannot be computed
+     */
+    protected boolean isRepositoryDirty() throws GitAPIException {
+        if (repositoryDirty == null) {
+            repositoryDirty = GitUtils.isDirty(git);
+        }
+        return repositoryDirty;
+    }
+
     protected boolean isBaseCommitOnHead(Commit head, Commit base) {
         return head.getGitObject().name().equals(base.getGitObject().name());
     }
@@ -0,0 +1,445 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+
+/**
+ * Detects changes of a working tree by comparing it to the index and HEAD, as {@code git status} does, with one task per
+ * top level directory run in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Each task walks its own directory with its own file system iterator, all of them sharing the index read once.
+ * The scan stops as soon as one task finds a change: the running tasks stop at their next entry and the ones not
+ * started yet return immediately.
+ *
+ * <p>When the index holds an {@link UntrackedCache untracked cache}, untracked files are first searched with it, then
+ * the tasks only go through the files of HEAD or of the index: directories holding neither of them are not read. If
+ * a {@link FsMonitor file system monitor} is also configured, only the paths it reports are compared to the index,
+ * all the others being known as unchanged since the index was written; HEAD and the index are still compared.
+ *
+ * <p>Ignored directories holding no file of HEAD or of the index, as {@code target/} or {@code node_modules/}, are
+ * never walked: none of their entries can make the working tree dirty.
+ *
+ * <p>In a sparse checkout, the entries flagged skip-worktree are not compared, as {@code git status} does, and the
+ * directories holding only such entries are not walked when they are missing from the working tree and unchanged
+ * between HEAD and the index: the cost of the scan follows the checked out part of the index.
+ *
+ * <p>Submodules are not handled, their state lives in their own repository: {@link #handlesAllEntries()} tells if the
+ * scan can be used instead of a status.
+ */
+public class WorkingTreeScan {
+    private static final int TREE = 0;
+    private static final int INDEX = 1;
+    private static final int WORKDIR = 2;
+
+    private final Repository repository;
+    private final DirCache dirCache;
+    private final ObjectId headTree;
+    private final UntrackedCache untrackedCache;
+    private final FsMonitor fsMonitor;
+    private final Set<String> sparseDirectories;
+
+    /**
+     * Reads the index and the tree of HEAD of the given repository.
+     * @param repository a non bare repository
+     * @param untrackedCache the untracked cache of the index, null to look for untracked files in every directory
+     * @throws IOException if the index or HEAD cannot be read
+     */
+    public WorkingTreeScan(Repository repository, UntrackedCache untrackedCache) throws IOException {
+        this.repository = repository;
+        this.untrackedCache = untrackedCache;
+        this.fsMonitor = untrackedCache != null ? FsMonitor.of(repository) : null;
+        this.dirCache = repository.readDirCache();
+        this.headTree = repository.resolve(Constants.HEAD + "^{tree}");
+        // the index trees are built once here, the tasks then only read them
+        this.dirCache.getCacheTree(true);
+        this.sparseDirectories = sparseDirectories(dirCache);
+        if (!sparseDirectories.isEmpty() && !dirCache.hasUnmergedPaths()) {
+            // the ids of the index trees, computed without writing them, tell the directories unchanged since HEAD
+            try (ObjectInserter formatter = new TreeIds()) {
+                dirCache.writeTree(formatter);
+            }
+        }
+    }
+
+    /**
+     * Lists the directories of the index holding only entries outside of the sparse checkout, ie flagged skip-worktree.
+     */
+    private static Set<String> sparseDirectories(DirCache dirCache) {
+        Set<String> sparse = new HashSet<>();
+        Set<String> checkedOut = new HashSet<>();
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            DirCacheEntry entry = dirCache.getEntry(i);
+            Set<String> directories = entry.isSkipWorkTree() && entry.getStage() == 0 ? sparse : checkedOut;
+            String path = entry.getPathString();
+            int slash = path.lastIndexOf('/');
+            // the directories holding an already added one are already added too
+            while (slash > 0 && directories.add(path.substring(0, slash))) {
+                slash = path.lastIndexOf('/', slash - 1);
+            }
+        }
+        sparse.removeAll(checkedOut);
+        return sparse;
+    }
+
+    /**
+     * Tells if the scan gives the same result as a status for this index, ie if it holds no submodule.
+     * @return true if the scan can replace a status
+     */
+    public boolean handlesAllEntries() {
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            if (dirCache.getEntry(i).getFileMode() == FileMode.GITLINK) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the working tree for changes.
+     * @param pool the pool running the tasks scanning the top level directories
+     * @param token the token checked by the tasks between two entries
+     * @return true if a file is added, changed, removed, missing, modified, untracked or in conflict
+     * @throws IOException if the working tree cannot be read
+     * @throws java.util.concurrent.CancellationException if the token has been cancelled
+     */
+    public boolean isDirty(ForkJoinPool pool, CancellationToken token) throws IOException {
+        token.throwIfCancelled();
+        Set<String> changedPaths = fsMonitor != null ? fsMonitor.changedPaths(dirCache, token) : null;
+        if (untrackedCache != null
+                && new UntrackedFiles(repository, dirCache, untrackedCache, changedPaths).exist(token)) {
+            return true;
+        }
+        AtomicBoolean dirty = new AtomicBoolean(false);
+        if (changedPaths != null) {
+            return hasStagedChanges() || (!changedPaths.isEmpty() && scan(reported(changedPaths), dirty, token));
+        }
+
+        Set<String> directories = topLevelDirectories();
+        List<ScanTask> tasks = new ArrayList<>(directories.size() + 1);
+        tasks.add(new ScanTask(new RootEntries(directories), dirty, token));
+        for (String directory : directories) {
+            tasks.add(new ScanTask(PathFilter.create(directory), dirty, token));
+        }
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        // a cancelled scan stops before having seen all entries
+        token.throwIfCancelled();
+        return dirty.get();
+    }
+
+    /**
+     * Compares HEAD to the index, without reading the working tree.
+     */
+    private boolean hasStagedChanges() throws IOException {
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            if (dirCache.getEntry(i).getStage() > 0) {
+                return true;
+            }
+        }
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setRecursive(true);
+            if (headTree != null) {
+                walk.addTree(headTree);
+            } else {
+                walk.addTree(new EmptyTreeIterator());
+            }
+            walk.addTree(new DirCacheIterator(dirCache));
+            walk.setFilter(AndTreeFilter.create(new SkipWorkTreeFilter(INDEX), TreeFilter.ANY_DIFF));
+            return walk.next();
+        }
+    }
+
+    private static TreeFilter reported(Set<String> changedPaths) {
+        List<String> paths = new ArrayList<>(changedPaths.size());
+        for (String path : changedPaths) {
+            paths.add(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+        }
+        return PathFilterGroup.createFromStrings(paths);
+    }
+
+    /**
+     * Lists the names of the top level entries being a directory in HEAD, the index or the working tree.
+     */
+    private Set<String> topLevelDirectories() throws IOException {
+        Set<String> directories = new LinkedHashSet<>();
+        try (TreeWalk walk = newWalk()) {
+            while (walk.next()) {
+                for (int i = 0; i < walk.getTreeCount(); i++) {
+                    if (walk.getFileMode(i) == FileMode.TREE && !isOutsideSparseCheckout(walk)
+                            && !isIgnoredDirectory(walk)) {
+                        directories.add(walk.getPathString());
+                        break;
+                    }
+                }
+            }
+        }
+        return directories;
+    }
+
+    private TreeWalk newWalk() throws IOException {
+        TreeWalk walk = new TreeWalk(repository);
+        walk.setOperationType(OperationType.CHECKIN_OP);
+        if (headTree != null) {
+            walk.addTree(headTree);
+        } else {
+            walk.addTree(new EmptyTreeIterator());
+        }
+        walk.addTree(new DirCacheIterator(dirCache));
+        FileTreeIterator workingTree = new FileTreeIterator(repository);
+        walk.addTree(workingTree);
+        workingTree.setDirCacheIterator(walk, INDEX);
+        return walk;
+    }
+
+    /**
+     * Walks the entries selected by the given filter until one of them is changed.
+     */
+    private boolean scan(TreeFilter scope, AtomicBoolean dirty, CancellationToken token) throws IOException {
+        try (TreeWalk walk = newWalk()) {
+            walk.setRecursive(true);
+            TreeFilter entries = untrackedCache != null ? new TrackedEntries() : TreeFilter.ALL;
+            TreeFilter checkedOut = sparseDirectories.isEmpty() ? TreeFilter.ALL : new CheckedOutEntries();
+            walk.setFilter(AndTreeFilter.create(new TreeFilter[] {
+                scope, entries, checkedOut, new NotIgnoredDirectories(), new SkipWorkTreeFilter(INDEX),
+                new IndexDiffFilter(INDEX, WORKDIR)
+            }));
+            while (walk.next()) {
+                if (dirty.get() || token.isCancelled()) {
+                    return false;
+                }
+                if (isChanged(walk)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Tells if the current entry is a directory outside of the sparse checkout, missing from the working tree and
+     * unchanged between HEAD and the index, whose entries then all compare as clean.
+     */
+    private boolean isOutsideSparseCheckout(TreeWalk walk) {
+        return walk.isSubtree() && walk.getRawMode(WORKDIR) == 0 && walk.idEqual(TREE, INDEX)
+                && sparseDirectories.contains(walk.getPathString());
+    }
+
+    /**
+     * Tells if the current entry is an ignored directory of the working tree holding no file of HEAD or of the index,
+     * whose entries are then all ignored.
+     */
+    private static boolean isIgnoredDirectory(TreeWalk walk) throws IOException {
+        if (!walk.isSubtree() || walk.getRawMode(TREE) != 0 || walk.getRawMode(INDEX) != 0) {
+            return false;
+        }
+        WorkingTreeIterator workingTree = walk.getTree(WORKDIR, WorkingTreeIterator.class);
+        return workingTree != null && workingTree.isEntryIgnored();
+    }
+
+    /**
+     * Compares the current entry of HEAD, the index and the working tree the way {@link org.eclipse.jgit.lib.IndexDiff}
+     * does.
+     */
+    private static boolean isChanged(TreeWalk walk) throws IOException {
+        AbstractTreeIterator tree = walk.getTree(TREE, AbstractTreeIterator.class);
+        DirCacheIterator index = walk.getTree(INDEX, DirCacheIterator.class);
+        WorkingTreeIterator workingTree = walk.getTree(WORKDIR, WorkingTreeIterator.class);
+
+        if (index == null) {
+            // removed if committed, untracked unless ignored otherwise
+            return tree != null || (workingTree != null && !workingTree.isEntryIgnored());
+        }
+        DirCacheEntry entry = index.getDirCacheEntry();
+        if (entry != null && entry.getStage() > 0) {
+            return true;
+        }
+        if (tree == null || !tree.idEqual(index) || tree.getEntryRawMode() != index.getEntryRawMode()) {
+            return true;
+        }
+        return workingTree == null || workingTree.isModified(entry, true, walk.getObjectReader());
+    }
+
+    /**
+     * Scan of the entries selected by a filter, sharing the dirty flag with the other tasks.
+     */
+    private final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeFilter scope;
+        private final AtomicBoolean dirty;
+        private final CancellationToken token;
+
+        private ScanTask(TreeFilter scope, AtomicBoolean dirty, CancellationToken token) {
+            this.scope = scope;
+            this.dirty = dirty;
+            this.token = token;
+        }
+
+        @Override
+        protected void compute() {
+            if (dirty.get() || token.isCancelled()) {
+                return;
+            }
+            try {
+                if (scan(scope, dirty, token)) {
+                    dirty.set(true);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Selects the entries of HEAD or of the index, untracked ones being already known.
+     */
+    private static final class TrackedEntries extends TreeFilter {
+        @Override
+        public boolean include(TreeWalk walker) {
+            return walker.getRawMode(TREE) != 0 || walker.getRawMode(INDEX) != 0;
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+
+    /**
+     * Skips the ignored directories holding no file of HEAD or of the index, without reading them.
+     */
+    private static final class NotIgnoredDirectories extends TreeFilter {
+        @Override
+        public boolean include(TreeWalk walker) throws IOException {
+            return !isIgnoredDirectory(walker);
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+
+    /**
+     * Skips the directories outside of the sparse checkout holding no change.
+     */
+    private final class CheckedOutEntries extends TreeFilter {
+        @Override
+        public boolean include(TreeWalk walker) {
+            return !isOutsideSparseCheckout(walker);
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+
+    /**
+     * Computes the ids of the trees inserted, without writing them.
+     */
+    private static final class TreeIds extends ObjectInserter.Formatter {
+        @Override
+        public ObjectId insert(int type, byte[] data, int off, int len) {
+            return idFor(type, data, off, len);
+        }
+    }
+
+    /**
+     * Selects the top level entries not being a directory.
+     */
+    private static final class RootEntries extends TreeFilter {
+        private final Set<String> directories;
+
+        private RootEntries(Set<String> directories) {
+            this.directories = directories;
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) {
+            return !directories.contains(walker.getPathString());
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+}
@@ -15,9 +15,13 @@
  */
 package fr.brouillard.oss.jgitver.metadata;
 
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,20 +30,78 @@ import org.eclipse.jgit.lib.Ref;
 import fr.brouillard.oss.jgitver.impl.GitUtils;
 
 public class MetadataHolder implements MetadataProvider, MetadataRegistrar {
-    private final Map<Metadatas, String> metadataValues = new HashMap<>();
+    private final Map<Metadatas, String> metadataValues = new EnumMap<>(Metadatas.class);
+    private final Map<Metadatas, TagNames> metadataTags = new EnumMap<>(Metadatas.class);
     
     @Override
     public void registerMetadata(Metadatas meta, String value) {
+        metadataTags.remove(meta);
         metadataValues.put(meta, value);
     }
     
     public void registerMetadataTags(Metadatas meta, Stream<Ref> tags) {
-        String concatenatedTags = tags.map(GitUtils::tagNameFromRef).collect(Collectors.joining(","));
-        metadataValues.put(meta, concatenatedTags);
+        List<Ref> tagsList = tags.collect(Collectors.toCollection(ArrayList::new));
+        registerMetadataTags(meta, tagsList);
+    }
+
+    /**
+     * Registers a list of tags as value of the given metadata.
+     * The list is not copied and tag names are only computed when the metadata is read ; the given list must not be
+     * modified afterwards.
+     * @param meta the metadata to register
+     * @param tags the tags representing the metadata value
+     */
+    public void registerMetadataTags(Metadatas meta, List<Ref> tags) {
+        metadataValues.remove(meta);
+        metadataTags.put(meta, new TagNames(tags));
     }
 
     @Override
     public Optional<String> meta(Metadatas meta) {
+        TagNames tags = metadataTags.get(meta);
+        if (tags != null) {
+            return Optional.of(tags.joined());
+        }
         return Optional.ofNullable(metadataValues.get(meta));
     }
+
+    @Override
+    public Optional<List<String>> metaAsList(Metadatas meta) {
+        TagNames tags = metadataTags.get(meta);
+        if (tags != null) {
+            return Optional.of(tags);
+        }
+        return MetadataProvider.super.metaAsList(meta);
+    }
+
+    /**
+     * Read only view of the names of a list of tags, with a lazily built comma separated representation.
+     */
+    private static final class TagNames extends AbstractList<String> implements RandomAccess {
+        private final List<Ref> tags;
+        private String joined;
+
+        private TagNames(List<Ref> tags) {
+            this.tags = tags;
+        }
+
+        @Override
+        public String get(int index) {
+            return GitUtils.tagNameFromRef(tags.get(index));
+        }
+
+        @Override
+        public int size() {
+            return tags.size();
+        }
+
+        private String joined() {
+            String result = joined;
+            if (result == null) {
+                result = String.join(",", this);
+                joined = result;
+            }
+            return result;
+        }
+    }
 }
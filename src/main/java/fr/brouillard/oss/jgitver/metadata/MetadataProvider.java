@@ -15,9 +15,23 @@
  */
 package fr.brouillard.oss.jgitver.metadata;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 @FunctionalInterface
 public interface MetadataProvider {
     public Optional<String> meta(Metadatas meta);
+
+    /**
+     * Retrieves a metadata as a list of values, for metadata representing several values like tags lists.
+     * The default implementation splits the string value of the metadata on commas ; implementations holding the
+     * values in a structured form should override it to avoid building then splitting the string representation.
+     * @param meta the metadata to retrieve
+     * @return the list of values of the metadata, empty if the metadata is not known
+     */
+    public default Optional<List<String>> metaAsList(Metadatas meta) {
+        return meta(meta).map(value -> value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(",")));
+    }
 }
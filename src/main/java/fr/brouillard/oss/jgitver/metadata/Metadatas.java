@@ -91,5 +91,32 @@ public enum Metadatas {
      * Corresponds to the whole list of light tags of the current repository that can serve for version calculation.
      */
     ALL_VERSION_LIGHTWEIGHT_TAGS, 
+    /**
+     * Corresponds to the list of tags that can serve for version calculation and are reachable from the current HEAD.
+     * Only computed when requested, see {@code GitVersionCalculator#setComputeReachableVersionTags(boolean)}.
+     */
+    HEAD_REACHABLE_VERSION_TAGS,
+    /**
+     * Corresponds to true if the repository is a shallow clone, false otherwise.
+     */
+    SHALLOW_REPOSITORY,
+    /**
+     * Corresponds to true if the history walk reached the boundary of a shallow clone before finding its base, false otherwise.
+     * When true, the computed distance and base tag only reflect the locally available history.
+     */
+    TRUNCATED_HISTORY,
+    /**
+     * Corresponds to the algorithm used to search the commits holding version tags, see {@code SearchAlgorithm}.
+     */
+    SEARCH_ALGORITHM,
+    /**
+     * Corresponds to the number of commits the history search went through before reaching its result.
+     */
+    SEARCHED_COMMITS,
+    /**
+     * Corresponds to true if the history search was stopped by the search budget before reaching its result, false otherwise.
+     * When true, the version is a degraded one: it is built from the last searched commit and its distance is a lower bound.
+     */
+    SEARCH_BUDGET_EXCEEDED,
     ;
 }
@@ -0,0 +1,427 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * Builds repositories by writing their commits, trees and tags directly with an {@link ObjectInserter}, without any
+ * working tree nor porcelain command, so that large histories are built quickly: about 15 seconds per million
+ * commits in memory.
+ *
+ * <p>As {@link Scenarios.ScenarioBuilder} does, commits are added on the current branch and can be given an
+ * application identifier; larger topologies are described with {@link #linear(int)}, {@link #mergeFan(int, int)} and
+ * {@link #longLivedBranch(String, int, int)}. Branches and tags are only written as references by {@link #build()},
+ * HEAD then pointing to the current branch.
+ */
+public class FixtureBuilder {
+    private static final long FIRST_COMMIT_TIME = 1_500_000_000_000L;
+    private static final String NAME = "jgitver";
+    private static final String EMAIL = "jgitver@example.com";
+
+    private final Repository repository;
+    private final ObjectInserter inserter;
+    private final Map<String, Tip> branches = new LinkedHashMap<>();
+    private final Map<String, ObjectId> tags = new LinkedHashMap<>();
+    private final Map<String, ObjectId> commits = new HashMap<>();
+    private final Map<String, Tip> namedTips = new HashMap<>();
+    private String currentBranch = Constants.MASTER;
+    private long commitCount = 0;
+    private final ByteArrayOutputStream commitBuffer = new ByteArrayOutputStream(512);
+    private final byte[] hexBuffer = new byte[Constants.OBJECT_ID_STRING_LENGTH];
+
+    private FixtureBuilder(Repository repository) {
+        this.repository = repository;
+        this.inserter = repository.newObjectInserter();
+        ObjectId emptyTree = insert(Constants.OBJ_TREE, new TreeFormatter().toByteArray());
+        branches.put(currentBranch, new Tip(null, emptyTree, new TreeMap<>()));
+    }
+
+    /**
+     * Creates a builder writing into a new repository held in memory.
+     * @return the builder of the repository
+     */
+    public static FixtureBuilder inMemory() {
+        return new FixtureBuilder(new InMemoryRepository(new DfsRepositoryDescription("fixture")));
+    }
+
+    /**
+     * Creates a builder writing into a new bare repository. Objects are written loose, one file each: prefer
+     * {@link #inMemory()} for large histories.
+     * @param gitDirectory the directory of the bare repository to create
+     * @return the builder of the repository
+     */
+    public static FixtureBuilder bare(File gitDirectory) {
+        try {
+            Repository repository = FileRepositoryBuilder.create(gitDirectory);
+            repository.create(true);
+            return new FixtureBuilder(repository);
+        } catch (IOException ex) {
+            throw new IllegalStateException("cannot create repository under: " + gitDirectory, ex);
+        }
+    }
+
+    /**
+     * Creates a commit on the current branch, having the same content as its parent.
+     * @param id the application identifier to store the git commitID in front of
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder commit(String id) {
+        Tip tip = current();
+        tip.commit = insertCommit(tip.tree, "content " + id, tip.commit);
+        name(id, tip);
+        return this;
+    }
+
+    /**
+     * Creates a commit on the current branch, by writing the given identifier into the given file.
+     * @param path the path of the file, relative to the root of the repository
+     * @param id the application identifier to store the git commitID in front of
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder commitChange(String path, String id) {
+        Tip tip = current();
+        tip.files.put(path, insert(Constants.OBJ_BLOB, id.getBytes(StandardCharsets.UTF_8)));
+        tip.tree = insertTree(tip.files);
+        tip.commit = insertCommit(tip.tree, "content " + id, tip.commit);
+        name(id, tip);
+        return this;
+    }
+
+    /**
+     * Creates anonymous commits in sequence on the current branch.
+     * @param count the number of commits to create
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder linear(int count) {
+        Tip tip = current();
+        for (int i = 0; i < count; i++) {
+            tip.commit = insertCommit(tip.tree, null, tip.commit);
+        }
+        return this;
+    }
+
+    /**
+     * Creates topic branches of anonymous commits forked from the current commit, each of them being then merged
+     * into the current branch one after the other.
+     * @param width the number of topic branches
+     * @param length the number of commits of each topic branch
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder mergeFan(int width, int length) {
+        Tip tip = current();
+        ObjectId fork = tip.commit;
+        for (int i = 0; i < width; i++) {
+            ObjectId topic = fork;
+            for (int j = 0; j < length; j++) {
+                topic = insertCommit(tip.tree, null, topic);
+            }
+            tip.commit = insertCommit(tip.tree, null, tip.commit, topic);
+        }
+        return this;
+    }
+
+    /**
+     * Makes the given branch live along the current one: on each round, commits are added on both of them, then the
+     * given branch is merged into the current one. The branch is created on the current commit if it does not exist.
+     * @param branchName the name of the long-lived branch
+     * @param rounds the number of merges into the current branch
+     * @param commitsPerRound the number of commits added on each branch before each merge
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder longLivedBranch(String branchName, int rounds, int commitsPerRound) {
+        Tip tip = current();
+        Tip other = branches.computeIfAbsent(branchName, name -> tip.copy());
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < commitsPerRound; j++) {
+                other.commit = insertCommit(other.tree, null, other.commit);
+                tip.commit = insertCommit(tip.tree, null, tip.commit);
+            }
+            tip.commit = insertCommit(tip.tree, null, tip.commit, other.commit);
+        }
+        return this;
+    }
+
+    /**
+     * Merges the given branch into the current one, the content of the current branch being kept.
+     * @param branchName the branch to merge
+     * @param id the application identifier to store the git commitID of the merge in front of
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder merge(String branchName, String id) {
+        Tip tip = current();
+        tip.commit = insertCommit(tip.tree, "merge " + id, tip.commit, tipOf(branchName).commit);
+        name(id, tip);
+        return this;
+    }
+
+    /**
+     * Creates a branch on the current commit, which becomes the current branch.
+     * @param branchName the branch to create
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder branch(String branchName) {
+        branches.put(branchName, current().copy());
+        return checkout(branchName);
+    }
+
+    /**
+     * Creates a branch without any commit nor file, which becomes the current branch: its first commit is a new root
+     * of the history.
+     * @param branchName the branch to create
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder orphan(String branchName) {
+        branches.put(branchName, new Tip(null, insert(Constants.OBJ_TREE, new TreeFormatter().toByteArray()), new TreeMap<>()));
+        return checkout(branchName);
+    }
+
+    /**
+     * Creates a branch on the commit stored in front of the given application identifier, which becomes the current
+     * branch.
+     * @param branchName the branch to create
+     * @param id the application identifier of the commit to create the branch on
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder branchOnAppId(String branchName, String id) {
+        Tip named = namedTips.get(id);
+        if (named == null) {
+            throw new IllegalArgumentException("unknown commit: " + id);
+        }
+        branches.put(branchName, named.copy());
+        return checkout(branchName);
+    }
+
+    /**
+     * Switches to the given existing branch.
+     * @param branchName the branch to add the next commits on
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder checkout(String branchName) {
+        tipOf(branchName);
+        currentBranch = branchName;
+        return this;
+    }
+
+    /**
+     * Switches to the master branch.
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder master() {
+        return checkout(Constants.MASTER);
+    }
+
+    /**
+     * Creates a normal/annotated tag on the current commit.
+     * @param tagName the name of the normal/annotated tag
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder tag(String tagName) {
+        TagBuilder tag = new TagBuilder();
+        tag.setObjectId(currentCommit(), Constants.OBJ_COMMIT);
+        tag.setTag(tagName);
+        tag.setTagger(ident());
+        tag.setMessage("release " + tagName);
+        try {
+            tags.put(tagName, inserter.insert(tag));
+        } catch (IOException ex) {
+            throw new IllegalStateException("cannot add tag: " + tagName, ex);
+        }
+        return this;
+    }
+
+    /**
+     * Creates a light tag on the current commit.
+     * @param tagName the name of the light tag
+     * @return the builder itself to continue building the fixture
+     */
+    public FixtureBuilder tagLight(String tagName) {
+        tags.put(tagName, currentCommit());
+        return this;
+    }
+
+    /**
+     * Writes the pending objects, then the branches and tags, HEAD pointing to the current branch.
+     * @return the built repository, to be closed by the caller
+     */
+    public Repository build() {
+        try {
+            inserter.flush();
+            for (Map.Entry<String, Tip> branch : branches.entrySet()) {
+                if (branch.getValue().commit != null) {
+                    updateRef(Constants.R_HEADS + branch.getKey(), branch.getValue().commit);
+                }
+            }
+            for (Map.Entry<String, ObjectId> tag : tags.entrySet()) {
+                updateRef(Constants.R_TAGS + tag.getKey(), tag.getValue());
+            }
+            repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + currentBranch);
+            return repository;
+        } catch (IOException ex) {
+            throw new IllegalStateException("failure building fixture", ex);
+        }
+    }
+
+    /**
+     * Retrieves the commits created with an application identifier.
+     * @return a non null map of the commits by application identifier
+     */
+    public Map<String, ObjectId> getCommits() {
+        return commits;
+    }
+
+    /**
+     * Retrieves the repository the fixture is written into, its references being only complete once {@link #build()}
+     * has been called.
+     * @return the repository of the fixture
+     */
+    public Repository getRepository() {
+        return repository;
+    }
+
+    private Tip current() {
+        return tipOf(currentBranch);
+    }
+
+    private Tip tipOf(String branchName) {
+        Tip tip = branches.get(branchName);
+        if (tip == null) {
+            throw new IllegalArgumentException("unknown branch: " + branchName);
+        }
+        return tip;
+    }
+
+    private ObjectId currentCommit() {
+        ObjectId commit = current().commit;
+        if (commit == null) {
+            throw new IllegalStateException("no commit on branch: " + currentBranch);
+        }
+        return commit;
+    }
+
+    private void name(String id, Tip tip) {
+        commits.put(id, tip.commit);
+        namedTips.put(id, tip.copy());
+    }
+
+    private PersonIdent ident() {
+        // one second between commits, so that they are walked in the order they were created
+        return new PersonIdent(NAME, EMAIL, FIRST_COMMIT_TIME + 1000 * commitCount, 0);
+    }
+
+    /**
+     * Writes a commit formatted by hand: going through a CommitBuilder, the formatting of ids and identities takes
+     * most of the time needed to build large histories.
+     */
+    private ObjectId insertCommit(ObjectId tree, String message, ObjectId... parents) {
+        commitCount++;
+        commitBuffer.reset();
+        writeId("tree ", tree);
+        for (ObjectId parent : parents) {
+            if (parent != null) {
+                writeId("parent ", parent);
+            }
+        }
+        String ident = NAME + " <" + EMAIL + "> " + (FIRST_COMMIT_TIME / 1000 + commitCount) + " +0000\n";
+        // the counter makes the commits unique, even with the same parents and content
+        String text = "author " + ident + "committer " + ident + "\n"
+                + (message == null ? "commit " + commitCount : message) + "\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        commitBuffer.write(bytes, 0, bytes.length);
+        return insert(Constants.OBJ_COMMIT, commitBuffer.toByteArray());
+    }
+
+    private void writeId(String header, ObjectId id) {
+        byte[] bytes = header.getBytes(StandardCharsets.US_ASCII);
+        commitBuffer.write(bytes, 0, bytes.length);
+        id.copyTo(hexBuffer, 0);
+        commitBuffer.write(hexBuffer, 0, hexBuffer.length);
+        commitBuffer.write('\n');
+    }
+
+    private ObjectId insertTree(Map<String, ObjectId> files) {
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+            DirCacheEntry entry = new DirCacheEntry(file.getKey());
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(file.getValue());
+            builder.add(entry);
+        }
+        builder.finish();
+        try {
+            return index.writeTree(inserter);
+        } catch (IOException ex) {
+            throw new IllegalStateException("failure creating a tree", ex);
+        }
+    }
+
+    private ObjectId insert(int type, byte[] data) {
+        try {
+            return inserter.insert(type, data);
+        } catch (IOException ex) {
+            throw new IllegalStateException("failure creating an object", ex);
+        }
+    }
+
+    private void updateRef(String name, ObjectId id) throws IOException {
+        RefUpdate update = repository.updateRef(name);
+        update.setNewObjectId(id);
+        update.forceUpdate();
+    }
+
+    /**
+     * Last commit of a branch, with its content.
+     */
+    private static final class Tip {
+        private ObjectId commit;
+        private ObjectId tree;
+        private final Map<String, ObjectId> files;
+
+        private Tip(ObjectId commit, ObjectId tree, Map<String, ObjectId> files) {
+            this.commit = commit;
+            this.tree = tree;
+            this.files = files;
+        }
+
+        private Tip copy() {
+            return new Tip(commit, tree, new TreeMap<>(files));
+        }
+    }
+}
@@ -18,6 +18,7 @@ package fr.brouillard.oss.jgitver;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -298,6 +299,32 @@ $ git lg
                 .master()
                 .getScenario();
     }
+
+    /**
+     * Builds a linear repository holding two components, billing & shipping, versioned with prefixed tags.
+     * Each commit modifies the file given in parenthesis.
+     * <pre>
+$ git lg
+** 2b5c0de - (10 seconds ago) content E (shipping/Main.java) - Matthieu Brouillard (HEAD -> master)
+** 6f4e1a2 - (10 seconds ago) content D (docs/README) - Matthieu Brouillard
+** 97ad3c4 - (10 seconds ago) content C (billing/Main.java) - Matthieu Brouillard
+** 0c9b8f1 - (10 seconds ago) content B (shipping/Main.java) - Matthieu Brouillard (tag: shipping/v2.0.0)
+** e41d7a0 - (10 seconds ago) content A (billing/Main.java) - Matthieu Brouillard (tag: billing/v1.0.0)
+     * </pre>
+     * @return the scenario object corresponding to the above git repository
+     */
+    public static Scenario s13_linear_with_components() {
+        return new ScenarioBuilder()
+                .commitChange("billing/Main.java", "A")
+                .tag("billing/v1.0.0")
+                .commitChange("shipping/Main.java", "B")
+                .tag("shipping/v2.0.0")
+                .commitChange("billing/Main.java", "C")
+                .commitChange("docs/README", "D")
+                .commitChange("shipping/Main.java", "E")
+                .master()
+                .getScenario();
+    }
     
     public static class Scenario {
         private File repositoryLocation;
@@ -435,6 +462,27 @@ $ git lg
             return this;
         }
 
+        /**
+         * Creates a commit in the repo, by writing the given identifier into the given file of the working tree.
+         * Unlike {@link #commit(String, String)} the content of the file really changes with each commit.
+         * @param path the path of the file relative to the working tree, parent directories are created if needed
+         * @param id the application identifier to use to store the git commitID in front of
+         * @return the builder itself to continue building the scenario
+         */
+        public ScenarioBuilder commitChange(String path, String id) {
+            File content = new File(repository.getWorkTree(), path);
+            try {
+                Files.createParentDirs(content);
+                Files.write(id, content, StandardCharsets.UTF_8);
+                git.add().addFilepattern(path).call();
+                RevCommit rc = git.commit().setMessage("content " + id).call();
+                scenario.getCommits().put(id, rc.getId());
+            } catch (Exception ex) {
+                throw new IllegalStateException(String.format("error creating a commit modifying file %s", content), ex);
+            }
+            return this;
+        }
+
         public Scenario getScenario() {
             return scenario;
         }
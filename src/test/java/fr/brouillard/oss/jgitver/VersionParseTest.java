@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * Checks that the regex free parsing of {@link Version#parse(String)} behaves exactly like the pattern based one.
+ * Random inputs are generated from a seed that can be forced using the <code>jgitver.seed</code> system property.
+ */
+public class VersionParseTest {
+    private static final String ALPHABET = "0123456789..--_aZz";
+    private static final String[] EXOTIC = {"", " ", "\n", "+", "é", "v", "2147483647", "2147483648", "0000000000001"};
+    private static final int RUNS = 50_000;
+
+    @Test
+    public void common_forms_are_handled_without_pattern() {
+        Arrays.asList("1", "1.2", "1.2.3", "10.20.30-rc1", "1.0.0-SNAPSHOT", "1.0-a_b-c", "1-a", "999999999.0.0")
+            .forEach(v -> {
+                assertThat(v, Version.parseCommonForm(v), notNullValue());
+                assertThat(Version.parseCommonForm(v), is(Version.parseWithPattern(v)));
+            });
+    }
+
+    @Test
+    public void unusual_forms_are_left_to_pattern() {
+        Arrays.asList("", "1.", ".1", "1.2.3.4", "1.0.0-", "1.0.0-a--b", "1.0.0-a-", "1.0.0-_a", "1234567890", "v1.0")
+            .forEach(v -> assertThat(v, Version.parseCommonForm(v), nullValue()));
+    }
+
+    @Test
+    public void parsing_is_equivalent_to_pattern_parsing() {
+        long seed = Long.getLong("jgitver.seed", System.nanoTime());
+        Random random = new Random(seed);
+
+        for (int i = 0; i < RUNS; i++) {
+            String input = randomInput(random);
+            String expected = outcome(() -> Version.parseWithPattern(input));
+            String actual = outcome(() -> Version.parse(input));
+
+            assertThat(String.format("input '%s' (reproduce with -Djgitver.seed=%d)", input, seed), actual, is(expected));
+        }
+    }
+
+    private static String outcome(Supplier<Version> parsing) {
+        try {
+            Version v = parsing.get();
+            return v.toString() + "|" + v.getQualifiers();
+        } catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean()) {
+            // mostly well formed versions with some noise
+            sb.append(random.nextInt(100));
+            int numbers = random.nextInt(3);
+            for (int n = 0; n < numbers; n++) {
+                sb.append('.').append(random.nextInt(1000));
+            }
+            int qualifiers = random.nextInt(4);
+            for (int q = 0; q < qualifiers; q++) {
+                sb.append('-');
+                int qualifierLength = random.nextInt(5);
+                for (int c = 0; c < qualifierLength; c++) {
+                    sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                sb.insert(random.nextInt(sb.length() + 1), EXOTIC[random.nextInt(EXOTIC.length)]);
+            }
+        } else {
+            int length = random.nextInt(12);
+            for (int c = 0; c < length; c++) {
+                if (random.nextInt(20) == 0) {
+                    sb.append(EXOTIC[random.nextInt(EXOTIC.length)]);
+                } else {
+                    sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import static fr.brouillard.oss.jgitver.Lambdas.mute;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.VersionTagCatalogue.VersionTag;
+
+public class VersionTagCatalogueTest {
+    private static Scenario scenario;
+    private GitVersionCalculator versionCalculator;
+    private VersionTagCatalogue catalogue;
+
+    /**
+     * Initialize the whole junit class tests ; creates the git scenario.
+     */
+    @BeforeClass
+    public static void initClass() {
+        scenario = Scenarios.s12_linear_with_RC_tags();
+        if (Misc.isDebugMode()) {
+            System.out.println("git repository created under: " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Cleanup the whole junit scenario ; deletes the created git repository.
+     */
+    @AfterClass
+    public static void cleanupClass() {
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Builds the catalogue of the scenario repository.
+     */
+    @Before
+    public void init() {
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+        catalogue = versionCalculator.getVersionTagCatalogue();
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        mute(() -> versionCalculator.close());
+    }
+
+    @Test
+    public void all_version_tags_are_sorted_by_version() {
+        // v1.0.0 & 1.0.0 are the same version, kept in tag index order
+        assertThat(names(catalogue.all()), is(Arrays.asList("1.0.0-rc01", "1.0.0-rc02", "v1.0.0", "1.0.0", "v2.0.0")));
+    }
+
+    @Test
+    public void tags_know_their_commit() {
+        VersionTag rc01 = catalogue.tag("1.0.0-rc01").get();
+
+        assertThat(rc01.getCommitId(), is(scenario.getCommits().get("C")));
+        assertThat(rc01.isAnnotated(), is(true));
+        assertThat(catalogue.tag("v1.0.0").get().getCommitId(), is(scenario.getCommits().get("A")));
+        assertThat(catalogue.tag("v1.0.0").get().isAnnotated(), is(false));
+    }
+
+    @Test
+    public void highest_versions_can_be_queried() {
+        assertThat(catalogue.highest().get().getName(), is("v2.0.0"));
+        assertThat(catalogue.highestRelease().get().getName(), is("v2.0.0"));
+    }
+
+    @Test
+    public void floor_and_ceiling_can_be_queried() {
+        assertThat(catalogue.floor(Version.parse("1.0.0-rc05")).get().getName(), is("1.0.0-rc02"));
+        assertThat(catalogue.ceiling(Version.parse("1.0.0-rc05")).get().getName(), is("v1.0.0"));
+        assertThat(catalogue.ceiling(Version.parse("3.0.0")).isPresent(), is(false));
+        assertThat(catalogue.lower(Version.parse("1.0.0-rc02")).get().getName(), is("1.0.0-rc01"));
+        assertThat(catalogue.lower(Version.parse("1.0.0-rc01")).isPresent(), is(false));
+    }
+
+    @Test
+    public void next_version_of_a_tag_can_be_queried() {
+        assertThat(catalogue.next("1.0.0-rc02").get().getName(), is("v1.0.0"));
+        assertThat(catalogue.next("1.0.0").get().getName(), is("v2.0.0"));
+        assertThat(catalogue.next("v2.0.0").isPresent(), is(false));
+        assertThat(catalogue.next("unknown").isPresent(), is(false));
+    }
+
+    @Test
+    public void ranges_can_be_queried() {
+        Version from = Version.parse("1.0.0-rc01");
+        Version to = Version.parse("1.0.0");
+
+        assertThat(names(catalogue.between(from, true, to, false)), is(Arrays.asList("1.0.0-rc01", "1.0.0-rc02")));
+        assertThat(names(catalogue.between(from, false, to, true)), is(Arrays.asList("1.0.0-rc02", "v1.0.0", "1.0.0")));
+        assertThat(catalogue.between(to, true, from, true).isEmpty(), is(true));
+    }
+
+    private static List<String> names(List<VersionTag> tags) {
+        return tags.stream().map(VersionTag::getName).collect(Collectors.toList());
+    }
+}
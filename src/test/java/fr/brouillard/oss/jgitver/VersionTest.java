@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class VersionTest {
+    @Test
+    public void string_representation_contains_numbers_and_qualifiers() {
+        assertThat(new Version(1, 2, 3).toString(), is("1.2.3"));
+        assertThat(new Version(1, 2, 3, "rc", "1").toString(), is("1.2.3-rc-1"));
+    }
+
+    @Test
+    public void qualifiers_given_at_construction_are_copied() {
+        String[] qualifiers = {"alpha"};
+        Version v = new Version(1, 0, 0, qualifiers);
+        qualifiers[0] = "beta";
+
+        assertThat(v.toString(), is("1.0.0-alpha"));
+    }
+
+    @Test
+    public void equal_versions_have_same_hashcode() {
+        Version v1 = Version.parse("1.0.0-SNAPSHOT");
+        Version v2 = new Version(1, 0, 0).addQualifier("SNAPSHOT");
+
+        assertThat(v1, is(v2));
+        assertThat(v1.hashCode(), is(v2.hashCode()));
+        assertThat(v1.compareTo(v2), is(0));
+        assertThat(v1, not(is(v1.noQualifier())));
+    }
+
+    @Test
+    public void versions_are_sorted_using_semver_precedence() {
+        List<String> expected = Arrays.asList(
+                "1.0.0-1",
+                "1.0.0-2",
+                "1.0.0-10",
+                "1.0.0-alpha",
+                "1.0.0-alpha-1",
+                "1.0.0-alpha-beta",
+                "1.0.0-beta",
+                "1.0.0-beta-2",
+                "1.0.0-beta-11",
+                "1.0.0-rc-1",
+                "1.0.0",
+                "1.0.1-SNAPSHOT",
+                "1.2.0",
+                "1.10.0",
+                "2.0.0");
+
+        List<Version> versions = expected.stream().map(Version::parse).collect(Collectors.toCollection(ArrayList::new));
+        Collections.shuffle(versions);
+        Collections.sort(versions);
+
+        assertThat(versions.stream().map(Version::toString).collect(Collectors.toList()), is(expected));
+    }
+
+    @Test
+    public void numeric_qualifiers_with_leading_zeros_are_ordered_consistently_with_equals() {
+        Version v1 = Version.parse("1.0.0-01");
+        Version v2 = Version.parse("1.0.0-1");
+
+        assertThat(v1.equals(v2), is(false));
+        assertThat(Integer.signum(v1.compareTo(v2)), is(-Integer.signum(v2.compareTo(v1))));
+        assertThat(v1.compareTo(v2) == 0, is(false));
+        assertThat(v2.compareTo(Version.parse("1.0.0-2")) < 0, is(true));
+    }
+
+    @Test
+    public void removing_an_unknown_qualifier_returns_same_version() {
+        Version v = Version.parse("1.0.0-rc");
+
+        assertThat(v.removeQualifier("SNAPSHOT"), sameInstance(v));
+        assertThat(v.removeQualifier("rc").toString(), is("1.0.0"));
+    }
+
+    @Test
+    public void builder_composes_several_modifications() {
+        Version base = Version.parse("1.0.0-SNAPSHOT-rc");
+
+        Version built = base.toBuilder()
+                .increasePatch()
+                .addQualifier("12")
+                .addQualifier("feature_x")
+                .removeQualifier("SNAPSHOT")
+                .addQualifier("SNAPSHOT")
+                .build();
+
+        assertThat(built.toString(), is("1.0.1-rc-12-feature_x-SNAPSHOT"));
+        assertThat(base.toString(), is("1.0.0-SNAPSHOT-rc"));
+        assertThat(built.getQualifiers(), is(Arrays.asList("rc", "12", "feature_x", "SNAPSHOT")));
+    }
+
+    @Test
+    public void builder_without_modification_returns_the_same_version() {
+        Version base = Version.parse("2.1.0");
+
+        assertThat(base.toBuilder().build(), sameInstance(base));
+        assertThat(base.toBuilder().noQualifier().removeQualifier("x").build(), sameInstance(base));
+    }
+
+    @Test
+    public void builder_result_is_not_affected_by_later_modifications() {
+        Version.Builder builder = Version.DEFAULT_VERSION.toBuilder().addQualifier("a");
+        Version first = builder.build();
+        builder.addQualifier("b").removeQualifier("a");
+
+        assertThat(first.toString(), is("0.0.0-a"));
+        assertThat(builder.build().toString(), is("0.0.0-b"));
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.Component;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.Version;
+
+public class ChangedPathFiltersTest {
+    private static final List<Component> COMPONENTS = Arrays.asList(new Component("billing/", "billing"),
+            new Component("shipping/", "shipping"), new Component("docs/", "docs"), new Component("", "billing", "docs"));
+
+    private Scenario scenario;
+    private Repository repository;
+
+    /**
+     * Creates a fresh git scenario for each test, as tests write commit-graph & sidecar files.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s13_linear_with_components();
+        repository = new FileRepositoryBuilder().setGitDir(scenario.getRepositoryLocation()).build();
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        repository.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation().getParentFile());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void murmur3_gives_reference_values() {
+        assertThat(BloomFilter.murmur3(0, new byte[0], false), is(0));
+        assertThat(BloomFilter.murmur3(0, bytes("Hello world!"), false), is(0x627b0c2c));
+        assertThat(BloomFilter.murmur3(0, bytes("The quick brown fox jumps over the lazy dog"), false), is(0x2e4ff723));
+    }
+
+    @Test
+    public void murmur3_versions_only_differ_on_non_ascii_bytes() {
+        byte[] ascii = bytes("billing/src/Main.java");
+        assertThat(BloomFilter.murmur3(0x293ae76f, ascii, true), is(BloomFilter.murmur3(0x293ae76f, ascii, false)));
+
+        byte[] nonAscii = "facturation/été".getBytes(StandardCharsets.UTF_8);
+        assertThat(BloomFilter.murmur3(0x293ae76f, nonAscii, true), not(BloomFilter.murmur3(0x293ae76f, nonAscii, false)));
+    }
+
+    @Test
+    public void generated_filter_contains_changed_paths_and_their_directories() throws IOException {
+        ChangedPathFilters filters = ChangedPathFilters.load(repository, true);
+        try (RevWalk walk = new RevWalk(repository)) {
+            BloomFilter filter = filters.filterOf(walk, walk.parseCommit(scenario.getCommits().get("C")));
+
+            assertThat(filter.mightContain(bytes("billing/Main.java")), is(true));
+            assertThat(filter.mightContain(bytes("billing")), is(true));
+        }
+    }
+
+    @Test
+    public void no_filter_without_commit_graph_nor_generation() throws IOException {
+        ChangedPathFilters filters = ChangedPathFilters.load(repository, false);
+        try (RevWalk walk = new RevWalk(repository)) {
+            assertThat(filters.filterOf(walk, walk.parseCommit(scenario.getCommits().get("C"))), nullValue());
+        }
+    }
+
+    @Test
+    public void generated_filters_are_stored_for_next_calculations() throws IOException {
+        ChangedPathFilters generating = ChangedPathFilters.load(repository, true);
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(scenario.getCommits().get("D"));
+            byte[] generated = generating.filterOf(walk, commit).getData();
+            generating.saveGeneratedFilters();
+
+            BloomFilter stored = ChangedPathFilters.load(repository, false).filterOf(walk, commit);
+            assertThat(stored, notNullValue());
+            assertThat(stored.getData(), is(generated));
+        }
+    }
+
+    @Test
+    public void generated_filters_are_identical_to_git_ones() throws Exception {
+        ChangedPathFilters generating = ChangedPathFilters.load(repository, true);
+        writeGitCommitGraph();
+        ChangedPathFilters fromGit = ChangedPathFilters.load(repository, false);
+
+        try (RevWalk walk = new RevWalk(repository)) {
+            for (String id : Arrays.asList("B", "C", "D", "E")) {
+                RevCommit commit = walk.parseCommit(scenario.getCommits().get(id));
+                BloomFilter gitFilter = fromGit.filterOf(walk, commit);
+                assertThat(id, gitFilter, notNullValue());
+                assertThat(id, gitFilter.getData(), is(generating.filterOf(walk, commit).getData()));
+            }
+        }
+    }
+
+    @Test
+    public void filters_do_not_change_component_versions() throws Exception {
+        GitVersionCalculator calculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+        Map<Component, Version> withoutFilters = calculator.getComponentVersions(COMPONENTS);
+
+        calculator.setWriteChangedPathFilters(true);
+        assertThat(calculator.getComponentVersions(COMPONENTS), is(withoutFilters));
+        assertThat(new File(scenario.getRepositoryLocation(), "jgitver/changed-paths").isFile(), is(true));
+        calculator.setWriteChangedPathFilters(false);
+        assertThat(calculator.getComponentVersions(COMPONENTS), is(withoutFilters));
+
+        writeGitCommitGraph();
+        assertThat(calculator.getComponentVersions(COMPONENTS), is(withoutFilters));
+        for (Component component : COMPONENTS) {
+            calculator.setComponent(component);
+            assertThat(component.toString(), calculator.getVersionObject(), is(withoutFilters.get(component)));
+        }
+    }
+
+    private void writeGitCommitGraph() throws InterruptedException {
+        int exitCode;
+        try {
+            Process git = new ProcessBuilder("git", "commit-graph", "write", "--reachable", "--changed-paths")
+                    .directory(repository.getWorkTree())
+                    .redirectErrorStream(true)
+                    .start();
+            exitCode = git.waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        // a git executable supporting changed-path filters is needed
+        assumeTrue(exitCode == 0);
+    }
+
+    private static byte[] bytes(String value) {
+        return Constants.encode(value);
+    }
+}
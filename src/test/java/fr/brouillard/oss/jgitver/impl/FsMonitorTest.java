@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+
+public class FsMonitorTest {
+    /**
+     * Stand-in for a file system monitor: it records its arguments and answers the content of the answer file, or
+     * that everything changed when there is none.
+     */
+    private static final String HOOK = "#!/bin/sh\n"
+            + "echo \"$@\" >> .git/fsmonitor-calls\n"
+            + "printf 'next-token\\0'\n"
+            + "if [ -f .git/fsmonitor-answer ]; then cat .git/fsmonitor-answer; else printf '/\\0'; fi\n";
+
+    private Scenario scenario;
+    private Git git;
+    private File workTree;
+
+    /**
+     * Creates a fresh git scenario for each test, with a file system monitor hook filling the index extensions.
+     * 
+     * @throws Exception if the scenario cannot be built
+     */
+    @Before
+    public void init() throws Exception {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        workTree = git.getRepository().getWorkTree();
+        write("src/main/App.java", "class App {}");
+        write("docs/index.md", "# index");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("sources").call();
+
+        write(".git/fsmonitor-hook", HOOK);
+        assumeTrue(new File(workTree, ".git/fsmonitor-hook").setExecutable(true));
+        runGit("config", "core.fsmonitor", ".git/fsmonitor-hook");
+        runGit("config", "core.untrackedCache", "true");
+        // files older than the index are trusted by git, which then records them as unchanged
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 10_000);
+        DirCache index = git.getRepository().readDirCache();
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            Files.setLastModifiedTime(new File(workTree, index.getEntry(i).getPathString()).toPath(), past);
+        }
+        runGit("update-index", "--untracked-cache", "--fsmonitor");
+        runGit("status", "--porcelain");
+        // once told that nothing changed, git records all the entries as unchanged since its token
+        answer();
+        runGit("status", "--porcelain");
+        git.getRepository().getConfig().load();
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void hook_is_called_with_the_recorded_token() throws Exception {
+        answer();
+        FsMonitor monitor = FsMonitor.of(git.getRepository());
+        assertThat(monitor, notNullValue());
+        assertThat(monitor.changedPaths(git.getRepository().readDirCache(), new CancellationToken()).isEmpty(), is(true));
+
+        List<String> calls = Files.readAllLines(new File(workTree, ".git/fsmonitor-calls").toPath());
+        assertThat(calls.get(calls.size() - 1).startsWith("2 "), is(true));
+    }
+
+    @Test
+    public void only_reported_paths_are_compared() throws Exception {
+        write("docs/index.md", "# changed index");
+
+        answer();
+        assertThat(isDirty(), is(false));
+
+        answer("docs/index.md");
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void reported_new_file_is_untracked() throws Exception {
+        write("docs/draft.md", "draft");
+        answer("docs/draft.md");
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void staged_changes_are_found_without_report() throws Exception {
+        write("docs/index.md", "# staged index");
+        // git add trusts the hook too
+        answer("docs/index.md");
+        runGit("add", "docs/index.md");
+
+        answer();
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void answer_of_a_global_change_reads_everything() throws Exception {
+        write("src/main/App.java", "class App { }");
+        answer("/");
+        assertThat(FsMonitor.of(git.getRepository()).changedPaths(git.getRepository().readDirCache(),
+                new CancellationToken()), nullValue());
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void missing_hook_reads_everything() throws Exception {
+        runGit("config", "core.fsmonitor", ".git/missing-fsmonitor-hook");
+        write("src/main/App.java", "class App { }");
+        assertThat(FsMonitor.of(git.getRepository()).changedPaths(git.getRepository().readDirCache(),
+                new CancellationToken()), nullValue());
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void cancelled_token_kills_a_hanging_hook() throws Exception {
+        FsMonitor monitor = FsMonitor.of(git.getRepository());
+        write(".git/fsmonitor-hook", "#!/bin/sh\nexec sleep 60\n");
+        CancellationToken token = new CancellationToken();
+        ScheduledExecutorService canceller = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        try {
+            canceller.schedule(token::cancel, 200, TimeUnit.MILLISECONDS);
+            monitor.changedPaths(git.getRepository().readDirCache(), token);
+            fail("a cancelled call of the hook must not return paths");
+        } catch (CancellationException expected) {
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 30, is(true));
+        } finally {
+            canceller.shutdownNow();
+        }
+    }
+
+    private boolean isDirty() throws Exception {
+        return GitUtils.isDirty(git, new CancellationToken(), ForkJoinPool.commonPool());
+    }
+
+    private void answer(String... paths) throws IOException {
+        StringBuilder answer = new StringBuilder();
+        for (String path : paths) {
+            answer.append(path).append('\0');
+        }
+        write(".git/fsmonitor-answer", answer.toString());
+    }
+
+    private void runGit(String... arguments) throws InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        int exitCode;
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(workTree)
+                    .redirectErrorStream(true)
+                    .start();
+            exitCode = process.waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        // a git executable supporting file system monitor hooks is needed
+        assumeTrue(exitCode == 0);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+
+public class SparseCheckoutTest {
+    private Scenario scenario;
+    private Git git;
+    private File workTree;
+
+    /**
+     * Creates a fresh git scenario for each test, only its src directory being checked out.
+     * 
+     * @throws Exception if the scenario cannot be built
+     */
+    @Before
+    public void init() throws Exception {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        workTree = git.getRepository().getWorkTree();
+        write("src/main/App.java", "class App {}");
+        write("modules/api/Api.java", "interface Api {}");
+        write("modules/core/Core.java", "class Core {}");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("sources").call();
+
+        // git only removes the files it knows as up to date from the stat data of the index
+        runGit("update-index", "--refresh");
+        runGit("sparse-checkout", "set", "--cone", "src");
+        assumeTrue(!new File(workTree, "modules").exists());
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void missing_files_outside_of_the_sparse_checkout_are_not_changes() throws Exception {
+        assertThat(isDirty(), is(false));
+        assertThat(GitUtils.isDirty(git), is(false));
+    }
+
+    @Test
+    public void changes_of_the_sparse_checkout_are_found() throws Exception {
+        write("src/main/App.java", "class App { }");
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void untracked_files_outside_of_the_sparse_checkout_are_found() throws Exception {
+        write("modules/api/Draft.java", "class Draft {}");
+        assertThat(isDirty(), is(true));
+    }
+
+    @Test
+    public void restored_files_outside_of_the_sparse_checkout_are_not_compared() throws Exception {
+        write("modules/api/Api.java", "interface Api { }");
+        assertThat(isDirty(), is(false));
+        assertThat(GitUtils.isDirty(git), is(false));
+    }
+
+    @Test
+    public void removal_staged_outside_of_the_sparse_checkout_is_found() throws Exception {
+        runGit("rm", "--cached", "--sparse", "modules/core/Core.java");
+        assertThat(isDirty(), is(true));
+    }
+
+    private boolean isDirty() throws Exception {
+        return GitUtils.isDirty(git, new CancellationToken(), ForkJoinPool.commonPool());
+    }
+
+    private void runGit(String... arguments) throws InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        int exitCode;
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(workTree)
+                    .redirectErrorStream(true)
+                    .start();
+            exitCode = process.waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        // a git executable supporting sparse checkouts is needed
+        assumeTrue(exitCode == 0);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.impl.UntrackedCache.Directory;
+import fr.brouillard.oss.jgitver.impl.UntrackedCache.Stat;
+
+public class UntrackedCacheTest {
+    private Scenario scenario;
+    private Git git;
+    private File workTree;
+
+    /**
+     * Creates a fresh git scenario for each test, with files committed in sub directories.
+     * 
+     * @throws Exception if the scenario cannot be built
+     */
+    @Before
+    public void init() throws Exception {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        workTree = git.getRepository().getWorkTree();
+        write("src/main/App.java", "class App {}");
+        write("docs/index.md", "# index");
+        write(".gitignore", "target/");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("sources").call();
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void index_without_untracked_cache_has_none() throws IOException {
+        assertThat(UntrackedCache.read(git.getRepository()), nullValue());
+    }
+
+    @Test
+    public void recorded_untracked_file_is_found() throws Exception {
+        write("docs/draft.md", "draft");
+        UntrackedCache cache = writeGitUntrackedCache();
+
+        assertThat(directory(cache, "docs").getUntracked(), is(Collections.singletonList("draft.md")));
+        assertThat(untrackedFilesExist(cache), is(true));
+    }
+
+    @Test
+    public void clean_working_tree_has_no_untracked_file() throws Exception {
+        write("target/App.class", "ignored");
+        UntrackedCache cache = writeGitUntrackedCache();
+
+        assertThat(cache.getRoot().isValid(), is(true));
+        assertThat(untrackedFilesExist(cache), is(false));
+        assertThat(GitUtils.isDirty(git, new CancellationToken(), ForkJoinPool.commonPool(), cache), is(false));
+    }
+
+    @Test
+    public void file_created_after_the_cache_is_found() throws Exception {
+        UntrackedCache cache = writeGitUntrackedCache();
+        write("src/main/Other.java", "class Other {}");
+
+        assertThat(untrackedFilesExist(cache), is(true));
+        assertThat(GitUtils.isDirty(git, new CancellationToken(), ForkJoinPool.commonPool(), cache), is(true));
+    }
+
+    @Test
+    public void changed_directories_are_refreshed_in_memory() throws Exception {
+        final UntrackedCache cache = writeGitUntrackedCache();
+        File docs = new File(workTree, "docs");
+        write("docs/tmp.md", "temporary");
+        Files.delete(new File(docs, "tmp.md").toPath());
+        Files.setLastModifiedTime(docs.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        assertThat(directory(cache, "docs").getStat().matches(Stat.of(docs.toPath())), is(false));
+
+        assertThat(untrackedFilesExist(cache), is(false));
+        assertThat(directory(cache, "docs").getStat().matches(Stat.of(docs.toPath())), is(true));
+    }
+
+    @Test
+    public void calculator_finds_untracked_files_with_the_cache() throws Exception {
+        writeGitUntrackedCache();
+        GitVersionCalculator calculator = GitVersionCalculator.location(scenario.getRepositoryLocation())
+                .setParallelDirtyCheck(true)
+                .setUseDirty(true);
+        assertThat(calculator.getVersion(), is("1.1.0-2"));
+
+        write("docs/draft.md", "draft");
+        assertThat(calculator.getVersion(), is("1.1.0-2-dirty"));
+    }
+
+    @Test
+    public void prefetched_cache_is_used_by_the_first_check() throws Exception {
+        writeGitUntrackedCache();
+        write("docs/draft.md", "draft");
+        try (GitVersionCalculator calculator = GitVersionCalculator.location(scenario.getRepositoryLocation(), true)
+                .setParallelDirtyCheck(true)
+                .setUseDirty(true)) {
+            assertThat(calculator.getVersion(), is("1.1.0-2-dirty"));
+
+            Files.delete(new File(workTree, "docs/draft.md").toPath());
+            assertThat(calculator.getVersion(), is("1.1.0-2"));
+        }
+    }
+
+    private boolean untrackedFilesExist(UntrackedCache cache) throws IOException {
+        UntrackedFiles untrackedFiles = new UntrackedFiles(git.getRepository(), git.getRepository().readDirCache(), cache,
+                null);
+        return untrackedFiles.exist(new CancellationToken());
+    }
+
+    private static Directory directory(UntrackedCache cache, String path) {
+        for (Directory child : cache.getRoot().getChildren()) {
+            if (child.getPath().equals(path)) {
+                return child;
+            }
+        }
+        throw new IllegalArgumentException("no recorded directory " + path);
+    }
+
+    /**
+     * Enables the untracked cache and lets git fill it, the directories being dated before the index so that their
+     * stat data is trusted.
+     */
+    private UntrackedCache writeGitUntrackedCache() throws Exception {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 10_000);
+        for (String directory : new String[] {"", "src", "src/main", "docs", "target"}) {
+            File file = new File(workTree, directory);
+            if (file.isDirectory()) {
+                Files.setLastModifiedTime(file.toPath(), past);
+            }
+        }
+        runGit("update-index", "--untracked-cache");
+        runGit("status", "--porcelain");
+
+        UntrackedCache cache = UntrackedCache.read(git.getRepository());
+        assertThat(cache, notNullValue());
+        return cache;
+    }
+
+    private void runGit(String... arguments) throws InterruptedException {
+        String[] command = new String[arguments.length + 3];
+        command[0] = "git";
+        command[1] = "-c";
+        command[2] = "core.untrackedCache=true";
+        System.arraycopy(arguments, 0, command, 3, arguments.length);
+        int exitCode;
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(workTree)
+                    .redirectErrorStream(true)
+                    .start();
+            exitCode = process.waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        // a git executable supporting the untracked cache is needed
+        assumeTrue(exitCode == 0);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.metadata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Test;
+
+public class MetadataHolderTest {
+    private static final ObjectId ID = ObjectId.fromString("0123456789012345678901234567890123456789");
+
+    @Test
+    public void tags_are_available_as_list_and_as_string() {
+        MetadataHolder holder = new MetadataHolder();
+        holder.registerMetadataTags(Metadatas.ALL_TAGS, Arrays.asList(tag("2.0.0"), tag("1.0.0")));
+
+        assertThat(holder.metaAsList(Metadatas.ALL_TAGS).get(), is(Arrays.asList("2.0.0", "1.0.0")));
+        assertThat(holder.meta(Metadatas.ALL_TAGS).get(), is("2.0.0,1.0.0"));
+    }
+
+    @Test
+    public void empty_tags_list_is_an_empty_string() {
+        MetadataHolder holder = new MetadataHolder();
+        holder.registerMetadataTags(Metadatas.HEAD_TAGS, Collections.emptyList());
+
+        assertThat(holder.metaAsList(Metadatas.HEAD_TAGS).get().isEmpty(), is(true));
+        assertThat(holder.meta(Metadatas.HEAD_TAGS).get(), is(""));
+    }
+
+    @Test
+    public void string_values_are_split_when_read_as_list() {
+        MetadataHolder holder = new MetadataHolder();
+        holder.registerMetadata(Metadatas.BRANCH_NAME, "master");
+
+        assertThat(holder.metaAsList(Metadatas.BRANCH_NAME).get(), is(Collections.singletonList("master")));
+        assertThat(holder.metaAsList(Metadatas.BASE_TAG), is(Optional.empty()));
+    }
+
+    @Test
+    public void default_list_view_splits_the_string_representation() {
+        MetadataProvider provider = meta -> Optional.of("a,b");
+
+        assertThat(provider.metaAsList(Metadatas.ALL_TAGS).get(), is(Arrays.asList("a", "b")));
+    }
+
+    private static Ref tag(String name) {
+        return new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/tags/" + name, ID);
+    }
+}
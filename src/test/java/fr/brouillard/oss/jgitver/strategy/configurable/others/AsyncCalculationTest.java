@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.mute;
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.Version;
+import fr.brouillard.oss.jgitver.impl.Commit;
+import fr.brouillard.oss.jgitver.impl.GitUtils;
+import fr.brouillard.oss.jgitver.impl.HistorySearch;
+import fr.brouillard.oss.jgitver.impl.HistoryWalk;
+import fr.brouillard.oss.jgitver.impl.PathScope;
+import fr.brouillard.oss.jgitver.impl.SearchBudget;
+import fr.brouillard.oss.jgitver.impl.TagIndex;
+import fr.brouillard.oss.jgitver.impl.VersionStrategy;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class AsyncCalculationTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+    private ExecutorService executor;
+
+    /**
+     * Creates the git scenario and an executor able to run the calculation phases concurrently.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        executor.shutdownNow();
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void async_versions_are_the_synchronous_ones() {
+        assertThat(versionCalculator.getVersionObjectAsync(executor).join().toString(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.DIRTY), is(Optional.of("false")));
+
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        assertThat(versionCalculator.getVersionObjectAsync(executor).join().toString(), is("1.0.0-2-issue_10"));
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2-issue_10"));
+    }
+
+    @Test
+    public void async_dirty_check_is_given_to_the_strategy() throws IOException {
+        File newFile = new File(scenario.getRepositoryLocation().getParentFile(), "new-file.txt");
+        Files.write(newFile.toPath(), Collections.singletonList("not yet committed"));
+        versionCalculator.setUseDirty(true);
+
+        assertThat(versionCalculator.getVersionObjectAsync(executor).join().toString(), is("1.1.0-1-dirty"));
+        assertThat(versionCalculator.meta(Metadatas.DIRTY), is(Optional.of("true")));
+    }
+
+    @Test
+    public void cancelled_async_calculation_completes_exceptionally() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            Version version = versionCalculator.getVersionObjectAsync(executor, token).join();
+            fail("a cancelled calculation must not return a version: " + version);
+        } catch (CompletionException expected) {
+            assertThat(expected.getCause(), instanceOf(CancellationException.class));
+        }
+
+        assertThat(versionCalculator.getVersionObjectAsync(executor).join().toString(), is("1.1.0-1"));
+    }
+
+    @Test
+    public void joining_caller_cancels_its_own_wait_while_the_calculation_is_blocked() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        Executor blocked = task -> executor.execute(() -> {
+            mute(gate::await);
+            task.run();
+        });
+        CompletableFuture<Version> first = versionCalculator.getVersionObjectAsync(blocked);
+
+        CancellationToken token = new CancellationToken();
+        CompletableFuture<Version> joining = versionCalculator.getVersionObjectAsync(executor, token);
+        token.cancel();
+        try {
+            Version version = joining.get(5, TimeUnit.SECONDS);
+            fail("a cancelled caller must not wait for the shared calculation: " + version);
+        } catch (ExecutionException expected) {
+            assertThat(expected.getCause(), instanceOf(CancellationException.class));
+        }
+        assertThat("the first calculation is still blocked", first.isDone(), is(false));
+
+        gate.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).toString(), is("1.1.0-1"));
+    }
+
+    @Test
+    public void rejected_phase_fails_the_calculation_once_the_submitted_ones_are_over() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger submissions = new AtomicInteger();
+        Executor saturated = task -> {
+            if (submissions.getAndIncrement() > 0) {
+                throw new RejectedExecutionException("saturated executor");
+            }
+            executor.execute(() -> {
+                mute(gate::await);
+                task.run();
+            });
+        };
+        CompletableFuture<Version> version = versionCalculator.getVersionObjectAsync(saturated);
+        assertThat("the first phase still uses the repository", version.isDone(), is(false));
+
+        gate.countDown();
+        try {
+            version.get(5, TimeUnit.SECONDS);
+            fail("a calculation missing a phase must not return a version");
+        } catch (ExecutionException expected) {
+            assertThat(expected.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertThat(versionCalculator.getVersionObjectAsync(executor).join().toString(), is("1.1.0-1"));
+    }
+
+    @Test
+    public void commits_walked_ahead_of_the_tags_are_searched_as_usual() throws Exception {
+        Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            HistoryWalk history = new HistoryWalk(walk, head, PathScope.wholeRepository(), SearchBudget.unlimited());
+            // tags are known once the whole history has been read
+            history.walkWhile(() -> true);
+
+            List<Ref> tags = new ArrayList<>();
+            for (Ref tag : repository.getRefDatabase().getRefs(Constants.R_TAGS).values()) {
+                tags.add(GitUtils.peel(walk, tag));
+            }
+            HistorySearch search = new HistorySearch(new TagIndex(tags, tag -> true), stopAtFirstStrategy(),
+                    Collections.emptySet());
+
+            assertThat(history.search(search), is(2));
+            List<Commit> commits = search.getCommits();
+            assertThat(commits.size(), is(1));
+            assertThat(commits.get(0).getGitObject(), is(scenario.getCommits().get("D")));
+            assertThat(commits.get(0).getHeadDistance(), is(1));
+        }
+    }
+
+    @Test
+    public void commits_walked_ahead_do_not_exceed_the_budget_of_the_search() throws Exception {
+        Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            SearchBudget budget = new SearchBudget(2, null, new CancellationToken());
+            HistoryWalk history = new HistoryWalk(walk, head, PathScope.wholeRepository(), budget);
+            history.walkWhile(() -> true);
+            assertThat("reading ahead does not spend the budget", budget.isExceeded(), is(false));
+
+            List<Ref> tags = new ArrayList<>();
+            for (Ref tag : repository.getRefDatabase().getRefs(Constants.R_TAGS).values()) {
+                tags.add(GitUtils.peel(walk, tag));
+            }
+            HistorySearch search = new HistorySearch(new TagIndex(tags, tag -> true), stopAtFirstStrategy(),
+                    Collections.emptySet());
+
+            // the tagged commit is the second one, within the budget
+            assertThat(history.search(search), is(2));
+            assertThat(search.getCommits().get(0).getGitObject(), is(scenario.getCommits().get("D")));
+            assertThat(budget.isExceeded(), is(false));
+        }
+    }
+
+    private VersionStrategy stopAtFirstStrategy() {
+        return new VersionStrategy(null, null, null, null) {
+            @Override
+            public Version build(Commit head, List<Commit> parents) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import fr.brouillard.oss.jgitver.Version;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+/**
+ * Frozen copy of the history walk of the first released calculator, with its default naming configuration and both of
+ * its strategies, used as the oracle of {@link DifferentialTest}.
+ *
+ * <p>It must not share any code with the calculator besides {@link Version} and JGit: a regression in the code shared
+ * by the engines of the calculator would otherwise go unnoticed. The only additions to the original walk are the
+ * commit budget, the version tags reachable from HEAD and the metadata that came with them; they are written as plainly
+ * as the rest so that they can be checked by reading.
+ */
+class BaselineWalk {
+    private static final Pattern SEARCH_PATTERN = Pattern.compile("v?([0-9]+(?:\\.[0-9]+){0,2}(?:-[a-zA-Z0-9\\-_]+)?)");
+    private static final String REPLACE_VERSION_REGEX = "$1";
+    private static final List<String> NO_QUALIFIER_FOR_BRANCHES = Collections.singletonList("master");
+    private static final int GIT_COMMIT_ID_LENGTH = 8;
+
+    private final Repository repository;
+    private final Map<Metadatas, String> metadatas = new EnumMap<>(Metadatas.class);
+    private boolean mavenLike = false;
+    private boolean autoIncrementPatch = false;
+    private boolean useGitCommitId = false;
+    private boolean computeReachableVersionTags = false;
+    private int maxSearchedCommits = Integer.MAX_VALUE;
+    private boolean dirty;
+
+    BaselineWalk(Repository repository) {
+        this.repository = repository;
+    }
+
+    BaselineWalk setMavenLike(boolean mavenLike) {
+        this.mavenLike = mavenLike;
+        return this;
+    }
+
+    BaselineWalk setAutoIncrementPatch(boolean autoIncrementPatch) {
+        this.autoIncrementPatch = autoIncrementPatch;
+        return this;
+    }
+
+    BaselineWalk setUseGitCommitId(boolean useGitCommitId) {
+        this.useGitCommitId = useGitCommitId;
+        return this;
+    }
+
+    BaselineWalk setComputeReachableVersionTags(boolean computeReachableVersionTags) {
+        this.computeReachableVersionTags = computeReachableVersionTags;
+        return this;
+    }
+
+    BaselineWalk setMaxSearchedCommits(int maxSearchedCommits) {
+        this.maxSearchedCommits = maxSearchedCommits;
+        return this;
+    }
+
+    /**
+     * Computes the version of HEAD.
+     * @return the version, under the "version" key, and the metadata by name
+     * @throws Exception if the repository cannot be read
+     */
+    Map<String, String> outcome() throws Exception {
+        metadatas.clear();
+        Version version = buildVersion();
+        Map<String, String> outcome = new LinkedHashMap<>();
+        outcome.put("version", version.toString());
+        metadatas.forEach((meta, value) -> outcome.put(meta.name(), value));
+        return outcome;
+    }
+
+    private Version buildVersion() throws Exception {
+        try (Git git = new Git(repository)) {
+            // a bare repository has no working tree to compare
+            dirty = !repository.isBare() && !git.status().call().isClean();
+            metadatas.put(Metadatas.DIRTY, "" + dirty);
+            // the generated repositories are complete clones
+            metadatas.put(Metadatas.SHALLOW_REPOSITORY, "false");
+
+            // retrieve all tags matching a version, and get all info for each of them
+            List<Ref> allTags = git.tagList().call().stream().map(repository::peel)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            // let's have tags sorted from most recent to oldest
+            Collections.reverse(allTags);
+            List<Ref> allAnnotated = allTags.stream().filter(BaselineWalk::isAnnotated).collect(Collectors.toList());
+            List<Ref> allLights = allTags.stream().filter(tag -> !isAnnotated(tag)).collect(Collectors.toList());
+
+            registerTags(Metadatas.ALL_TAGS, allTags);
+            registerTags(Metadatas.ALL_ANNOTATED_TAGS, allAnnotated);
+            registerTags(Metadatas.ALL_LIGHTWEIGHT_TAGS, allLights);
+
+            List<Ref> allVersionTags = allTags.stream().filter(tag -> SEARCH_PATTERN.matcher(tagName(tag)).matches())
+                    .collect(Collectors.toList());
+            List<Ref> normals = allVersionTags.stream().filter(BaselineWalk::isAnnotated).collect(Collectors.toList());
+            List<Ref> lights = allVersionTags.stream().filter(tag -> !isAnnotated(tag)).collect(Collectors.toList());
+
+            registerTags(Metadatas.ALL_VERSION_TAGS, allVersionTags);
+            registerTags(Metadatas.ALL_VERSION_ANNOTATED_TAGS, normals);
+            registerTags(Metadatas.ALL_VERSION_LIGHTWEIGHT_TAGS, lights);
+
+            ObjectId rootId = repository.resolve("HEAD");
+            if (rootId == null) {
+                return Version.EMPTY_REPOSITORY_VERSION;
+            }
+
+            git.log().add(rootId).setMaxCount(1).call().spliterator().tryAdvance(rc -> {
+                PersonIdent commitInfo = rc.getAuthorIdent();
+                metadatas.put(Metadatas.HEAD_COMMITTER_NAME, commitInfo.getName());
+                metadatas.put(Metadatas.HEAD_COMMITER_EMAIL, commitInfo.getEmailAddress());
+                SimpleDateFormat dtfmt = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+                dtfmt.setTimeZone(commitInfo.getTimeZone());
+                metadatas.put(Metadatas.HEAD_COMMIT_DATETIME, dtfmt.format(commitInfo.getWhen()));
+            });
+
+            registerTags(Metadatas.HEAD_TAGS, tagsOf(allTags, rootId));
+            registerTags(Metadatas.HEAD_ANNOTATED_TAGS, tagsOf(allAnnotated, rootId));
+            registerTags(Metadatas.HEAD_LIGHTWEIGHT_TAGS, tagsOf(allLights, rootId));
+
+            metadatas.put(Metadatas.GIT_SHA1_FULL, rootId.getName());
+            metadatas.put(Metadatas.GIT_SHA1_8, rootId.getName().substring(0, 8));
+
+            if (computeReachableVersionTags) {
+                Set<ObjectId> reachable = new HashSet<>();
+                try (RevWalk revWalk = new RevWalk(repository)) {
+                    revWalk.markStart(revWalk.parseCommit(rootId));
+                    revWalk.forEach(reachable::add);
+                }
+                registerTags(Metadatas.HEAD_REACHABLE_VERSION_TAGS, allVersionTags.stream()
+                        .filter(tag -> reachable.contains(tag.getPeeledObjectId() != null ? tag.getPeeledObjectId()
+                                : tag.getObjectId()))
+                        .collect(Collectors.toList()));
+            }
+
+            TaggedCommit head = new TaggedCommit(rootId, 0, tagsOf(normals, rootId), tagsOf(lights, rootId));
+            TaggedCommit base = null;
+
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                revWalk.markStart(revWalk.parseCommit(rootId));
+
+                int depth = 0;
+                int searchedCommits = 0;
+                boolean budgetExceeded = false;
+                ObjectId id = null;
+                for (RevCommit rc : revWalk) {
+                    // HEAD is always searched
+                    if (searchedCommits > 0 && searchedCommits >= maxSearchedCommits) {
+                        budgetExceeded = true;
+                        break;
+                    }
+                    searchedCommits++;
+                    id = rc.getId();
+
+                    List<Ref> annotatedCommitTags = tagsOf(normals, id);
+                    List<Ref> lightCommitTags = tagsOf(lights, id);
+
+                    if (annotatedCommitTags.size() > 0 || lightCommitTags.size() > 0) {
+                        // we found a commit with version tags, both strategies stop at the first one
+                        base = new TaggedCommit(id, depth, annotatedCommitTags, lightCommitTags);
+                        break;
+                    }
+
+                    depth++;
+                }
+
+                // handle the case where we reached the first commit, or the end of the budget, without finding anything
+                if (base == null) {
+                    base = new TaggedCommit(id, depth - 1, Collections.emptyList(), Collections.emptyList());
+                }
+                metadatas.put(Metadatas.TRUNCATED_HISTORY, "false");
+                metadatas.put(Metadatas.SEARCH_BUDGET_EXCEEDED, "" + budgetExceeded);
+            }
+
+            return mavenLike ? buildMaven(head, base) : buildConfigurable(head, base);
+        }
+    }
+
+    private Version buildConfigurable(TaggedCommit head, TaggedCommit base) throws Exception {
+        Ref tagToUse = tagToUse(head, base);
+
+        Version baseVersion;
+
+        if (tagToUse == null) {
+            // we have reach the initial commit of the repository
+            baseVersion = Version.DEFAULT_VERSION;
+        } else {
+            String tagName = tagName(tagToUse);
+            metadatas.put(Metadatas.BASE_TAG, tagName);
+            baseVersion = Version.parse(SEARCH_PATTERN.matcher(tagName).replaceAll(REPLACE_VERSION_REGEX));
+        }
+
+        final boolean useSnapshot = baseVersion.isSnapshot();
+
+        if (!isBaseCommitOnHead(head, base) && autoIncrementPatch) {
+            // we are not on head
+            if (isAnnotated(tagToUse)) {
+                // found tag to use was an annotated one, lets' increment the version automatically
+                baseVersion = baseVersion.increasePatch();
+            }
+        }
+
+        if (!useSnapshot) {
+            if (tagToUse == null) {
+                // no tag was found, let's count from initial commit
+                baseVersion = baseVersion.addQualifier("" + base.distance);
+            } else {
+                // use distance when not on head
+                // or if on head with a light tag
+                if (!isBaseCommitOnHead(head, base) || !isAnnotated(tagToUse)) {
+                    baseVersion = baseVersion.addQualifier("" + base.distance);
+                }
+            }
+        }
+
+        if (useGitCommitId && !isBaseCommitOnHead(head, base)) {
+            baseVersion = baseVersion.addQualifier(head.id.getName().substring(0, GIT_COMMIT_ID_LENGTH));
+        }
+
+        baseVersion = withBranchQualifier(baseVersion);
+
+        return useSnapshot ? baseVersion.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT") : baseVersion;
+    }
+
+    private Version buildMaven(TaggedCommit head, TaggedCommit base) throws Exception {
+        Ref tagToUse = tagToUse(head, base);
+
+        Version baseVersion = null;
+        boolean needSnapshot = false;
+
+        if (tagToUse == null) {
+            // we have reached the first commit of the repository and this commit is still no annotated
+            // Let's use a default version.
+            baseVersion = Version.DEFAULT_VERSION;
+            needSnapshot = true;
+        } else {
+            String tagName = tagName(tagToUse);
+            metadatas.put(Metadatas.BASE_TAG, tagName);
+            baseVersion = Version.parse(SEARCH_PATTERN.matcher(tagName).replaceAll(REPLACE_VERSION_REGEX));
+            needSnapshot = baseVersion.isSnapshot() || !isBaseCommitOnHead(head, base) || !isAnnotated(tagToUse);
+        }
+
+        if (!isBaseCommitOnHead(head, base)) {
+            // we are not on head
+            if (isAnnotated(tagToUse) && !baseVersion.removeQualifier("SNAPSHOT").isQualified()) {
+                // found tag to use was a non qualified annotated one, lets' increment the version automatically
+                baseVersion = baseVersion.increasePatch();
+            }
+            baseVersion = baseVersion.noQualifier();
+        }
+
+        baseVersion = withBranchQualifier(baseVersion);
+
+        return needSnapshot ? baseVersion.removeQualifier("SNAPSHOT").addQualifier("SNAPSHOT") : baseVersion;
+    }
+
+    private Ref tagToUse(TaggedCommit head, TaggedCommit base) {
+        if (isBaseCommitOnHead(head, base) && !dirty) {
+            // consider first the annotated tags
+            return base.annotatedTags.stream().findFirst()
+                    .orElseGet(() -> base.lightTags.stream().findFirst().orElse(null));
+        }
+        // consider first the light tags
+        return base.lightTags.stream().findFirst()
+                .orElseGet(() -> base.annotatedTags.stream().findFirst().orElse(null));
+    }
+
+    private Version withBranchQualifier(Version version) throws Exception {
+        if (repository.getFullBranch().matches("[0-9a-f]{40}")) {
+            // detached HEAD
+            return version;
+        }
+        String branch = repository.getBranch();
+        metadatas.put(Metadatas.BRANCH_NAME, branch);
+
+        // let's add a branch qualifier if one is computed
+        if (NO_QUALIFIER_FOR_BRANCHES.contains(branch)) {
+            return version;
+        }
+        return version.addQualifier(branch.replaceAll("[\\s\\-#/\\\\]+", "_"));
+    }
+
+    private void registerTags(Metadatas meta, List<Ref> tags) {
+        metadatas.put(meta, tags.stream().map(BaselineWalk::tagName).collect(Collectors.joining(",")));
+    }
+
+    private static List<Ref> tagsOf(List<Ref> tags, final ObjectId id) {
+        return tags.stream().filter(ref -> id.equals(ref.getObjectId()) || id.equals(ref.getPeeledObjectId()))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean isBaseCommitOnHead(TaggedCommit head, TaggedCommit base) {
+        return head.id.name().equals(base.id.name());
+    }
+
+    private static boolean isAnnotated(Ref ref) {
+        return ref != null && ref.getPeeledObjectId() != null;
+    }
+
+    private static String tagName(Ref tag) {
+        return tag.getName().replace("refs/tags/", "");
+    }
+
+    /**
+     * Commit of the history with its version tags, at a given distance from HEAD.
+     */
+    private static final class TaggedCommit {
+        private final ObjectId id;
+        private final int distance;
+        private final List<Ref> annotatedTags;
+        private final List<Ref> lightTags;
+
+        private TaggedCommit(ObjectId id, int distance, List<Ref> annotatedTags, List<Ref> lightTags) {
+            this.id = id;
+            this.distance = distance;
+            this.annotatedTags = annotatedTags;
+            this.lightTags = lightTags;
+        }
+    }
+}
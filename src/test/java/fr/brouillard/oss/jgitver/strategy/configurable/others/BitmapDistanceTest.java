@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.FixtureBuilder;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.SearchAlgorithm;
+import fr.brouillard.oss.jgitver.impl.DistanceCalculator;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class BitmapDistanceTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates a fresh git scenario for each test, as some tests repack it.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation())
+                .setUseBitmapDistance(true);
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void same_versions_as_walk_distance_without_bitmaps() {
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2-issue_10"));
+    }
+
+    @Test
+    public void same_versions_as_walk_distance_with_bitmaps() {
+        unchecked(() -> git.gc().call());
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2-issue_10"));
+    }
+
+    @Test
+    public void merged_commits_are_counted() {
+        mergeIssue10IntoMaster();
+        // M, E & F are not reachable from 1.1.0
+        assertThat(versionCalculator.getVersion(), is("1.1.0-3"));
+
+        unchecked(() -> git.gc().call());
+        assertThat(versionCalculator.getVersion(), is("1.1.0-3"));
+    }
+
+    @Test
+    public void distances_with_and_without_bitmaps() throws Exception {
+        ObjectId e = scenario.getCommits().get("E");
+        ObjectId b = scenario.getCommits().get("B");
+        ObjectId f = scenario.getCommits().get("F");
+
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            DistanceCalculator walking = new DistanceCalculator(reader, e, Collections.emptySet(), new CancellationToken());
+            assertThat(walking.isBitmapBased(), is(false));
+            assertThat(walking.distanceTo(b), is(3));
+            assertThat(walking.distanceTo(e), is(0));
+            assertThat(walking.distanceTo(f), is(2));
+        }
+
+        git.gc().call();
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            DistanceCalculator bitmaps = new DistanceCalculator(reader, e, Collections.emptySet(), new CancellationToken());
+            assertThat(bitmaps.isBitmapBased(), is(true));
+            assertThat(bitmaps.distanceTo(b), is(3));
+            assertThat(bitmaps.distanceTo(e), is(0));
+            assertThat(bitmaps.distanceTo(f), is(2));
+        }
+    }
+
+    @Test
+    public void history_is_not_walked_with_bitmaps() throws Exception {
+        File directory = Files.createTempDir();
+        try (Repository repository = FixtureBuilder.bare(new File(directory, "long.git"))
+                .commit("A")
+                .tag("1.0.0")
+                .linear(10)
+                .branch("topic")
+                .commit("T")
+                .tag("2.0.0")
+                .master()
+                .linear(500)
+                .merge("topic", "M")
+                .build()) {
+            Git.wrap(repository).gc().call();
+
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                calculator.setUseBitmapDistance(true);
+                // 500 commits of master and the merge are not reachable from 2.0.0, the closest tag
+                assertThat(calculator.getVersion(), is("2.0.0-501"));
+                assertThat(calculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("TAG_ANCESTRY")));
+                assertThat(calculator.meta(Metadatas.SEARCHED_COMMITS), is(Optional.of("0")));
+
+                calculator.setSearchAlgorithm(SearchAlgorithm.WALK);
+                assertThat(calculator.getVersion(), is("2.0.0-501"));
+                assertThat(calculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("WALK")));
+            }
+        } finally {
+            Misc.deleteDirectorySimple(directory);
+        }
+    }
+
+    private void mergeIssue10IntoMaster() {
+        unchecked(() -> git.merge()
+                .include(git.getRepository().resolve("issue-10"))
+                .setFastForward(FastForwardMode.NO_FF)
+                .setMessage("merge issue-10")
+                .call());
+    }
+}
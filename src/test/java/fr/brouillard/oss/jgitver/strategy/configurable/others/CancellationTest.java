@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.Component;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.impl.DistanceCalculator;
+import fr.brouillard.oss.jgitver.impl.GitUtils;
+import fr.brouillard.oss.jgitver.impl.ReachableCommits;
+
+public class CancellationTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates the git scenario for each test.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void token_not_cancelled_gives_the_version() {
+        assertThat(versionCalculator.getVersion(new CancellationToken()), is("1.1.0-1"));
+    }
+
+    @Test
+    public void cancelled_calculation_throws_and_calculator_remains_usable() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            versionCalculator.getVersionObject(token);
+            fail("a cancelled calculation must not return a version");
+        } catch (CancellationException expected) {
+            assertThat(token.isCancelled(), is(true));
+        }
+
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+    }
+
+    @Test
+    public void cancelled_component_calculation_throws() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            versionCalculator.getComponentVersions(Collections.singletonList(new Component("", "")), token);
+            fail("a cancelled calculation must not return versions");
+        } catch (CancellationException expected) {
+            assertThat(token.isCancelled(), is(true));
+        }
+    }
+
+    @Test
+    public void interrupted_thread_aborts_the_calculation() {
+        Thread.currentThread().interrupt();
+        try {
+            versionCalculator.getVersion(new CancellationToken());
+            fail("an interrupted calculation must not return a version");
+        } catch (CancellationException expected) {
+            // the interrupted status is kept for the caller
+            assertThat(Thread.interrupted(), is(true));
+        }
+    }
+
+    @Test
+    public void cancelled_token_stops_the_searches_based_on_bitmaps() throws Exception {
+        // packs the repository with a bitmap index
+        git.gc().call();
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            assertThat(reader.getBitmapIndex() != null, is(true));
+            ObjectId head = git.getRepository().resolve(Constants.HEAD);
+            CancellationToken token = new CancellationToken();
+            ReachableCommits reachable = ReachableCommits.from(reader, head, Collections.emptySet(), token);
+            DistanceCalculator distances = new DistanceCalculator(reader, head, Collections.emptySet(), token);
+            assertThat(reachable.isBitmapBased() && distances.isBitmapBased(), is(true));
+
+            token.cancel();
+            try {
+                reachable.size();
+                fail("a cancelled count of the reachable commits must not return");
+            } catch (CancellationException expected) {
+                assertThat(token.isCancelled(), is(true));
+            }
+            try {
+                distances.distanceTo(scenario.getCommits().get("A"));
+                fail("a cancelled distance computation must not return");
+            } catch (CancellationException expected) {
+                assertThat(token.isCancelled(), is(true));
+            }
+            try {
+                ReachableCommits.from(reader, head, Collections.emptySet(), token);
+                fail("a cancelled search of the reachable commits must not return");
+            } catch (CancellationException expected) {
+                assertThat(token.isCancelled(), is(true));
+            }
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelled_dirty_check_throws() throws Exception {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        GitUtils.isDirty(git, token);
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.mute;
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.Component;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.Version;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class ComponentVersionTest {
+    private static final Component BILLING = new Component("billing/", "billing");
+    private static final Component SHIPPING = new Component("shipping/", "/shipping/");
+    private static final Component DOCS = new Component("docs/", "docs");
+    private static final Component WHOLE_REPOSITORY = new Component("", "");
+
+    private static Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Initialize the whole junit class tests ; creates the git scenario.
+     */
+    @BeforeClass
+    public static void initClass() {
+        scenario = Scenarios.s13_linear_with_components();
+        if (Misc.isDebugMode()) {
+            System.out.println("git repository created under: " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Cleanup the whole junit scenario ; deletes the created git repository.
+     */
+    @AfterClass
+    public static void cleanupClass() {
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Prepare common variables to access the git repository.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+
+        // reset the head to master
+        unchecked(() -> git.checkout().setName("master").call());
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        mute(() -> git.close());
+        mute(() -> versionCalculator.close());
+    }
+
+    @Test
+    public void prefixed_tags_are_ignored_without_component() {
+        assertThat(versionCalculator.getVersion(), is("0.0.0-4"));
+    }
+
+    @Test
+    public void distance_only_counts_commits_modifying_the_component() {
+        versionCalculator.setComponent(BILLING);
+        assertThat(versionCalculator.getVersion(), is("1.0.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.BASE_TAG), is(Optional.of("billing/v1.0.0")));
+
+        versionCalculator.setComponent(SHIPPING);
+        assertThat(versionCalculator.getVersion(), is("2.0.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.BASE_TAG), is(Optional.of("shipping/v2.0.0")));
+    }
+
+    @Test
+    public void only_component_tags_are_version_tags() {
+        versionCalculator.setComponent(BILLING);
+        assertThat(versionCalculator.metaAsList(Metadatas.ALL_VERSION_TAGS), is(Optional.of(Arrays.asList("billing/v1.0.0"))));
+        assertThat(versionCalculator.getVersionTagCatalogue().highest().get().getVersion().toString(), is("1.0.0"));
+    }
+
+    @Test
+    public void commits_outside_the_component_do_not_move_its_version() {
+        unchecked(() -> git.checkout().setName(scenario.getCommits().get("D").name()).call());
+        versionCalculator.setComponent(BILLING);
+        String onD = versionCalculator.getVersion();
+
+        unchecked(() -> git.checkout().setName(scenario.getCommits().get("C").name()).call());
+        assertThat(versionCalculator.getVersion(), is(onD));
+    }
+
+    @Test
+    public void component_spread_over_several_paths() {
+        versionCalculator.setComponent(new Component("billing/", "billing", "docs"));
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2"));
+    }
+
+    @Test
+    public void component_without_tag_counts_its_commits_from_the_first_one() {
+        versionCalculator.setComponent(DOCS);
+        assertThat(versionCalculator.getVersion(), is("0.0.0-1"));
+    }
+
+    @Test
+    public void all_components_versions_are_computed_at_once() {
+        List<Component> components = Arrays.asList(BILLING, SHIPPING, DOCS, WHOLE_REPOSITORY);
+
+        Map<Component, Version> versions = versionCalculator.getComponentVersions(components);
+
+        assertThat(new ArrayList<>(versions.keySet()), is(components));
+        assertThat(versions.get(BILLING).toString(), is("1.0.0-1"));
+        assertThat(versions.get(SHIPPING).toString(), is("2.0.0-1"));
+        assertThat(versions.get(DOCS).toString(), is("0.0.0-1"));
+        assertThat(versions.get(WHOLE_REPOSITORY).toString(), is("0.0.0-4"));
+    }
+
+    @Test
+    public void versions_computed_at_once_are_the_ones_computed_separately() {
+        List<Component> components = Arrays.asList(BILLING, SHIPPING, DOCS, WHOLE_REPOSITORY,
+                new Component("billing/", "billing", "docs"));
+
+        for (String commit : Arrays.asList("A", "B", "C", "D", "E")) {
+            unchecked(() -> git.checkout().setName(scenario.getCommits().get(commit).name()).call());
+            Map<Component, Version> versions = versionCalculator.getComponentVersions(components);
+
+            for (Component component : components) {
+                versionCalculator.setComponent(component);
+                assertThat(commit + " " + component, versions.get(component), is(versionCalculator.getVersionObject()));
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.mute;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.Version;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class ConcurrentCalculationTest {
+    private static final int THREADS = 8;
+    private static final List<String> CONFIGURED_VERSIONS = Arrays.asList("2.0.1-SNAPSHOT", "2.0.0-1");
+
+    private static Scenario scenario;
+    private GitVersionCalculator versionCalculator;
+    private ExecutorService executor;
+
+    /**
+     * Initialize the whole junit class tests ; creates the git scenario.
+     */
+    @BeforeClass
+    public static void initClass() {
+        scenario = Scenarios.s1_linear_with_only_annotated_tags();
+        if (Misc.isDebugMode()) {
+            System.out.println("git repository created under: " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Cleanup the whole junit scenario ; deletes the created git repository.
+     */
+    @AfterClass
+    public static void cleanupClass() {
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Prepare a calculator shared by all the threads.
+     */
+    @Before
+    public void init() {
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        executor.shutdownNow();
+        mute(() -> versionCalculator.close());
+    }
+
+    @Test
+    public void concurrent_calls_compute_the_same_version() throws Exception {
+        List<Future<String>> versions = submitConcurrently(() -> versionCalculator.getVersion());
+
+        for (Future<String> version : versions) {
+            assertThat(version.get(), is("2.0.0-1"));
+        }
+        assertThat(versionCalculator.meta(Metadatas.BASE_TAG).get(), is("2.0.0"));
+    }
+
+    @Test
+    public void settings_changed_concurrently_give_one_of_the_configured_versions() throws Exception {
+        List<Future<String>> versions = submitConcurrently(() -> {
+            versionCalculator.setMavenLike(Thread.currentThread().getId() % 2 == 0);
+            return versionCalculator.getVersion();
+        });
+
+        for (Future<String> version : versions) {
+            assertThat(CONFIGURED_VERSIONS, hasItem(version.get()));
+        }
+    }
+
+    @Test
+    public void callers_coming_during_a_calculation_share_it() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger firstTasks = new AtomicInteger();
+        Executor blocked = task -> {
+            firstTasks.incrementAndGet();
+            executor.execute(() -> {
+                mute(gate::await);
+                task.run();
+            });
+        };
+        AtomicInteger joiningTasks = new AtomicInteger();
+        Executor counting = task -> {
+            joiningTasks.incrementAndGet();
+            executor.execute(task);
+        };
+
+        CompletableFuture<Version> first = versionCalculator.getVersionObjectAsync(blocked);
+        List<CompletableFuture<Version>> joining = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            joining.add(versionCalculator.getVersionObjectAsync(counting));
+        }
+        gate.countDown();
+
+        Version version = first.get(5, TimeUnit.SECONDS);
+        assertThat(version.toString(), is("2.0.0-1"));
+        for (CompletableFuture<Version> joined : joining) {
+            assertThat(joined.get(5, TimeUnit.SECONDS), sameInstance(version));
+        }
+        assertThat("callers joining the running calculation run no phase", joiningTasks.get(), is(0));
+        assertThat("the dirty check, tags, walk and version phases run once", firstTasks.get(), is(4));
+    }
+
+    private List<Future<String>> submitConcurrently(Callable<String> call) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS * 4; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.Component;
+import fr.brouillard.oss.jgitver.FixtureBuilder;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.SearchAlgorithm;
+import fr.brouillard.oss.jgitver.Version;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+/**
+ * Compares the versions and metadata computed by the engines of the calculator with the ones of {@link BaselineWalk},
+ * a frozen copy of the original history walk, on randomly generated histories having several root commits.
+ *
+ * <p>Each run uses new random seeds; a failure reports its seed, the run being reproduced with
+ * {@code -Djgitver.differential.seed=<seed>}. The number of histories generated by a run is set with
+ * {@code -Djgitver.differential.iterations=<count>}.
+ */
+public class DifferentialTest {
+    private static final int ITERATIONS = Integer.getInteger("jgitver.differential.iterations", 20);
+
+    /**
+     * Metadata telling how the version was searched, expected to differ between engines.
+     */
+    private static final Set<Metadatas> ENGINE_METADATAS = new HashSet<>(
+            Arrays.asList(Metadatas.SEARCH_ALGORITHM, Metadatas.SEARCHED_COMMITS));
+
+    private static final List<Component> COMPONENTS = Arrays.asList(new Component("api/", "api"),
+            new Component("core/", "core"));
+
+    private static final String[] PATHS = {"api/Api.java", "core/Core.java", "README"};
+
+    /**
+     * Engines compared with the baseline walk.
+     */
+    private static final Map<String, Engine> ENGINES = new LinkedHashMap<>();
+
+    static {
+        ENGINES.put("walk", (gitDir, repository, settings) -> outcome(
+                settings.apply(GitVersionCalculator.location(gitDir)).setSearchAlgorithm(SearchAlgorithm.WALK)));
+        ENGINES.put("tag ancestry", (gitDir, repository, settings) -> outcome(
+                settings.apply(GitVersionCalculator.location(gitDir)).setSearchAlgorithm(SearchAlgorithm.TAG_ANCESTRY)));
+        ENGINES.put("auto", (gitDir, repository, settings) -> outcome(
+                settings.apply(GitVersionCalculator.location(gitDir)).setSearchAlgorithm(SearchAlgorithm.AUTO)));
+        ENGINES.put("tag ancestry with a token", (gitDir, repository, settings) -> {
+            try (GitVersionCalculator calculator = settings.apply(GitVersionCalculator.location(gitDir))
+                    .setSearchAlgorithm(SearchAlgorithm.TAG_ANCESTRY)) {
+                return outcome(calculator.getVersionObject(new CancellationToken()), calculator);
+            }
+        });
+        ENGINES.put("async", (gitDir, repository, settings) -> {
+            try (GitVersionCalculator calculator = settings.apply(GitVersionCalculator.location(gitDir))
+                    .setSearchAlgorithm(SearchAlgorithm.WALK)) {
+                Version version = calculator.getVersionObjectAsync(ForkJoinPool.commonPool(), new CancellationToken())
+                        .get();
+                return outcome(version, calculator);
+            }
+        });
+        ENGINES.put("prefetch", (gitDir, repository, settings) -> outcome(
+                settings.apply(GitVersionCalculator.location(gitDir, true)).setSearchAlgorithm(SearchAlgorithm.WALK)));
+        ENGINES.put("given repository", (gitDir, repository, settings) -> outcome(
+                settings.apply(GitVersionCalculator.location(repository)).setSearchAlgorithm(SearchAlgorithm.WALK)));
+    }
+
+    @Test
+    public void engines_give_the_versions_of_the_baseline_walk() throws Exception {
+        Long reproduced = Long.getLong("jgitver.differential.seed");
+        Random seeds = new Random();
+        for (int i = 0; i < (reproduced == null ? ITERATIONS : 1); i++) {
+            compareEngines(reproduced == null ? seeds.nextLong() : reproduced);
+        }
+    }
+
+    private void compareEngines(long seed) throws Exception {
+        File directory = Files.createTempDir();
+        File gitDir = new File(directory, "random.git");
+        Random random = new Random(seed);
+        try (Repository repository = randomHistory(random, gitDir)) {
+            List<Settings> settings = settings(random);
+            Map<String, Map<String, String>> references = new LinkedHashMap<>();
+            for (Settings setting : settings) {
+                references.put(setting.name, setting.baseline(new BaselineWalk(repository)).outcome());
+            }
+            compareEngines(seed, "loose objects", gitDir, repository, settings, references);
+            compareComponents(seed, gitDir);
+
+            // packs the repository, with a bitmap index
+            Git.wrap(repository).gc().call();
+            compareEngines(seed, "bitmaps", gitDir, repository, settings, references);
+            compareComponents(seed, gitDir);
+        } finally {
+            Misc.deleteDirectorySimple(directory);
+        }
+    }
+
+    private void compareEngines(long seed, String storage, File gitDir, Repository repository, List<Settings> settings,
+            Map<String, Map<String, String>> references) throws Exception {
+        for (Settings setting : settings) {
+            for (Map.Entry<String, Engine> engine : ENGINES.entrySet()) {
+                Map<String, String> outcome = engine.getValue().compute(gitDir, repository, setting::calculator);
+                assertThat(reason(seed, engine.getKey() + " on " + storage + " with " + setting.name + " settings"),
+                        outcome, is(references.get(setting.name)));
+            }
+        }
+    }
+
+    /**
+     * Builds the settings the engines are compared with, the budgets being drawn at random.
+     */
+    private static List<Settings> settings(Random random) {
+        int budget = 1 + random.nextInt(12);
+        int mavenBudget = 1 + random.nextInt(12);
+        List<Settings> settings = new ArrayList<>();
+        settings.add(new Settings("default", false, false, false, Integer.MAX_VALUE));
+        settings.add(new Settings("maven", true, false, false, Integer.MAX_VALUE));
+        settings.add(new Settings("auto increment and commit id", false, true, false, Integer.MAX_VALUE));
+        settings.add(new Settings("reachable tags", false, false, true, Integer.MAX_VALUE));
+        settings.add(new Settings("budget of " + budget + " commits", false, false, false, budget));
+        settings.add(new Settings("maven with a budget of " + mavenBudget + " commits", true, false, false, mavenBudget));
+        return settings;
+    }
+
+    /**
+     * Compares the versions of the components computed at once, with and without changed-path filters, to the ones
+     * computed one component at a time.
+     */
+    private void compareComponents(long seed, File gitDir) throws Exception {
+        Map<Component, Version> references = new LinkedHashMap<>();
+        for (Component component : COMPONENTS) {
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(gitDir)) {
+                references.put(component, calculator.setComponent(component).getVersionObject());
+            }
+        }
+        for (boolean writeChangedPathFilters : new boolean[] {false, true}) {
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(gitDir)) {
+                calculator.setWriteChangedPathFilters(writeChangedPathFilters);
+                assertThat(reason(seed, "components with changed-path filters " + writeChangedPathFilters),
+                        calculator.getComponentVersions(COMPONENTS), is(references));
+            }
+        }
+    }
+
+    private static String reason(long seed, String comparison) {
+        return String.format("seed %d, %s (reproduce with -Djgitver.differential.seed=%d)", seed, comparison, seed);
+    }
+
+    /**
+     * Builds a random history: commits modifying random files, branches created on random commits or without any
+     * parent, merges of random branches, and tags of all kinds on random commits, HEAD being finally on a random branch.
+     */
+    private static Repository randomHistory(Random random, File gitDir) {
+        FixtureBuilder fixture = FixtureBuilder.bare(gitDir);
+        Map<String, String> tips = new LinkedHashMap<>();
+        List<String> commits = new ArrayList<>();
+        Set<String> tags = new HashSet<>();
+        String current = "master";
+
+        int steps = 20 + random.nextInt(100);
+        for (int step = 0; step < steps; step++) {
+            int operation = commits.isEmpty() ? 0 : random.nextInt(100);
+            String id = "c" + step;
+            if (operation < 55) {
+                fixture.commitChange(PATHS[random.nextInt(PATHS.length)], id);
+            } else if (operation < 65) {
+                current = "branch-" + step;
+                fixture.branch(current);
+                continue;
+            } else if (operation < 72) {
+                current = "branch-" + step;
+                id = commits.get(random.nextInt(commits.size()));
+                fixture.branchOnAppId(current, id);
+            } else if (operation < 75) {
+                // a new root commit, that a later merge may bring into the history of another branch
+                current = "orphan-" + step;
+                fixture.orphan(current).commitChange(PATHS[random.nextInt(PATHS.length)], id);
+            } else if (operation < 87) {
+                current = new ArrayList<>(tips.keySet()).get(random.nextInt(tips.size()));
+                fixture.checkout(current);
+                continue;
+            } else {
+                String other = new ArrayList<>(tips.keySet()).get(random.nextInt(tips.size()));
+                if (tips.get(other).equals(tips.get(current))) {
+                    continue;
+                }
+                fixture.merge(other, id);
+            }
+            tips.put(current, id);
+            commits.add(id);
+            if (random.nextInt(100) < 25) {
+                addRandomTag(random, fixture, tags);
+            }
+        }
+        fixture.checkout(new ArrayList<>(tips.keySet()).get(random.nextInt(tips.size())));
+        return fixture.build();
+    }
+
+    private static void addRandomTag(Random random, FixtureBuilder fixture, Set<String> tags) {
+        String version = random.nextInt(3) + "." + random.nextInt(4) + "." + random.nextInt(5);
+        String[] names = {version, "v" + version, version + "-RC" + random.nextInt(3), version + "-SNAPSHOT",
+            "api/" + version, "core/" + version, "release-" + random.nextInt(10)};
+        String name = names[random.nextInt(names.length)];
+        if (!tags.add(name)) {
+            return;
+        }
+        if (random.nextBoolean()) {
+            fixture.tag(name);
+        } else {
+            fixture.tagLight(name);
+        }
+    }
+
+    private static Map<String, String> outcome(GitVersionCalculator calculator) throws Exception {
+        try (GitVersionCalculator closed = calculator) {
+            return outcome(closed.getVersionObject(), closed);
+        }
+    }
+
+    /**
+     * Gathers the version and the metadata not depending on the engine.
+     */
+    private static Map<String, String> outcome(Version version, GitVersionCalculator calculator) {
+        Map<String, String> outcome = new LinkedHashMap<>();
+        outcome.put("version", version.toString());
+        for (Metadatas meta : Metadatas.values()) {
+            if (!ENGINE_METADATAS.contains(meta)) {
+                calculator.meta(meta).ifPresent(value -> outcome.put(meta.name(), value));
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Settings applied the same way to the calculator and to the baseline walk.
+     */
+    private static final class Settings {
+        private final String name;
+        private final boolean mavenLike;
+        private final boolean autoIncrementPatch;
+        private final boolean computeReachableVersionTags;
+        private final int maxSearchedCommits;
+
+        private Settings(String name, boolean mavenLike, boolean autoIncrementPatch,
+                boolean computeReachableVersionTags, int maxSearchedCommits) {
+            this.name = name;
+            this.mavenLike = mavenLike;
+            this.autoIncrementPatch = autoIncrementPatch;
+            this.computeReachableVersionTags = computeReachableVersionTags;
+            this.maxSearchedCommits = maxSearchedCommits;
+        }
+
+        private GitVersionCalculator calculator(GitVersionCalculator calculator) {
+            return calculator.setMavenLike(mavenLike).setAutoIncrementPatch(autoIncrementPatch)
+                    .setUseGitCommitId(autoIncrementPatch).setComputeReachableVersionTags(computeReachableVersionTags)
+                    .setMaxSearchedCommits(maxSearchedCommits);
+        }
+
+        private BaselineWalk baseline(BaselineWalk baseline) {
+            return baseline.setMavenLike(mavenLike).setAutoIncrementPatch(autoIncrementPatch)
+                    .setUseGitCommitId(autoIncrementPatch).setComputeReachableVersionTags(computeReachableVersionTags)
+                    .setMaxSearchedCommits(maxSearchedCommits);
+        }
+    }
+
+    /**
+     * Way to compute a version of the repository with the given settings.
+     */
+    private interface Engine {
+        Map<String, String> compute(File gitDir, Repository repository, UnaryOperator<GitVersionCalculator> settings)
+                throws Exception;
+    }
+}
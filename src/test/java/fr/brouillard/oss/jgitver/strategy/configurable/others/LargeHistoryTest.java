@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.FixtureBuilder;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+
+public class LargeHistoryTest {
+    @Test
+    public void fixture_gives_the_versions_of_the_scenario() throws Exception {
+        try (Repository repository = FixtureBuilder.inMemory()
+                .commit("A")
+                .commit("B")
+                .tag("1.0.0")
+                .commit("C")
+                .commit("D")
+                .tagLight("1.1.0")
+                .commit("E")
+                .branchOnAppId("issue-10", "C")
+                .commit("F")
+                .master()
+                .build();
+                GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+            assertThat(calculator.getVersion(), is("1.1.0-1"));
+
+            repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + "issue-10");
+            assertThat(calculator.getVersion(), is("1.0.0-2-issue_10"));
+        }
+    }
+
+    @Test
+    public void long_linear_history() throws Exception {
+        try (Repository repository = FixtureBuilder.inMemory()
+                .commit("A")
+                .tag("1.0.0")
+                .linear(100_000)
+                .build();
+                GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+            assertThat(calculator.getVersion(), is("1.0.0-100000"));
+        }
+    }
+
+    @Test
+    public void merged_topic_branches() throws Exception {
+        try (Repository repository = FixtureBuilder.inMemory()
+                .commit("A")
+                .tag("1.0.0")
+                .mergeFan(3, 4)
+                .build();
+                GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+            // 3 topic branches of 4 commits and their 3 merges
+            assertThat(calculator.getVersion(), is("1.0.0-15"));
+        }
+    }
+
+    @Test
+    public void long_lived_branch_merged_regularly() throws Exception {
+        try (Repository repository = FixtureBuilder.inMemory()
+                .commit("A")
+                .tag("1.0.0")
+                .longLivedBranch("develop", 10, 5)
+                .build();
+                GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+            // 10 rounds of 5 commits on each branch and a merge
+            assertThat(calculator.getVersion(), is("1.0.0-110"));
+
+            repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + "develop");
+            assertThat(calculator.getVersion(), is("1.0.0-50-develop"));
+        }
+    }
+
+    @Test
+    public void bare_fixture() throws Exception {
+        File directory = Files.createTempDir();
+        try (Repository repository = FixtureBuilder.bare(new File(directory, "fixture.git"))
+                .commit("A")
+                .tag("1.0.0")
+                .commitChange("src/main/App.java", "B")
+                .build();
+                GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+            assertThat(calculator.getVersion(), is("1.0.0-1"));
+        } finally {
+            Misc.deleteDirectorySimple(directory);
+        }
+    }
+}
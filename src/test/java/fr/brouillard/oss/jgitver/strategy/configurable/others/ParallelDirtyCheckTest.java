@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.impl.GitUtils;
+
+public class ParallelDirtyCheckTest {
+    private Scenario scenario;
+    private Git git;
+    private File workTree;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates the git scenario for each test, with files committed in sub directories.
+     * 
+     * @throws Exception if the scenario cannot be built
+     */
+    @Before
+    public void init() throws Exception {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        workTree = git.getRepository().getWorkTree();
+        write("src/main/App.java", "class App {}");
+        write("src/test/AppTest.java", "class AppTest {}");
+        write("docs/index.md", "# index");
+        write(".gitignore", "target/");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("sources").call();
+
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation())
+                .setParallelDirtyCheck(true)
+                .setUseDirty(true);
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void clean_working_tree_is_not_dirty() throws Exception {
+        assertSameAsStatus(false);
+        assertThat(versionCalculator.getVersion(), is("1.1.0-2"));
+    }
+
+    @Test
+    public void modified_file_in_a_sub_directory_is_dirty() throws Exception {
+        write("src/test/AppTest.java", "class AppTest { }");
+        assertSameAsStatus(true);
+        assertThat(versionCalculator.getVersion(), is("1.1.0-2-dirty"));
+    }
+
+    @Test
+    public void untracked_file_is_dirty_unless_ignored() throws Exception {
+        write("target/classes/App.class", "ignored");
+        assertSameAsStatus(false);
+
+        write("docs/new.md", "untracked");
+        assertSameAsStatus(true);
+    }
+
+    @Test
+    public void ignored_directories_are_skipped_unless_they_hold_tracked_files() throws Exception {
+        write("generated/Kept.java", "class Kept {}");
+        git.add().addFilepattern("generated/Kept.java").call();
+        write(".gitignore", "target/\nnode_modules/\ngenerated/\n");
+        git.add().addFilepattern(".gitignore").call();
+        git.commit().setMessage("ignored directories").call();
+        write("node_modules/lib/index.js", "ignored");
+        write("src/target/Generated.java", "ignored");
+        write("generated/Other.java", "ignored");
+        assertSameAsStatus(false);
+
+        // tracked files of an ignored directory are still compared
+        write("generated/Kept.java", "class Kept { }");
+        assertSameAsStatus(true);
+    }
+
+    @Test
+    public void missing_file_is_dirty() throws Exception {
+        Files.delete(new File(workTree, "docs/index.md").toPath());
+        assertSameAsStatus(true);
+    }
+
+    @Test
+    public void staged_file_is_dirty() throws Exception {
+        write("added", "added");
+        git.add().addFilepattern("added").call();
+        assertSameAsStatus(true);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelled_scan_throws() throws Exception {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        GitUtils.isDirty(git, token, ForkJoinPool.commonPool());
+    }
+
+    private void assertSameAsStatus(boolean expectedDirty) throws Exception {
+        assertThat(GitUtils.isDirty(git), is(expectedDirty));
+        assertThat(GitUtils.isDirty(git, new CancellationToken(), ForkJoinPool.commonPool()), is(expectedDirty));
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.Version;
+
+public class PrefetchTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates the git scenario for each test.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation(), true);
+    }
+
+    /**
+     * Cleanups after each tests.
+     * 
+     * @throws Exception if the calculator cannot be closed
+     */
+    @After
+    public void clean() throws Exception {
+        versionCalculator.close();
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void prefetched_calculator_gives_the_same_versions() throws Exception {
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+
+        git.checkout().setName("issue-10").call();
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2-issue_10"));
+    }
+
+    @Test
+    public void moved_tag_is_peeled_again() throws Exception {
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+
+        ObjectId master = git.getRepository().resolve("master");
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            git.tagDelete().setTags("1.1.0").call();
+            git.tag().setName("1.1.0").setAnnotated(false).setObjectId(walk.parseCommit(master)).call();
+        }
+        assertThat(versionCalculator.getVersion(), is("1.1.0-0"));
+    }
+
+    @Test
+    public void calculator_remains_usable_once_closed() throws Exception {
+        versionCalculator.close();
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+    }
+
+    @Test
+    public void prefetch_of_a_non_git_directory_is_ignored() throws Exception {
+        File nonGitDirectory = Files.createTempDir();
+        try (GitVersionCalculator calculator = GitVersionCalculator.location(nonGitDirectory, true)) {
+            assertThat(calculator.getVersion(), is(Version.NOT_GIT_VERSION.toString()));
+        } finally {
+            Misc.deleteDirectorySimple(nonGitDirectory);
+        }
+    }
+}
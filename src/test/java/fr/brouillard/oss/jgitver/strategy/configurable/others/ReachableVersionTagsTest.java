@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.CancellationToken;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.impl.ReachableCommits;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class ReachableVersionTagsTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates a fresh git scenario for each test, as some tests repack it.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation())
+                .setComputeReachableVersionTags(true);
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void not_computed_by_default() {
+        versionCalculator.setComputeReachableVersionTags(false);
+        assertThat(versionCalculator.meta(Metadatas.HEAD_REACHABLE_VERSION_TAGS), is(Optional.empty()));
+    }
+
+    @Test
+    public void reachable_version_tags_without_bitmaps() {
+        assertThat(versionCalculator.metaAsList(Metadatas.HEAD_REACHABLE_VERSION_TAGS),
+                is(Optional.of(Arrays.asList("1.1.0", "1.0.0"))));
+
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        versionCalculator.getVersion();
+        assertThat(versionCalculator.metaAsList(Metadatas.HEAD_REACHABLE_VERSION_TAGS),
+                is(Optional.of(Collections.singletonList("1.0.0"))));
+    }
+
+    @Test
+    public void reachable_version_tags_with_bitmaps() throws Exception {
+        git.gc().call();
+        assertThat(bitmapFileExists(), is(true));
+
+        assertThat(versionCalculator.metaAsList(Metadatas.HEAD_REACHABLE_VERSION_TAGS),
+                is(Optional.of(Arrays.asList("1.1.0", "1.0.0"))));
+
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        versionCalculator.getVersion();
+        assertThat(versionCalculator.metaAsList(Metadatas.HEAD_REACHABLE_VERSION_TAGS),
+                is(Optional.of(Collections.singletonList("1.0.0"))));
+    }
+
+    @Test
+    public void bitmaps_avoid_walking_packed_history() throws Exception {
+        git.gc().call();
+        ObjectId master = git.getRepository().resolve("master");
+
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            ReachableCommits reachable = ReachableCommits.from(reader, master, Collections.emptySet(), new CancellationToken());
+
+            assertThat(reachable.isBitmapBased(), is(true));
+            assertThat(reachable.getWalkedCommits(), is(0));
+            assertThat(reachable.contains(scenario.getCommits().get("A")), is(true));
+            assertThat(reachable.contains(scenario.getCommits().get("F")), is(false));
+        }
+    }
+
+    private boolean bitmapFileExists() {
+        File[] packFiles = new File(scenario.getRepositoryLocation(), "objects/pack").listFiles();
+        return packFiles != null && Arrays.stream(packFiles).anyMatch(file -> file.getName().endsWith(".bitmap"));
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.Component;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+
+public class RepositoryLocationTest {
+    private static final PersonIdent AUTHOR = new PersonIdent("jgitver", "jgitver@example.com");
+
+    @Test
+    public void given_repository_is_left_open() throws Exception {
+        Scenario scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        try (Git git = Git.open(scenario.getRepositoryLocation())) {
+            Repository repository = git.getRepository();
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                assertThat(calculator.getVersion(), is("1.1.0-1"));
+            }
+
+            git.commit().setMessage("after the calculator").setAllowEmpty(true).call();
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                assertThat(calculator.getVersion(), is("1.1.0-2"));
+            }
+        } finally {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void in_memory_repository_gives_versions() throws Exception {
+        try (InMemoryRepository repository = new InMemoryRepository(new DfsRepositoryDescription("in-memory"))) {
+            ObjectId first = commit(repository, null, "A");
+            tag(repository, first, "1.0.0");
+            commit(repository, first, "B");
+
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                assertThat(calculator.getVersion(), is("1.0.0-1"));
+                assertThat(calculator.getVersionInputFingerprint(), notNullValue());
+            }
+        }
+    }
+
+    @Test
+    public void in_memory_repository_is_never_dirty() throws Exception {
+        try (InMemoryRepository repository = new InMemoryRepository(new DfsRepositoryDescription("in-memory"))) {
+            tag(repository, commit(repository, null, "A"), "1.0.0");
+
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                calculator.setUseDirty(true);
+                assertThat(calculator.getVersion(), is("1.0.0"));
+                calculator.setParallelDirtyCheck(true);
+                assertThat(calculator.getVersion(), is("1.0.0"));
+            }
+        }
+    }
+
+    @Test
+    public void in_memory_repository_does_not_store_changed_path_filters() throws Exception {
+        try (InMemoryRepository repository = new InMemoryRepository(new DfsRepositoryDescription("in-memory"))) {
+            ObjectId first = commit(repository, null, "A");
+            tag(repository, first, "1.0.0");
+            commit(repository, commit(repository, first, "B"), "C");
+
+            try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                calculator.setWriteChangedPathFilters(true);
+                Component component = new Component("", "content");
+                assertThat(calculator.getComponentVersions(Collections.singletonList(component)).get(component)
+                        .toString(), is("1.0.0-2"));
+            }
+        }
+    }
+
+    /**
+     * Commits a single file on master, HEAD pointing to it.
+     */
+    private static ObjectId commit(Repository repository, ObjectId parent, String content) throws IOException {
+        ObjectId commitId;
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            TreeFormatter tree = new TreeFormatter();
+            tree.append("content", FileMode.REGULAR_FILE,
+                    inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8)));
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(inserter.insert(tree));
+            if (parent != null) {
+                commit.setParentId(parent);
+            }
+            commit.setAuthor(AUTHOR);
+            commit.setCommitter(AUTHOR);
+            commit.setMessage("content " + content);
+            commitId = inserter.insert(commit);
+            inserter.flush();
+        }
+        RefUpdate master = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+        master.setNewObjectId(commitId);
+        master.forceUpdate();
+        repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + Constants.MASTER);
+        return commitId;
+    }
+
+    private static void tag(Repository repository, ObjectId commitId, String name) throws IOException {
+        ObjectId tagId;
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            TagBuilder tag = new TagBuilder();
+            tag.setObjectId(commitId, Constants.OBJ_COMMIT);
+            tag.setTag(name);
+            tag.setTagger(AUTHOR);
+            tag.setMessage("release " + name);
+            tagId = inserter.insert(tag);
+            inserter.flush();
+        }
+        RefUpdate update = repository.updateRef(Constants.R_TAGS + name);
+        update.setNewObjectId(tagId);
+        update.forceUpdate();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.SearchAlgorithm;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class SearchAlgorithmTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates a fresh git scenario for each test, as some tests repack it.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void walk_is_selected_without_bitmaps() {
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("WALK")));
+        assertThat(versionCalculator.meta(Metadatas.SEARCHED_COMMITS), is(Optional.of("2")));
+    }
+
+    @Test
+    public void walk_is_selected_with_bitmaps_and_close_tags() {
+        unchecked(() -> git.gc().call());
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("WALK")));
+    }
+
+    @Test
+    public void selection_can_be_overridden() {
+        unchecked(() -> git.gc().call());
+        versionCalculator.setSearchAlgorithm(SearchAlgorithm.TAG_ANCESTRY);
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("TAG_ANCESTRY")));
+
+        versionCalculator.setSearchAlgorithm(SearchAlgorithm.WALK);
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("WALK")));
+    }
+
+    @Test
+    public void all_algorithms_give_the_same_versions_without_bitmaps() {
+        assertSameVersionsForAllAlgorithms();
+    }
+
+    @Test
+    public void all_algorithms_give_the_same_versions_with_bitmaps() {
+        unchecked(() -> git.gc().call());
+        assertSameVersionsForAllAlgorithms();
+    }
+
+    @Test
+    public void distance_to_first_commit_without_any_version_tag() {
+        Scenario noTag = Scenarios.s11_linear_no_tag_repository();
+        try (Git noTagGit = Git.open(noTag.getRepositoryLocation())) {
+            unchecked(() -> noTagGit.gc().call());
+            GitVersionCalculator calculator = GitVersionCalculator.location(noTag.getRepositoryLocation());
+
+            assertThat(calculator.getVersion(), is("0.0.0-2"));
+            assertThat(calculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("TAG_ANCESTRY")));
+            assertThat(calculator.meta(Metadatas.SEARCHED_COMMITS), is(Optional.of("3")));
+
+            calculator.setSearchAlgorithm(SearchAlgorithm.WALK);
+            assertThat(calculator.getVersion(), is("0.0.0-2"));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            Misc.deleteDirectorySimple(noTag.getRepositoryLocation());
+        }
+    }
+
+    private void assertSameVersionsForAllAlgorithms() {
+        for (String revision : Arrays.asList("A", "B", "C", "D", "E", "F")) {
+            checkout(revision);
+            Map<SearchAlgorithm, String> versions = new LinkedHashMap<>();
+            for (SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+                versions.put(algorithm, versionCalculator.setSearchAlgorithm(algorithm).getVersion());
+            }
+            String walkVersion = versions.get(SearchAlgorithm.WALK);
+            for (String version : versions.values()) {
+                assertThat(revision + " " + versions, version, is(walkVersion));
+            }
+        }
+    }
+
+    private void checkout(String commitId) {
+        unchecked(() -> git.checkout().setName(scenario.getCommits().get(commitId).name()).call());
+    }
+}
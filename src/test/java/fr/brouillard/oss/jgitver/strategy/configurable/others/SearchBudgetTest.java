@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.FixtureBuilder;
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.SearchAlgorithm;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class SearchBudgetTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates the git scenario for each test.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+    }
+
+    /**
+     * Cleanups after each tests.
+     */
+    @After
+    public void clean() {
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void budget_is_not_exceeded_by_default() {
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        assertThat(versionCalculator.getVersion(), is("1.0.0-2-issue_10"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_BUDGET_EXCEEDED), is(Optional.of("false")));
+    }
+
+    @Test
+    public void budget_large_enough_gives_the_exact_version() {
+        versionCalculator.setMaxSearchedCommits(2);
+        assertThat(versionCalculator.getVersion(), is("1.1.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_BUDGET_EXCEEDED), is(Optional.of("false")));
+    }
+
+    @Test
+    public void exceeded_commits_budget_gives_a_degraded_version() {
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        versionCalculator.setMaxSearchedCommits(2);
+
+        // F & C have been searched, the distance to the first commit is a lower bound
+        assertThat(versionCalculator.getVersion(), is("0.0.0-1-issue_10"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_BUDGET_EXCEEDED), is(Optional.of("true")));
+        assertThat(versionCalculator.meta(Metadatas.SEARCHED_COMMITS), is(Optional.of("2")));
+
+        // degraded versions only depend on the repository state
+        assertThat(versionCalculator.getVersion(), is("0.0.0-1-issue_10"));
+    }
+
+    @Test
+    public void exceeded_time_budget_still_searches_head() {
+        unchecked(() -> git.checkout().setName("issue-10").call());
+        versionCalculator.setMaxSearchDuration(Duration.ofNanos(1));
+
+        assertThat(versionCalculator.getVersion(), is("0.0.0-0-issue_10"));
+        assertThat(versionCalculator.meta(Metadatas.SEARCH_BUDGET_EXCEEDED), is(Optional.of("true")));
+    }
+
+    @Test
+    public void budget_bounds_every_search_algorithm_on_a_repository_with_bitmaps() throws Exception {
+        File directory = Files.createTempDir();
+        try (Repository repository = FixtureBuilder.bare(new File(directory, "untagged.git")).commit("A").linear(59).build()) {
+            // packs the repository with a bitmap index, so that the ancestry of HEAD can be read from it
+            Git.wrap(repository).gc().call();
+
+            for (SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+                try (GitVersionCalculator calculator = GitVersionCalculator.location(repository)) {
+                    calculator.setSearchAlgorithm(algorithm).setMaxSearchedCommits(10);
+
+                    assertThat(algorithm.name(), calculator.getVersion(), is("0.0.0-9"));
+                    assertThat(algorithm.name(), calculator.meta(Metadatas.SEARCH_BUDGET_EXCEEDED), is(Optional.of("true")));
+                    assertThat(algorithm.name(), calculator.meta(Metadatas.SEARCHED_COMMITS), is(Optional.of("10")));
+                    // the ancestry of HEAD is computed at once, a bounded search walks the history instead
+                    assertThat(algorithm.name(), calculator.meta(Metadatas.SEARCH_ALGORITHM), is(Optional.of("WALK")));
+                }
+            }
+        } finally {
+            Misc.deleteDirectorySimple(directory);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void commits_budget_must_be_positive() {
+        versionCalculator.setMaxSearchedCommits(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void time_budget_must_be_positive() {
+        versionCalculator.setMaxSearchDuration(Duration.ZERO);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static fr.brouillard.oss.jgitver.Lambdas.unchecked;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+import fr.brouillard.oss.jgitver.metadata.Metadatas;
+
+public class ShallowHistoryTest {
+    private static Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Initialize the whole junit class tests ; creates the git scenario.
+     */
+    @BeforeClass
+    public static void initClass() {
+        scenario = Scenarios.s1_linear_with_only_annotated_tags();
+        if (Misc.isDebugMode()) {
+            System.out.println("git repository created under: " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Cleanup the whole junit scenario ; deletes the created git repository.
+     */
+    @AfterClass
+    public static void cleanupClass() {
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    /**
+     * Prepare common variables to access the git repository.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+    }
+
+    /**
+     * Cleanup common variables and turns the repository back into a complete one.
+     * 
+     * @throws Exception if a disk error occurred
+     */
+    @After
+    public void clean() throws Exception {
+        Files.deleteIfExists(shallowFile().toPath());
+        unchecked(() -> git.checkout().setName("master").call());
+        git.close();
+        versionCalculator.close();
+    }
+
+    @Test
+    public void complete_repository_is_not_reported_as_shallow() {
+        assertThat(versionCalculator.getVersion(), is("2.0.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SHALLOW_REPOSITORY), is(Optional.of("false")));
+        assertThat(versionCalculator.meta(Metadatas.TRUNCATED_HISTORY), is(Optional.of("false")));
+    }
+
+    @Test
+    public void base_tag_found_before_the_shallow_boundary_gives_an_exact_version() throws IOException {
+        makeShallowAt("C");
+
+        assertThat(versionCalculator.getVersion(), is("2.0.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.SHALLOW_REPOSITORY), is(Optional.of("true")));
+        assertThat(versionCalculator.meta(Metadatas.TRUNCATED_HISTORY), is(Optional.of("false")));
+    }
+
+    @Test
+    public void base_tag_on_the_shallow_boundary_gives_an_exact_version() throws IOException {
+        makeShallowAt("D");
+
+        assertThat(versionCalculator.getVersion(), is("2.0.0-1"));
+        assertThat(versionCalculator.meta(Metadatas.TRUNCATED_HISTORY), is(Optional.of("false")));
+    }
+
+    @Test
+    public void walk_stops_at_the_shallow_boundary_and_reports_truncation() throws IOException {
+        makeShallowAt("C");
+        unchecked(() -> git.checkout().setName(scenario.getCommits().get("C").name()).call());
+
+        // tag 1.0.0 on B is behind the boundary, the history looks like starting at C
+        assertThat(versionCalculator.getVersion(), is("0.0.0-0"));
+        assertThat(versionCalculator.meta(Metadatas.SHALLOW_REPOSITORY), is(Optional.of("true")));
+        assertThat(versionCalculator.meta(Metadatas.TRUNCATED_HISTORY), is(Optional.of("true")));
+    }
+
+    private void makeShallowAt(String commitId) throws IOException {
+        ObjectId boundary = scenario.getCommits().get(commitId);
+        Files.write(shallowFile().toPath(), (boundary.name() + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private File shallowFile() {
+        return new File(scenario.getRepositoryLocation(), "shallow");
+    }
+}
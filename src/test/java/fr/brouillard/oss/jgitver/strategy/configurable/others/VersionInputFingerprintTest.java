@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2016 Matthieu Brouillard [http://oss.brouillard.fr/jgitver] (matthieu@brouillard.fr)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fr.brouillard.oss.jgitver.strategy.configurable.others;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.brouillard.oss.jgitver.GitVersionCalculator;
+import fr.brouillard.oss.jgitver.Misc;
+import fr.brouillard.oss.jgitver.Scenarios;
+import fr.brouillard.oss.jgitver.Scenarios.Scenario;
+
+public class VersionInputFingerprintTest {
+    private Scenario scenario;
+    private Git git;
+    private GitVersionCalculator versionCalculator;
+
+    /**
+     * Creates a fresh git scenario for each test.
+     * 
+     * @throws IOException if a disk error occurred
+     */
+    @Before
+    public void init() throws IOException {
+        scenario = Scenarios.s8_main_and_branch_with_intermediate_light_tag();
+        git = Git.open(scenario.getRepositoryLocation());
+        versionCalculator = GitVersionCalculator.location(scenario.getRepositoryLocation());
+    }
+
+    /**
+     * Cleanups after each tests.
+     * 
+     * @throws Exception if the calculator cannot be closed
+     */
+    @After
+    public void clean() throws Exception {
+        versionCalculator.close();
+        git.close();
+        try {
+            Misc.deleteDirectorySimple(scenario.getRepositoryLocation());
+        } catch (Exception ignore) {
+            System.err.println("cannot remove " + scenario.getRepositoryLocation());
+        }
+    }
+
+    @Test
+    public void same_inputs_give_the_same_fingerprint() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        assertThat(fingerprint.matches("[0-9a-f]{40}"), is(true));
+        assertThat(versionCalculator.getVersionInputFingerprint(), is(fingerprint));
+        try (GitVersionCalculator other = GitVersionCalculator.location(scenario.getRepositoryLocation())) {
+            assertThat(other.getVersionInputFingerprint(), is(fingerprint));
+        }
+    }
+
+    @Test
+    public void new_commit_changes_the_fingerprint() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        git.commit().setMessage("one more").setAllowEmpty(true).call();
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(fingerprint));
+    }
+
+    @Test
+    public void other_branch_changes_the_fingerprint() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        git.checkout().setName("issue-10").call();
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(fingerprint));
+    }
+
+    @Test
+    public void only_version_tags_change_the_fingerprint() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        git.tag().setName("not-a-version").call();
+        assertThat(versionCalculator.getVersionInputFingerprint(), is(fingerprint));
+
+        git.tag().setName("2.0.0").call();
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(fingerprint));
+    }
+
+    @Test
+    public void only_settings_changing_the_version_change_the_fingerprint() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        versionCalculator.setParallelDirtyCheck(true).setWriteChangedPathFilters(true);
+        assertThat(versionCalculator.getVersionInputFingerprint(), is(fingerprint));
+
+        versionCalculator.setUseDistance(false);
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(fingerprint));
+    }
+
+    @Test
+    public void dirty_state_changes_the_fingerprint_when_used() throws Exception {
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        File untracked = new File(git.getRepository().getWorkTree(), "untracked");
+        Files.write("new file", untracked, StandardCharsets.UTF_8);
+        assertThat(versionCalculator.getVersionInputFingerprint(), is(fingerprint));
+
+        versionCalculator.setUseDirty(true);
+        String dirtyFingerprint = versionCalculator.getVersionInputFingerprint();
+        assertThat(untracked.delete(), is(true));
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(dirtyFingerprint));
+    }
+
+    @Test
+    public void dirty_state_changes_the_fingerprint_on_a_version_tag() throws Exception {
+        git.tag().setName("2.0.0").call();
+        String fingerprint = versionCalculator.getVersionInputFingerprint();
+        Files.write("new file", new File(git.getRepository().getWorkTree(), "untracked"), StandardCharsets.UTF_8);
+        assertThat(versionCalculator.getVersionInputFingerprint(), not(fingerprint));
+    }
+
+    @Test
+    public void non_git_directory_has_a_fingerprint() throws Exception {
+        File nonGitDirectory = Files.createTempDir();
+        try (GitVersionCalculator calculator = GitVersionCalculator.location(nonGitDirectory)) {
+            assertThat(calculator.getVersionInputFingerprint().matches("[0-9a-f]{40}"), is(true));
+        } finally {
+            Misc.deleteDirectorySimple(nonGitDirectory);
+        }
+    }
+}